@@ -2,13 +2,29 @@ package com.amazon.pvar.tspoc.merlin;
 
 import org.apache.log4j.Logger;
 
+import java.util.function.Supplier;
+
 public class DebugUtils {
     final private static Logger logger = org.apache.log4j.Logger.getRootLogger();
 
+    public static boolean isDebugEnabled() {
+        return logger.isDebugEnabled();
+    }
+
     public static void debug(final String str) {
         logger.debug(str);
     }
 
+    /**
+     * Log a debug message that is only built if debug logging is enabled. Use this instead of
+     * {@link #debug(String)} for messages that are built from non-constant parts on hot paths.
+     */
+    public static void debug(final Supplier<String> message) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(message.get());
+        }
+    }
+
     public static void warn(final String str) {
         logger.warn(str);
     }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.experiments;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Reads call graphs written by {@link BinaryCallGraphWriter}.
+ * <p>
+ * The file is memory-mapped and only the string table is decoded up front. Edges are decoded lazily while iterating,
+ * so large call graphs can be scanned without materializing a {@link SerializableCallGraph}. Iteration yields edges
+ * in the order they are stored, i.e. sorted by call site.
+ */
+public class BinaryCallGraphReader implements Iterable<SerializableCallGraphEdge> {
+
+    private final ByteBuffer edgeBlock;
+    private final String[] strings;
+    private final int edgeCount;
+
+    private BinaryCallGraphReader(ByteBuffer buffer) {
+        final var magic = new byte[BinaryCallGraphWriter.MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, BinaryCallGraphWriter.MAGIC)) {
+            throw new IllegalArgumentException("Not a binary call graph file");
+        }
+        final var version = readVarint(buffer);
+        if (version != BinaryCallGraphWriter.VERSION) {
+            throw new IllegalArgumentException("Unsupported binary call graph version: " + version);
+        }
+        strings = new String[readVarint(buffer)];
+        for (int i = 0; i < strings.length; i++) {
+            final var bytes = new byte[readVarint(buffer)];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        edgeCount = readVarint(buffer);
+        edgeBlock = buffer.slice();
+    }
+
+    public static BinaryCallGraphReader open(Path file) throws IOException {
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return new BinaryCallGraphReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static BinaryCallGraphReader fromBuffer(ByteBuffer buffer) {
+        return new BinaryCallGraphReader(buffer.duplicate());
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @return the distinct file paths referenced by the call graph
+     */
+    public List<String> files() {
+        return List.of(strings);
+    }
+
+    /**
+     * Decodes all edges into a SerializableCallGraph, e.g. for comparison with a call graph parsed from JSON.
+     */
+    public SerializableCallGraph toSerializableCallGraph() {
+        final Set<SerializableCallGraphEdge> edges = new HashSet<>();
+        forEach(edges::add);
+        return new SerializableCallGraph(edges);
+    }
+
+    @Override
+    public Iterator<SerializableCallGraphEdge> iterator() {
+        final var buffer = edgeBlock.duplicate();
+        return new Iterator<>() {
+
+            private int remaining = edgeCount;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public SerializableCallGraphEdge next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                final var caller = readSpan(buffer);
+                final var callee = readSpan(buffer);
+                return new SerializableCallGraphEdge(callee, caller);
+            }
+        };
+    }
+
+    private Span readSpan(ByteBuffer buffer) {
+        final var fileIndex = readVarint(buffer);
+        final var start = new Location(unzigzag(readVarint(buffer)), unzigzag(readVarint(buffer)));
+        final var end = new Location(unzigzag(readVarint(buffer)), unzigzag(readVarint(buffer)));
+        return new Span(start, end, fileIndex == 0 ? null : strings[fileIndex - 1]);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = buffer.get();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in binary call graph");
+    }
+}
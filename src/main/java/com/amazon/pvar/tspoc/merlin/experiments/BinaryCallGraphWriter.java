@@ -0,0 +1,124 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.experiments;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Writes call graphs in a compact binary format that can be read back with {@link BinaryCallGraphReader}.
+ * <p>
+ * Layout (all integers are unsigned LEB128 varints unless stated otherwise):
+ * <pre>
+ *   magic          4 bytes, "MCGB"
+ *   version        varint
+ *   string count   varint
+ *   strings        per string: byte length, followed by the UTF-8 bytes
+ *   edge count     varint
+ *   edges          per edge: caller span, then callee span
+ * </pre>
+ * A span is encoded as the index of its file in the string table plus one (zero denotes a missing file), followed by
+ * the zigzag-encoded start line, start column, end line and end column. Edges are sorted by call site, then by callee.
+ */
+public class BinaryCallGraphWriter {
+
+    static final byte[] MAGIC = "MCGB".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+
+    static final Comparator<Span> SPAN_ORDER = Comparator
+            .comparing(Span::file, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparingInt(span -> span.start().line())
+            .thenComparingInt(span -> span.start().column())
+            .thenComparingInt(span -> span.end().line())
+            .thenComparingInt(span -> span.end().column());
+
+    static final Comparator<SerializableCallGraphEdge> EDGE_ORDER = Comparator
+            .comparing(SerializableCallGraphEdge::caller, SPAN_ORDER)
+            .thenComparing(SerializableCallGraphEdge::callee, SPAN_ORDER);
+
+    public static void write(SerializableCallGraph callGraph, Path file) throws IOException {
+        write(callGraph.edges(), file);
+    }
+
+    public static void write(Collection<SerializableCallGraphEdge> edges, Path file) throws IOException {
+        try (final var out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            write(edges, out);
+        }
+    }
+
+    public static void write(Collection<SerializableCallGraphEdge> edges, OutputStream outputStream)
+            throws IOException {
+        final var sortedEdges = new ArrayList<>(edges);
+        sortedEdges.sort(EDGE_ORDER);
+        final Map<String, Integer> stringTable = new LinkedHashMap<>();
+        for (final var edge : sortedEdges) {
+            addToStringTable(stringTable, edge.caller().file());
+            addToStringTable(stringTable, edge.callee().file());
+        }
+
+        final var out = new DataOutputStream(outputStream);
+        out.write(MAGIC);
+        writeVarint(out, VERSION);
+        writeVarint(out, stringTable.size());
+        for (final var string : stringTable.keySet()) {
+            final var bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes);
+        }
+        writeVarint(out, sortedEdges.size());
+        for (final var edge : sortedEdges) {
+            writeSpan(out, edge.caller(), stringTable);
+            writeSpan(out, edge.callee(), stringTable);
+        }
+        out.flush();
+    }
+
+    private static void addToStringTable(Map<String, Integer> stringTable, String string) {
+        if (string != null) {
+            stringTable.putIfAbsent(string, stringTable.size());
+        }
+    }
+
+    private static void writeSpan(DataOutputStream out, Span span, Map<String, Integer> stringTable)
+            throws IOException {
+        writeVarint(out, span.file() == null ? 0 : stringTable.get(span.file()) + 1);
+        writeVarint(out, zigzag(span.start().line()));
+        writeVarint(out, zigzag(span.start().column()));
+        writeVarint(out, zigzag(span.end().line()));
+        writeVarint(out, zigzag(span.end().column()));
+    }
+
+    /**
+     * Source locations use -1 for unknown positions, so signed values are zigzag-encoded to keep them short.
+     */
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+}
@@ -18,6 +18,8 @@ package com.amazon.pvar.tspoc.merlin.experiments;
 import org.apache.commons.cli.*;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.util.Optional;
 
 public class ExperimentOptions {
 
@@ -59,6 +61,61 @@ public class ExperimentOptions {
             .desc("Output the TAJS flowgraph representation of the program")
             .build();
 
+    private static final Option checkpointDir = Option.builder("c")
+            .argName("dir")
+            .hasArg()
+            .longOpt("checkpoint-dir")
+            .desc("A directory for analysis checkpoints. If a checkpoint for an unchanged program exists there, Merlin " +
+                    "starts from its points-to facts and call edges and solves its queries again on top of them, " +
+                    "and writes an updated checkpoint when done.")
+            .build();
+
+    private static final Option sparse = Option.builder()
+            .longOpt("sparse")
+            .desc("Propagate registers and variables directly between the statements that use or define them. " +
+                    "Faster, but points-to facts are only recorded at those statements.")
+            .build();
+
+    private static final Option indexedFieldReads = Option.builder()
+            .longOpt("indexed-field-reads")
+            .desc("Resolve property reads through an index of property writes per allocation. Faster on " +
+                    "heap-heavy programs, but insensitive to the order of reads and writes and to calling contexts.")
+            .build();
+
+    private static final Option bidirectionalCalls = Option.builder()
+            .longOpt("bidirectional-calls")
+            .desc("Resolve call sites by running forward queries from candidate functions alongside the backward " +
+                    "queries from the called value, reporting a callee as soon as both meet.")
+            .build();
+
+    private static final Option callGraphPrepass = Option.builder()
+            .longOpt("prepass")
+            .desc("Bound the callees of every call site by a cheap field-based call graph before resolving them " +
+                    "with queries, skipping call sites that cannot invoke any function of the program.")
+            .build();
+
+    private static final Option wholeProgram = Option.builder("w")
+            .longOpt("whole-program")
+            .desc("Compute the call graph of the whole program by resolving all call sites together, instead of " +
+                    "running taint queries. Edges are streamed as JSON as they are found, see -g.")
+            .build();
+
+    private static final Option callGraphDir = Option.builder("g")
+            .argName("dir")
+            .hasArg()
+            .longOpt("callgraph-dir")
+            .desc("With -w, a directory to stream the call graph of each program to, as one JSON document per " +
+                    "program named <program>.callgraph.json. By default, the call graph is streamed to stdout when " +
+                    "analyzing a single file, and to the directory of the output file when analyzing a directory.")
+            .build();
+
+    private static final Option threads = Option.builder("t")
+            .argName("n")
+            .hasArg()
+            .longOpt("threads")
+            .desc("The number of threads running the solvers (default 1)")
+            .build();
+
     private static final Option help = Option.builder("h")
             .desc("print this help message")
             .build();
@@ -69,6 +126,14 @@ public class ExperimentOptions {
             .addOption(dumpFlowGraph)
             .addOption(outputFile)
             .addOption(nodeSinkFile)
+            .addOption(checkpointDir)
+            .addOption(sparse)
+            .addOption(indexedFieldReads)
+            .addOption(bidirectionalCalls)
+            .addOption(callGraphPrepass)
+            .addOption(wholeProgram)
+            .addOption(callGraphDir)
+            .addOption(threads)
             .addOption(help);
 
     private static CommandLine commandLine;
@@ -105,6 +170,49 @@ public class ExperimentOptions {
         return commandLine.getOptionValue("o");
     }
 
+    public static Optional<Path> getCheckpointDir() {
+        return Optional.ofNullable(commandLine.getOptionValue("c")).map(Path::of);
+    }
+
+    public static boolean isSparse() {
+        return commandLine.hasOption("sparse");
+    }
+
+    public static boolean isIndexedFieldReads() {
+        return commandLine.hasOption("indexed-field-reads");
+    }
+
+    public static boolean isBidirectionalCalls() {
+        return commandLine.hasOption("bidirectional-calls");
+    }
+
+    public static boolean isCallGraphPrepass() {
+        return commandLine.hasOption("prepass");
+    }
+
+    public static boolean isWholeProgram() {
+        return commandLine.hasOption("w");
+    }
+
+    /**
+     * @return the directory to write the call graph of each program to in whole-program mode, or empty to write it
+     * to stdout
+     */
+    public static Optional<Path> getCallGraphDir() {
+        if (commandLine.hasOption("g")) {
+            return Optional.of(Path.of(commandLine.getOptionValue("g")));
+        }
+        if (isAnalyzeDirectory()) {
+            // Several JSON documents on stdout would not form a single JSON value
+            return Optional.of(Path.of(getOutputFile()).toAbsolutePath().getParent());
+        }
+        return Optional.empty();
+    }
+
+    public static int getThreads() {
+        return Integer.parseInt(commandLine.getOptionValue("t", "1"));
+    }
+
     public static File getNodeSinkFile() {
         if (!commandLine.hasOption("s")) {
             return new File(SINK_DEFAULT_LOCATION);
@@ -19,13 +19,13 @@ import com.amazon.pvar.tspoc.merlin.ir.Allocation;
 import com.amazon.pvar.tspoc.merlin.ir.NodeState;
 import com.amazon.pvar.tspoc.merlin.ir.Register;
 import com.amazon.pvar.tspoc.merlin.ir.Value;
+import com.amazon.pvar.tspoc.merlin.solver.HeapFootprint;
 import com.google.common.base.Stopwatch;
 import dk.brics.tajs.flowgraph.BasicBlock;
 import dk.brics.tajs.flowgraph.FlowGraph;
 import dk.brics.tajs.flowgraph.Function;
 import dk.brics.tajs.flowgraph.SourceLocation;
 import dk.brics.tajs.flowgraph.jsnodes.CallNode;
-import dk.brics.tajs.flowgraph.jsnodes.DeclareFunctionNode;
 import dk.brics.tajs.flowgraph.jsnodes.LoadNode;
 import dk.brics.tajs.flowgraph.jsnodes.ReadPropertyNode;
 import dk.brics.tajs.flowgraph.jsnodes.ReadVariableNode;
@@ -37,6 +37,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryType;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
@@ -55,7 +57,7 @@ public class ExperimentUtils {
         Collection<Map.Entry<CallNode, Register>> entries = callSites.entrySet();
         Map.Entry<CallNode, Register> selection = getRandomElementFromCollection(entries);
         return new Node<>(
-                new NodeState(selection.getKey()),
+                NodeState.of(selection.getKey()),
                 selection.getValue()
         );
     }
@@ -65,13 +67,20 @@ public class ExperimentUtils {
                 .entrySet()
                 .stream()
                 .map(entry -> new Node<>(
-                            new NodeState(entry.getKey()),
+                            NodeState.of(entry.getKey()),
                                 ((Value) entry.getValue())
                         )
                 )
                 .collect(java.util.stream.Collectors.toSet());
     }
 
+    /**
+     * @return the call sites of the program that are neither TAJS internal calls nor synthetic
+     */
+    public static Set<CallNode> getAllCallSites(FlowGraph flowGraph) {
+        return getCallSiteMap(flowGraph).keySet();
+    }
+
     public static Set<Node<NodeState, Value>> getTaintQueries(FlowGraph flowGraph) {
         readNodeSinks();
         return flowGraph.getFunctions().stream()
@@ -103,8 +112,8 @@ public class ExperimentUtils {
                     for (int i = 0 ; i < cn.getNumberOfArgs() ; i++) {
                         argQueries.add(
                                 new Node<>(
-                                        new NodeState(cn),
-                                        new Register(cn.getArgRegister(i), containingFunction)
+                                        NodeState.of(cn),
+                                        Register.of(cn.getArgRegister(i), containingFunction)
                                 )
                         );
                     }
@@ -112,8 +121,8 @@ public class ExperimentUtils {
                         // if the taint sink is a property of some value, issue a query for that value
                         argQueries.add(
                                 new Node<>(
-                                        new NodeState(cn),
-                                        new Register(cn.getFunctionRegister(), containingFunction)
+                                        NodeState.of(cn),
+                                        Register.of(cn.getFunctionRegister(), containingFunction)
                                 )
                         );
                     }
@@ -135,7 +144,7 @@ public class ExperimentUtils {
                 .collect(
                         Collectors.toMap(
                                 callNode -> callNode,
-                                callNode -> new Register(
+                                callNode -> Register.of(
                                         callNode.getFunctionRegister(),
                                         callNode.getBlock().getFunction()
                                 )
@@ -150,35 +159,6 @@ public class ExperimentUtils {
                 .orElseThrow();
     }
 
-    private static Function getDeclaringScope(String varName, Function usageScope) {
-        Function currentScope = usageScope;
-        while (Objects.nonNull(currentScope)) {
-            if (
-                    currentScope.getVariableNames().contains(varName) ||
-                            currentScope.getParameterNames().contains(varName) ||
-                            scopeDeclaresFunctionWithName(currentScope, varName)
-            ) {
-                return currentScope;
-            }
-            currentScope = currentScope.getOuterFunction();
-        }
-        throw new RuntimeException("Cannot get declaring scope of variable '" + varName + "' in function '" +
-                usageScope + "': '" + varName + "' should not be visible in this scope.");
-    }
-
-    private static boolean scopeDeclaresFunctionWithName(Function currentScope, String functionName) {
-        return currentScope.getBlocks().stream()
-                .flatMap(block -> block.getNodes().stream())
-                .anyMatch(node -> {
-                    try {
-                        return node instanceof DeclareFunctionNode &&
-                                ((DeclareFunctionNode) node).getFunction().getName().equals(functionName);
-                    } catch (NullPointerException e) {
-                        return false;
-                    }
-                });
-    }
-
     public static void printPointsTo(
             Value queryVal,
             dk.brics.tajs.flowgraph.jsnodes.Node queryNode,
@@ -256,6 +236,13 @@ public class ExperimentUtils {
         private static int totalFiles = 0;
         private static int cgEdgesFound = 0;
         private static int maxQueries = 0;
+        private static long peakSolversBytes = 0;
+        private static long peakLargestSolverBytes = 0;
+        private static long peakPointsToGraphBytes = 0;
+        private static long peakCallGraphBytes = 0;
+        private static long peakSchedulerQueueBytes = 0;
+        private static long peakTotalBytes = 0;
+        private static long peakJvmHeapBytes = 0;
 
         public static void incrementTotalQueries() {
             totalQueries++;
@@ -277,6 +264,30 @@ public class ExperimentUtils {
             maxQueries = newMax;
         }
 
+        /**
+         * Update the peak heap footprint estimates with a new sample. Samples are taken from a background thread.
+         */
+        public static synchronized void recordHeapFootprint(HeapFootprint footprint) {
+            peakSolversBytes = Math.max(peakSolversBytes, footprint.solversBytes());
+            peakLargestSolverBytes = Math.max(peakLargestSolverBytes, footprint.largestSolverBytes());
+            peakPointsToGraphBytes = Math.max(peakPointsToGraphBytes, footprint.pointsToGraphBytes());
+            peakCallGraphBytes = Math.max(peakCallGraphBytes, footprint.callGraphBytes());
+            peakSchedulerQueueBytes = Math.max(peakSchedulerQueueBytes, footprint.schedulerQueueBytes());
+            peakTotalBytes = Math.max(peakTotalBytes, footprint.totalBytes());
+        }
+
+        /**
+         * Update the measured peak heap usage of the JVM, the sum of the peak usage of all heap memory pools since
+         * the JVM started. Unlike the footprint estimates, this includes the flowgraph and garbage not yet collected.
+         */
+        public static synchronized void recordJvmHeapPeak() {
+            final var peak = ManagementFactory.getMemoryPoolMXBeans().stream()
+                    .filter(pool -> pool.getType() == MemoryType.HEAP)
+                    .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                    .sum();
+            peakJvmHeapBytes = Math.max(peakJvmHeapBytes, peak);
+        }
+
         public static long getTotalTimeMillis() {
             return totalTime;
         }
@@ -296,5 +307,33 @@ public class ExperimentUtils {
         public static int getMaxQueries() {
             return maxQueries;
         }
+
+        public static synchronized long getPeakSolversBytes() {
+            return peakSolversBytes;
+        }
+
+        public static synchronized long getPeakLargestSolverBytes() {
+            return peakLargestSolverBytes;
+        }
+
+        public static synchronized long getPeakPointsToGraphBytes() {
+            return peakPointsToGraphBytes;
+        }
+
+        public static synchronized long getPeakCallGraphBytes() {
+            return peakCallGraphBytes;
+        }
+
+        public static synchronized long getPeakSchedulerQueueBytes() {
+            return peakSchedulerQueueBytes;
+        }
+
+        public static synchronized long getPeakTotalBytes() {
+            return peakTotalBytes;
+        }
+
+        public static synchronized long getPeakJvmHeapBytes() {
+            return peakJvmHeapBytes;
+        }
     }
 }
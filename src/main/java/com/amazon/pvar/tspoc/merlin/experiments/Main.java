@@ -18,25 +18,37 @@ package com.amazon.pvar.tspoc.merlin.experiments;
 import com.amazon.pvar.tspoc.merlin.ir.*;
 import com.amazon.pvar.tspoc.merlin.solver.BackwardMerlinSolver;
 import com.amazon.pvar.tspoc.merlin.solver.CallGraph;
+import com.amazon.pvar.tspoc.merlin.solver.CallGraphPrepass;
 import com.amazon.pvar.tspoc.merlin.solver.QueryManager;
+import com.amazon.pvar.tspoc.merlin.solver.SolverOptions;
 import dk.brics.tajs.flowgraph.FlowGraph;
 import dk.brics.tajs.flowgraph.jsnodes.CallNode;
 import dk.brics.tajs.flowgraph.jsnodes.DeclareFunctionNode;
 import org.apache.log4j.Level;
 import sync.pds.solver.nodes.Node;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
 
+    private static final long HEAP_FOOTPRINT_SAMPLE_INTERVAL_MILLIS = 500;
+
     // Create additional config values, see https://github.com/cs-au-dk/TAJS#environment-configuration for overview
     // and tajs_vs/src/dk/brics/tajs/TAJSEnvironmentConfig.java for all options
     public static File makeTAJSConfigFile(Path tajsRootDir) throws IOException {
@@ -130,7 +142,7 @@ public class Main {
                     } catch (IOException e) {
                         e.printStackTrace();
                     }
-                    runExperiment(jsFile.toString(), resultWriter);
+                    analyze(jsFile.toString(), resultWriter);
                 });
             } catch (IOException e) {
                 e.printStackTrace();
@@ -139,7 +151,7 @@ public class Main {
         } else {
             String filename = ExperimentOptions.getAnalysisFile();
             try (FileWriter resultWriter = new FileWriter(ExperimentOptions.getOutputFile())) {
-                runExperiment(filename, resultWriter);
+                analyze(filename, resultWriter);
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -164,15 +176,145 @@ public class Main {
         System.out.println("Elapsed time:\t\t\t" + timeElapsed + "ms");
         System.out.println("Time per program:\t\t" + timePerFile + "ms");
         System.out.println("Time per query:\t\t\t" + timePerQuery + "ms");
+        System.out.println();
+        System.out.println("Estimated peak heap footprint:");
+        System.out.println("  Solvers (all):\t\t" + toMiB(ExperimentUtils.Statistics.getPeakSolversBytes()) + "MiB");
+        System.out.println("  Solver (largest):\t\t" + toMiB(ExperimentUtils.Statistics.getPeakLargestSolverBytes()) + "MiB");
+        System.out.println("  Points-to graph:\t\t" + toMiB(ExperimentUtils.Statistics.getPeakPointsToGraphBytes()) + "MiB");
+        System.out.println("  Call graph:\t\t\t" + toMiB(ExperimentUtils.Statistics.getPeakCallGraphBytes()) + "MiB");
+        System.out.println("  Scheduler queue:\t\t" + toMiB(ExperimentUtils.Statistics.getPeakSchedulerQueueBytes()) + "MiB");
+        System.out.println("  Total:\t\t\t\t" + toMiB(ExperimentUtils.Statistics.getPeakTotalBytes()) + "MiB");
+        System.out.println("Measured peak JVM heap:\t" + toMiB(ExperimentUtils.Statistics.getPeakJvmHeapBytes()) + "MiB");
+        if (ExperimentOptions.isWholeProgram()) {
+            final var edgesPerSecond = cgEdges * 1000.0 / Math.max(1, timeElapsed);
+            System.out.println("Edges per second:\t\t" + String.format("%.1f", edgesPerSecond));
+        }
     }
 
-    private static void runExperiment(String jsFile, FileWriter outputWriter) {
-        CallGraph cg = new CallGraph();
+    private static String toMiB(long bytes) {
+        return String.format("%.1f", bytes / (1024.0 * 1024.0));
+    }
+
+    private static void analyze(String jsFile, FileWriter outputWriter) {
+        if (ExperimentOptions.isWholeProgram()) {
+            runWholeProgram(jsFile, outputWriter);
+        } else {
+            runExperiment(jsFile, outputWriter);
+        }
+    }
+
+    /**
+     * Build the flowgraph of jsFile together with the per-program tables the solvers use
+     */
+    private static FlowGraph prepareFlowGraph(String jsFile) {
         boolean debugFlag = ExperimentOptions.dumpFlowGraph();
         if (debugFlag) {
             org.apache.log4j.Logger.getRootLogger().setLevel(Level.DEBUG);
         }
         FlowGraph flowGraph = flowGraphForProgram(jsFile, debugFlag);
+        ScopeResolution.precompute(flowGraph);
+        NodeIndex.of(flowGraph);
+        VariableUsage.of(flowGraph);
+        if (ExperimentOptions.isCallGraphPrepass()) {
+            CallGraphPrepass.of(flowGraph);
+        }
+        return flowGraph;
+    }
+
+    private static QueryManager createQueryManager() {
+        return new QueryManager(SolverOptions.defaults()
+                .withSparse(ExperimentOptions.isSparse())
+                .withIndexedFieldReads(ExperimentOptions.isIndexedFieldReads())
+                .withThreads(ExperimentOptions.getThreads())
+                .withBidirectionalCalls(ExperimentOptions.isBidirectionalCalls())
+                .withCallGraphPrepass(ExperimentOptions.isCallGraphPrepass()));
+    }
+
+    /**
+     * Sample the heap footprint of queryManager in the background until the returned executor is shut down
+     */
+    private static ScheduledExecutorService startFootprintSampler(QueryManager queryManager) {
+        final var footprintSampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "heap-footprint-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        footprintSampler.scheduleAtFixedRate(
+                () -> ExperimentUtils.Statistics.recordHeapFootprint(queryManager.heapFootprint()),
+                0,
+                HEAP_FOOTPRINT_SAMPLE_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS
+        );
+        return footprintSampler;
+    }
+
+    /**
+     * Compute the call graph of the whole program by resolving all of its call sites together on one QueryManager,
+     * streaming the edges as JSON as they are found to the program's file in the call graph directory, or to stdout
+     */
+    private static void runWholeProgram(String jsFile, FileWriter outputWriter) {
+        FlowGraph flowGraph = prepareFlowGraph(jsFile);
+        final var callSites = ExperimentUtils.getAllCallSites(flowGraph);
+        if (callSites.isEmpty()) {
+            System.err.println("No call sites detected for " + jsFile);
+            System.exit(1);
+        }
+        ExperimentUtils.Statistics.incrementTotalFiles();
+        callSites.forEach(callSite -> ExperimentUtils.Statistics.incrementTotalQueries());
+        if (callSites.size() > ExperimentUtils.Statistics.getMaxQueries()) {
+            ExperimentUtils.Statistics.setMaxQueries(callSites.size());
+        }
+        final var queryManager = createQueryManager();
+        final var footprintSampler = startFootprintSampler(queryManager);
+        final var callGraphFile = ExperimentOptions.getCallGraphDir()
+                .map(dir -> dir.resolve(Path.of(jsFile).getFileName() + ".callgraph.json"));
+        ExperimentUtils.Timer<CallNode> timer = new ExperimentUtils.Timer<>();
+        timer.start();
+        try (final var out = openCallGraphOutput(callGraphFile);
+             final var edgeStream = queryManager.getCallGraph().streamJSON(out)) {
+            queryManager.resolveAllCallSites(callSites);
+            queryManager.solve();
+            // Wait for the handlers of the last edges, which may still be writing to the stream
+            queryManager.scheduler().waitUntilDone();
+            timer.stop();
+            final var edges = edgeStream.edgesWritten();
+            final var elapsed = timer.getTotalElapsed();
+            outputWriter.write("Call sites: " + callSites.size() + "\n");
+            outputWriter.write("Call graph edges: " + edges + "\n");
+            outputWriter.write("Total elapsed time: " + elapsed + "ms\n");
+            outputWriter.write("Edges per second: " + String.format("%.1f", edges * 1000.0 / Math.max(1, elapsed)) +
+                    "\n\n");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        footprintSampler.shutdownNow();
+        ExperimentUtils.Statistics.recordHeapFootprint(queryManager.heapFootprint());
+        ExperimentUtils.Statistics.recordJvmHeapPeak();
+        ExperimentUtils.Statistics.incrementTotalTime(timer.getTotalElapsed());
+        ExperimentUtils.Statistics.incrementCGEdgesFound(queryManager.getCallGraph().size());
+    }
+
+    /**
+     * @return a writer for one call graph JSON document, to file if present and to stdout otherwise. Closing the
+     * writer for stdout ends the document with a newline but leaves stdout open for the summary.
+     */
+    private static Writer openCallGraphOutput(Optional<Path> file) throws IOException {
+        if (file.isPresent()) {
+            Files.createDirectories(file.get().toAbsolutePath().getParent());
+            return Files.newBufferedWriter(file.get(), StandardCharsets.UTF_8);
+        }
+        return new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+            @Override
+            public void close() throws IOException {
+                newLine();
+                flush();
+            }
+        };
+    }
+
+    private static void runExperiment(String jsFile, FileWriter outputWriter) {
+        CallGraph cg = new CallGraph();
+        FlowGraph flowGraph = prepareFlowGraph(jsFile);
         Set<Node<NodeState, Value>> taintQueries = ExperimentUtils.getTaintQueries(flowGraph);
         int count = taintQueries.size();
         if (count == 0) {
@@ -187,7 +329,19 @@ public class Main {
         }
         ExperimentUtils.Timer<Node<NodeState, Value>> timer = new ExperimentUtils.Timer<>();
         timer.start();
-        final var queryManager = new QueryManager();
+        final var queryManager = createQueryManager();
+        final var footprintSampler = startFootprintSampler(queryManager);
+        final var checkpointFile = ExperimentOptions.getCheckpointDir()
+                .map(dir -> dir.resolve(Path.of(jsFile).getFileName() + ".checkpoint"));
+        if (checkpointFile.isPresent()) {
+            try {
+                if (queryManager.restoreCheckpoint(flowGraph, checkpointFile.get())) {
+                    System.err.println("Restored checkpoint " + checkpointFile.get());
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to restore checkpoint, starting from scratch: " + e.getMessage());
+            }
+        }
         taintQueries.forEach(query -> {
             ExperimentUtils.Statistics.incrementTotalQueries();
             BackwardMerlinSolver solver = queryManager.getOrCreateBackwardSolver(query);
@@ -218,6 +372,17 @@ public class Main {
         });
         queryManager.solve();
         timer.stop();
+        footprintSampler.shutdownNow();
+        ExperimentUtils.Statistics.recordHeapFootprint(queryManager.heapFootprint());
+        ExperimentUtils.Statistics.recordJvmHeapPeak();
+        if (checkpointFile.isPresent()) {
+            try {
+                Files.createDirectories(checkpointFile.get().getParent());
+                queryManager.writeCheckpoint(flowGraph, checkpointFile.get());
+            } catch (IOException e) {
+                System.err.println("Failed to write checkpoint " + checkpointFile.get() + ": " + e.getMessage());
+            }
+        }
         ExperimentUtils.Statistics.incrementTotalTime(timer.getTotalElapsed());
         ExperimentUtils.Statistics.incrementCGEdgesFound(cg.size());
         try {
@@ -225,7 +390,10 @@ public class Main {
             outputWriter.write(cg + "\n");
             outputWriter.write("Total elapsed time: " + timer.getTotalElapsed() + "ms\n");
             outputWriter.write("Mean query time: " + timer.getTotalElapsed() / count + "ms\n\n");
-            System.out.println(cg.toJSON());
+            final var stdout = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            cg.writeJSON(stdout, false);
+            stdout.newLine();
+            stdout.flush();
         } catch (IOException e) {
             e.printStackTrace();
         }
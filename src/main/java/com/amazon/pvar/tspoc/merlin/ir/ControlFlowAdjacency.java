@@ -0,0 +1,109 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.ir;
+
+import com.google.common.collect.ImmutableList;
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.Node;
+import dk.brics.tajs.js2flowgraph.FlowGraphBuilder;
+
+import java.util.*;
+
+/**
+ * Immutable node-level control flow successors and predecessors of a single function.
+ * <p>
+ * Neighbours are stored in arrays indexed by node index relative to the smallest node index in the function, and
+ * sorted by node index so that iteration order is deterministic. Instances are built once per function and can be
+ * shared freely between flow function instances and threads.
+ */
+public final class ControlFlowAdjacency {
+
+    private final int firstIndex;
+    private final Node[] nodes;
+    private final ImmutableList<Node>[] successors;
+    private final ImmutableList<Node>[] predecessors;
+
+    private ControlFlowAdjacency(Function function) {
+        final var nodes = FlowgraphUtils.allNodesInFunction(function).toList();
+        firstIndex = nodes.stream().mapToInt(AbstractNode::getIndex).min().orElse(0);
+        final var size = nodes.stream().mapToInt(AbstractNode::getIndex).max().orElse(-1) - firstIndex + 1;
+        this.nodes = new Node[size];
+        for (final var node : nodes) {
+            if (node instanceof Node jsNode) {
+                this.nodes[jsNode.getIndex() - firstIndex] = jsNode;
+            }
+        }
+
+        final List<List<Node>> successorLists = new ArrayList<>(size);
+        final List<List<Node>> predecessorLists = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            successorLists.add(new ArrayList<>());
+            predecessorLists.add(new ArrayList<>());
+        }
+        FlowGraphBuilder.makeNodePredecessorMap(function).forEach((node, preds) -> {
+            if (!(node instanceof Node jsNode)) {
+                return;
+            }
+            for (final var pred : preds) {
+                if (pred instanceof Node jsPred) {
+                    predecessorLists.get(jsNode.getIndex() - firstIndex).add(jsPred);
+                    successorLists.get(jsPred.getIndex() - firstIndex).add(jsNode);
+                }
+            }
+        });
+        successors = toSortedArray(successorLists);
+        predecessors = toSortedArray(predecessorLists);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ImmutableList<Node>[] toSortedArray(List<List<Node>> lists) {
+        final ImmutableList<Node>[] array = new ImmutableList[lists.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ImmutableList.sortedCopyOf(Comparator.comparingInt(Node::getIndex), lists.get(i));
+        }
+        return array;
+    }
+
+    static ControlFlowAdjacency build(Function function) {
+        return new ControlFlowAdjacency(function);
+    }
+
+    private ImmutableList<Node> lookup(ImmutableList<Node>[] neighbours, Node node) {
+        final var i = node.getIndex() - firstIndex;
+        return i >= 0 && i < neighbours.length ? neighbours[i] : ImmutableList.of();
+    }
+
+    /**
+     * @return the node of the function with the given index
+     * @throws NoSuchElementException if the function contains no node with this index
+     */
+    public Node nodeAt(int index) {
+        final var i = index - firstIndex;
+        if (i < 0 || i >= nodes.length || nodes[i] == null) {
+            throw new NoSuchElementException("No node with index " + index);
+        }
+        return nodes[i];
+    }
+
+    public List<Node> successorsOf(Node node) {
+        return lookup(successors, node);
+    }
+
+    public List<Node> predecessorsOf(Node node) {
+        return lookup(predecessors, node);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.ir;
+
+import com.google.common.collect.MapMaker;
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Def/use sites of the registers and variables of a single function, used by the sparse solver mode to jump over
+ * statements that cannot affect a value.
+ * <p>
+ * A statement is relevant for a value if it mentions the value (reads or writes the register, or reads, writes or
+ * catches a variable of the same name), or if it is a barrier: a statement whose flow functions do more than pass
+ * unrelated values through, such as calls, returns, property accesses and function declarations, as well as the
+ * function's entry and exit points. All other statements pass the value through unchanged in both directions, so a
+ * value reaching one of them can be propagated directly to the next relevant statements instead.
+ * <p>
+ * The tables only store node indices, register numbers and variable names, so that they do not keep their functions
+ * alive through the weak-key cache.
+ */
+public final class DefUseSites {
+
+    private static final ConcurrentMap<Function, DefUseSites> cache = new MapMaker().weakKeys().makeMap();
+
+    /**
+     * Statement types whose flow functions propagate every value they do not mention unchanged to all successors
+     * (forwards) or predecessors (backwards)
+     */
+    private static final Set<Class<? extends Node>> TRANSPARENT_NODE_TYPES = Set.of(
+            BinaryOperatorNode.class,
+            UnaryOperatorNode.class,
+            ReadVariableNode.class,
+            WriteVariableNode.class,
+            ConstantNode.class,
+            NewObjectNode.class,
+            DeclareVariableNode.class,
+            IfNode.class,
+            NopNode.class,
+            BeginLoopNode.class,
+            EndLoopNode.class
+    );
+
+    /**
+     * @param name the variable name, or null if the value is the register with number register
+     */
+    private record FrontierKey(boolean forward, int nodeIndex, int register, String name) {
+    }
+
+    private final int firstIndex;
+    private final BitSet barriers = new BitSet();
+    private final Map<Integer, BitSet> registerSites = new HashMap<>();
+    private final Map<String, BitSet> variableSites = new HashMap<>();
+    /**
+     * Node indices of the next relevant statements
+     */
+    private final Map<FrontierKey, int[]> frontiers = new ConcurrentHashMap<>();
+
+    private DefUseSites(Function function) {
+        final var nodes = FlowgraphUtils.allNodesInFunction(function).toList();
+        this.firstIndex = nodes.stream().mapToInt(AbstractNode::getIndex).min().orElse(0);
+        final var adjacency = FlowgraphUtils.adjacencyOf(function);
+        final var entry = function.getEntry().getFirstNode();
+        for (final var abstractNode : nodes) {
+            if (!(abstractNode instanceof Node node)) {
+                continue;
+            }
+            final var offset = node.getIndex() - firstIndex;
+            if (!TRANSPARENT_NODE_TYPES.contains(node.getClass()) || node == entry ||
+                    adjacency.successorsOf(node).isEmpty() || adjacency.predecessorsOf(node).isEmpty()) {
+                barriers.set(offset);
+                continue;
+            }
+            if (node instanceof BinaryOperatorNode n) {
+                addRegisters(offset, n.getResultRegister(), n.getArg1Register(), n.getArg2Register());
+            } else if (node instanceof UnaryOperatorNode n) {
+                addRegisters(offset, n.getResultRegister(), n.getArgRegister());
+            } else if (node instanceof ReadVariableNode n) {
+                addRegisters(offset, n.getResultRegister(), n.getResultBaseRegister());
+                addVariable(offset, n.getVariableName());
+            } else if (node instanceof WriteVariableNode n) {
+                addRegisters(offset, n.getValueRegister());
+                addVariable(offset, n.getVariableName());
+            } else if (node instanceof ConstantNode n) {
+                if (n.getResultRegister() == 1) {
+                    // Marks a function entry for the backward flow functions
+                    barriers.set(offset);
+                }
+                addRegisters(offset, n.getResultRegister());
+            } else if (node instanceof NewObjectNode n) {
+                addRegisters(offset, n.getResultRegister());
+            } else if (node instanceof IfNode n) {
+                addRegisters(offset, n.getConditionRegister());
+            }
+        }
+    }
+
+    public static DefUseSites of(Function function) {
+        return cache.computeIfAbsent(function, DefUseSites::new);
+    }
+
+    /**
+     * @return true if the sparse mode may move value past irrelevant statements, i.e. value is exactly a register or
+     * a variable. Other values (allocations, method calls, ...) always take every step.
+     */
+    public static boolean isSparseValue(Value value) {
+        return value instanceof Register || value instanceof Variable;
+    }
+
+    private void addRegisters(int offset, int... registers) {
+        for (final var register : registers) {
+            if (register != -1) {
+                registerSites.computeIfAbsent(register, key -> new BitSet()).set(offset);
+            }
+        }
+    }
+
+    private void addVariable(int offset, String name) {
+        if (name != null) {
+            variableSites.computeIfAbsent(name, key -> new BitSet()).set(offset);
+        }
+    }
+
+    private boolean isRelevant(Node node, Value value) {
+        final var offset = node.getIndex() - firstIndex;
+        if (barriers.get(offset)) {
+            return true;
+        }
+        if (value instanceof Register register) {
+            if (!register.getContainingFunction().equals(node.getBlock().getFunction())) {
+                return true;
+            }
+            final var sites = registerSites.get(register.getId());
+            return sites != null && sites.get(offset);
+        } else if (value instanceof Variable variable) {
+            final var sites = variableSites.get(variable.getVarName());
+            return sites != null && sites.get(offset);
+        }
+        return true;
+    }
+
+    /**
+     * @return the statements at which value, arriving at node, must next be processed: node itself if it is relevant
+     * for value, otherwise the first relevant statements reachable from node through statements that are not, in the
+     * direction of the analysis
+     */
+    public List<Node> nextRelevantNodes(Node node, Value value, boolean forward) {
+        if (isRelevant(node, value)) {
+            return List.of(node);
+        }
+        final var adjacency = FlowgraphUtils.adjacencyOf(node.getBlock().getFunction());
+        final var key = value instanceof Variable variable
+                ? new FrontierKey(forward, node.getIndex(), -1, variable.getVarName())
+                : new FrontierKey(forward, node.getIndex(), ((Register) value).getId(), null);
+        final var frontier = frontiers.computeIfAbsent(key,
+                k -> computeFrontier(adjacency, node, value, forward));
+        final List<Node> result = new ArrayList<>(frontier.length);
+        for (final var index : frontier) {
+            result.add(adjacency.nodeAt(index));
+        }
+        return result;
+    }
+
+    private int[] computeFrontier(ControlFlowAdjacency adjacency, Node start, Value value, boolean forward) {
+        final var visited = new BitSet();
+        final var frontier = new BitSet();
+        final Deque<Node> worklist = new ArrayDeque<>();
+        worklist.add(start);
+        visited.set(start.getIndex() - firstIndex);
+        while (!worklist.isEmpty()) {
+            final var current = worklist.remove();
+            final var neighbours = forward ? adjacency.successorsOf(current) : adjacency.predecessorsOf(current);
+            for (final var neighbour : neighbours) {
+                final var offset = neighbour.getIndex() - firstIndex;
+                if (visited.get(offset)) {
+                    continue;
+                }
+                visited.set(offset);
+                if (isRelevant(neighbour, value)) {
+                    frontier.set(neighbour.getIndex());
+                } else {
+                    worklist.add(neighbour);
+                }
+            }
+        }
+        return frontier.stream().toArray();
+    }
+}
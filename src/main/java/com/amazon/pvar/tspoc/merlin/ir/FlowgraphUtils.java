@@ -5,9 +5,9 @@ import dk.brics.tajs.flowgraph.FlowGraph;
 import dk.brics.tajs.flowgraph.Function;
 import dk.brics.tajs.flowgraph.jsnodes.CallNode;
 import dk.brics.tajs.flowgraph.jsnodes.Node;
-import dk.brics.tajs.js2flowgraph.FlowGraphBuilder;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 public class FlowgraphUtils {
@@ -28,19 +28,22 @@ public class FlowgraphUtils {
                 .findFirst();
     }
 
-    public synchronized static Stream<Node> predecessorsOf(Node node) {
-        return predecessorMapCache
-                .computeIfAbsent(node.getBlock().getFunction(), FlowGraphBuilder::makeNodePredecessorMap)
-                .get(node)
-                .stream()
-                .filter(abstractNode -> abstractNode instanceof Node)
-                .map(abstractNode -> ((Node) abstractNode));
+    public static ControlFlowAdjacency adjacencyOf(Function function) {
+        return adjacencyCache.computeIfAbsent(function, ControlFlowAdjacency::build);
+    }
+
+    public static List<Node> predecessorsOf(Node node) {
+        return adjacencyOf(node.getBlock().getFunction()).predecessorsOf(node);
+    }
+
+    public static List<Node> successorsOf(Node node) {
+        return adjacencyOf(node.getBlock().getFunction()).successorsOf(node);
     }
 
     public static boolean isMethodCallWithStaticProperty(CallNode callNode) {
         return callNode.getFunctionRegister() == -1 && callNode.getPropertyString() != null;
     }
 
-    private final static Map<Function, Map<AbstractNode, Set<AbstractNode>>> predecessorMapCache = Collections.synchronizedMap(new HashMap<>());
+    private final static Map<Function, ControlFlowAdjacency> adjacencyCache = new ConcurrentHashMap<>();
 
 }
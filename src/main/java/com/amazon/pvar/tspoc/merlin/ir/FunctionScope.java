@@ -15,43 +15,75 @@
 
 package com.amazon.pvar.tspoc.merlin.ir;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapMaker;
 import dk.brics.tajs.flowgraph.Function;
 
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
- * Representation of the chain of nested functions (starting at the outermost scope) in which a variable is declared
+ * Representation of the chain of nested functions (starting at the innermost scope) in which a variable is declared.
+ * <p>
+ * There is a single FunctionScope per function, obtained through {@link #of(Function)}. Scopes are compared by
+ * identity, and each scope carries a unique id that variables use for cheap equality checks and hashing.
  */
 public class FunctionScope {
 
-    private final LinkedList<Function> scopeChain = new LinkedList<>();
+    /**
+     * Canonical scopes. Values are weak so that a scope, and through its chain the function it belongs to, can be
+     * collected once no variable refers to it.
+     */
+    private static final ConcurrentMap<Function, FunctionScope> scopes =
+            new MapMaker().weakKeys().weakValues().makeMap();
+    private static final AtomicInteger nextId = new AtomicInteger();
 
-    public FunctionScope(Function initialFunction) {
-        scopeChain.add(initialFunction);
-        Function next = initialFunction.getOuterFunction();
-        while (Objects.nonNull(next)) {
-            scopeChain.add(next);
-            next = next.getOuterFunction();
+    private final ImmutableList<Function> scopeChain;
+    private final int id;
+
+    private FunctionScope(Function initialFunction) {
+        final var builder = ImmutableList.<Function>builder().add(initialFunction);
+        if (Objects.nonNull(initialFunction.getOuterFunction())) {
+            builder.addAll(of(initialFunction.getOuterFunction()).scopeChain);
+        }
+        this.scopeChain = builder.build();
+        this.id = nextId.getAndIncrement();
+    }
+
+    public static FunctionScope of(Function function) {
+        final var scope = scopes.get(function);
+        if (scope != null) {
+            return scope;
         }
+        // Not computeIfAbsent, since creating a scope recursively obtains the scopes of the outer functions
+        final var newScope = new FunctionScope(function);
+        final var existing = scopes.putIfAbsent(function, newScope);
+        return existing != null ? existing : newScope;
     }
 
-    public LinkedList<Function> getScopeChain() {
+    public List<Function> getScopeChain() {
         return scopeChain;
     }
 
+    public Function getFunction() {
+        return scopeChain.get(0);
+    }
+
+    public int getId() {
+        return id;
+    }
+
     @Override
     public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        FunctionScope that = (FunctionScope) o;
-        return Objects.equals(scopeChain, that.scopeChain);
+        return this == o;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(scopeChain);
+        return id;
     }
 
     @Override
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.ir;
+
+import com.google.common.collect.MapMaker;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.Node;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Constant-time lookup of flowgraph nodes by their index.
+ * <p>
+ * The index stores all nodes of a flowgraph in an array indexed by {@link Node#getIndex()}, together with the range
+ * of node indices used by each function. It is built once per flowgraph by {@link #of(FlowGraph)}, after which it
+ * can also be found from any of the flowgraph's functions.
+ */
+public final class NodeIndex {
+
+    private static final ConcurrentMap<FlowGraph, NodeIndex> byFlowGraph = new MapMaker().weakKeys().makeMap();
+    /**
+     * Values are weak, so that an index lives exactly as long as its flowgraph
+     */
+    private static final ConcurrentMap<Function, NodeIndex> byFunction =
+            new MapMaker().weakKeys().weakValues().makeMap();
+
+    private record IndexRange(int first, int last) {
+    }
+
+    private final Node[] nodes;
+    private final Map<Function, IndexRange> functionRanges = new HashMap<>();
+
+    private NodeIndex(FlowGraph flowGraph) {
+        final var allNodes = FlowgraphUtils.allNodes(flowGraph)
+                .filter(node -> node instanceof Node)
+                .map(node -> (Node) node)
+                .toList();
+        nodes = new Node[allNodes.stream().mapToInt(Node::getIndex).max().orElse(-1) + 1];
+        for (final var node : allNodes) {
+            nodes[node.getIndex()] = node;
+            functionRanges.merge(
+                    node.getBlock().getFunction(),
+                    new IndexRange(node.getIndex(), node.getIndex()),
+                    (a, b) -> new IndexRange(Math.min(a.first(), b.first()), Math.max(a.last(), b.last()))
+            );
+        }
+    }
+
+    public static NodeIndex of(FlowGraph flowGraph) {
+        return byFlowGraph.computeIfAbsent(flowGraph, key -> {
+            final var index = new NodeIndex(key);
+            key.getFunctions().forEach(function -> byFunction.put(function, index));
+            return index;
+        });
+    }
+
+    /**
+     * @return the index of the flowgraph containing function, if that flowgraph has been indexed
+     */
+    public static Optional<NodeIndex> forFunction(Function function) {
+        return Optional.ofNullable(byFunction.get(function));
+    }
+
+    /**
+     * @return the node with the given index
+     * @throws NoSuchElementException if the flowgraph contains no node with this index
+     */
+    public Node getNode(int index) {
+        if (index < 0 || index >= nodes.length || nodes[index] == null) {
+            throw new NoSuchElementException("No node with index " + index);
+        }
+        return nodes[index];
+    }
+
+    /**
+     * @return the node with the given index, which must belong to function
+     * @throws NoSuchElementException if function contains no node with this index
+     */
+    public Node getNode(int index, Function function) {
+        final var range = functionRanges.get(function);
+        if (range == null || index < range.first() || index > range.last() ||
+                nodes[index] == null || nodes[index].getBlock().getFunction() != function) {
+            throw new NoSuchElementException("No node with index " + index + " in " + function);
+        }
+        return nodes[index];
+    }
+
+    /**
+     * @return the nodes of function, in index order
+     */
+    public List<Node> nodesOf(Function function) {
+        final var range = functionRanges.get(function);
+        if (range == null) {
+            return List.of();
+        }
+        final List<Node> result = new ArrayList<>();
+        for (int i = range.first(); i <= range.last(); i++) {
+            // Nodes of nested functions may have indices within the range of their enclosing function
+            if (nodes[i] != null && nodes[i].getBlock().getFunction() == function) {
+                result.add(nodes[i]);
+            }
+        }
+        return result;
+    }
+}
@@ -15,6 +15,8 @@
 
 package com.amazon.pvar.tspoc.merlin.ir;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import dk.brics.tajs.flowgraph.SourceLocation;
 import dk.brics.tajs.flowgraph.jsnodes.Node;
 import dk.brics.tajs.flowgraph.jsnodes.NopNode;
@@ -33,10 +35,21 @@ import java.util.Objects;
  */
 public class NodeState implements Location {
 
+    private static final Interner<NodeState> interner = Interners.newWeakInterner();
+
     private final Node node;
+    private final int hash;
 
-    public NodeState(Node node) {
+    protected NodeState(Node node) {
         this.node = node;
+        this.hash = Objects.hash(node);
+    }
+
+    /**
+     * @return the canonical NodeState for the given node. NodeStates obtained this way can be compared by identity.
+     */
+    public static NodeState of(Node node) {
+        return interner.intern(new NodeState(node));
     }
 
     public Node getNode() {
@@ -64,12 +77,12 @@ public class NodeState implements Location {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         NodeState that = (NodeState) o;
-        return Objects.equals(node, that.node);
+        return hash == that.hash && Objects.equals(node, that.node);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(node);
+        return hash;
     }
 
     @Override
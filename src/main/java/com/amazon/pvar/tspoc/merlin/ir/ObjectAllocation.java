@@ -39,9 +39,9 @@ public class ObjectAllocation extends Register implements Allocation {
                 : ((CallNode) allocationStatement).getResultRegister(),
                 allocationStatement.getBlock().getFunction());
         if (allocationStatement instanceof NewObjectNode newObjectNode) {
-            resultRegister = new Register(newObjectNode.getResultRegister(), allocationStatement.getBlock().getFunction());
+            resultRegister = Register.of(newObjectNode.getResultRegister(), allocationStatement.getBlock().getFunction());
         } else if (allocationStatement instanceof CallNode callNode && callNode.isConstructorCall()) {
-            resultRegister = new Register(callNode.getResultRegister(), callNode.getBlock().getFunction());
+            resultRegister = Register.of(callNode.getResultRegister(), callNode.getBlock().getFunction());
         } else {
             throw new RuntimeException("Only NewObjectNodes or constructor call nodes can be used as object allocations");
         }
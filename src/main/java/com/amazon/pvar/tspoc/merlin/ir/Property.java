@@ -15,6 +15,8 @@
 
 package com.amazon.pvar.tspoc.merlin.ir;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import wpds.interfaces.Empty;
 import wpds.wildcard.Wildcard;
 
@@ -25,10 +27,21 @@ import java.util.Objects;
  */
 public class Property extends Value {
 
+    private static final Interner<Property> interner = Interners.newWeakInterner();
+
     private final String propertyName;
+    private final int hash;
 
-    public Property(String propertyName) {
+    private Property(String propertyName) {
         this.propertyName = propertyName;
+        this.hash = Objects.hash(propertyName);
+    }
+
+    /**
+     * @return the canonical property with the given name. Properties obtained this way can be compared by identity.
+     */
+    public static Property of(String propertyName) {
+        return interner.intern(new Property(propertyName));
     }
 
     public String getPropertyName() {
@@ -57,12 +70,12 @@ public class Property extends Value {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Property property = (Property) o;
-        return Objects.equals(propertyName, property.propertyName);
+        return hash == property.hash && Objects.equals(propertyName, property.propertyName);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(propertyName);
+        return hash;
     }
 
     /**
@@ -15,6 +15,8 @@
 
 package com.amazon.pvar.tspoc.merlin.ir;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import dk.brics.tajs.flowgraph.Function;
 
 import java.util.Objects;
@@ -24,12 +26,24 @@ import java.util.Objects;
  */
 public class Register extends Value {
 
+    private static final Interner<Register> interner = Interners.newWeakInterner();
+
     private final int id;
     private final Function containingFunction;
+    private final int hash;
 
-    public Register(int id, Function containingFunction) {
+    protected Register(int id, Function containingFunction) {
         this.id = id;
         this.containingFunction = containingFunction;
+        this.hash = Objects.hash(id, containingFunction);
+    }
+
+    /**
+     * @return the canonical register with the given id in the given function. Registers obtained this way can be
+     * compared by identity.
+     */
+    public static Register of(int id, Function containingFunction) {
+        return interner.intern(new Register(id, containingFunction));
     }
 
     public int getId() {
@@ -45,12 +59,12 @@ public class Register extends Value {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Register register = (Register) o;
-        return id == register.id && containingFunction.equals(register.containingFunction);
+        return id == register.id && hash == register.hash && containingFunction.equals(register.containingFunction);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, containingFunction);
+        return hash;
     }
 
     @Override
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.ir;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.DeclareFunctionNode;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves variable names to the functions that declare them.
+ * <p>
+ * A function declares a name if it is one of its variables or parameters, or the name of a function declared directly
+ * in its body. For each function, the set of declared names is computed once, and every name looked up in the function
+ * is resolved once and memoized, so repeated lookups from the flow functions take constant time.
+ * <p>
+ * Resolutions are stored as scope depths (0 being the outermost function) rather than as functions, so that the
+ * per-function tables do not keep their functions alive.
+ */
+public final class ScopeResolution {
+
+    private static final int UNDECLARED = -1;
+
+    private static final ConcurrentMap<Function, ScopeResolution> tables = new MapMaker().weakKeys().makeMap();
+
+    private final ImmutableSet<String> declaredNames;
+    private final int depth;
+    private final ConcurrentMap<String, Integer> resolvedDepths = new ConcurrentHashMap<>();
+
+    private ScopeResolution(Function function) {
+        final var builder = ImmutableSet.<String>builder()
+                .addAll(function.getVariableNames())
+                .addAll(function.getParameterNames());
+        function.getBlocks().stream()
+                .flatMap(block -> block.getNodes().stream())
+                .filter(node -> node instanceof DeclareFunctionNode)
+                .map(node -> ((DeclareFunctionNode) node).getFunction().getName())
+                .filter(Objects::nonNull)
+                .forEach(builder::add);
+        this.declaredNames = builder.build();
+        this.depth = FunctionScope.of(function).getScopeChain().size() - 1;
+    }
+
+    private static ScopeResolution of(Function function) {
+        return tables.computeIfAbsent(function, ScopeResolution::new);
+    }
+
+    /**
+     * @return the names declared directly by function: its variables, parameters and directly declared functions
+     */
+    static ImmutableSet<String> declaredNames(Function function) {
+        return of(function).declaredNames;
+    }
+
+    /**
+     * Compute the tables for every function of the flowgraph up front, instead of on first use by the analysis.
+     */
+    public static void precompute(FlowGraph flowGraph) {
+        flowGraph.getFunctions().forEach(ScopeResolution::of);
+    }
+
+    private int resolveDepth(Function function, String name) {
+        return resolvedDepths.computeIfAbsent(name, key -> {
+            if (declaredNames.contains(key)) {
+                return depth;
+            }
+            final var outer = function.getOuterFunction();
+            return Objects.isNull(outer) ? UNDECLARED : of(outer).resolveDepth(outer, key);
+        });
+    }
+
+    /**
+     * @return the enclosing function (or usageScope itself) at the given depth
+     */
+    private static Function ancestorAtDepth(Function usageScope, int depth) {
+        final var scopeChain = FunctionScope.of(usageScope).getScopeChain();
+        return scopeChain.get(scopeChain.size() - 1 - depth);
+    }
+
+    /**
+     * @return the innermost function enclosing (or equal to) usageScope that declares name, or null if no enclosing
+     * function declares it
+     */
+    public static Function declaringScope(String name, Function usageScope) {
+        final var resolvedDepth = of(usageScope).resolveDepth(usageScope, name);
+        return resolvedDepth == UNDECLARED ? null : ancestorAtDepth(usageScope, resolvedDepth);
+    }
+
+    /**
+     * @return the outermost function enclosing (or equal to) the given function
+     */
+    public static Function outermostScope(Function function) {
+        return ancestorAtDepth(function, 0);
+    }
+
+    /**
+     * @return true if a variable named name declared in declaringFunction is visible in function, i.e.
+     * declaringFunction encloses (or is) function and no function in between declares another variable of the same
+     * name
+     */
+    public static boolean isVisibleIn(String name, Function declaringFunction, Function function) {
+        final var declaringDepth = of(declaringFunction).depth;
+        final var usageTable = of(function);
+        if (declaringDepth > usageTable.depth || ancestorAtDepth(function, declaringDepth) != declaringFunction) {
+            return false;
+        }
+        // The name may resolve to a scope outside declaringFunction (or not at all) for variables whose declaring
+        // scope was only approximated, which is still visible as long as nothing in between shadows it
+        return usageTable.resolveDepth(function, name) <= declaringDepth;
+    }
+}
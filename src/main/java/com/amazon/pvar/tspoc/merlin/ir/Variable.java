@@ -15,22 +15,37 @@
 
 package com.amazon.pvar.tspoc.merlin.ir;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import dk.brics.tajs.flowgraph.Function;
 
 import java.util.Objects;
 
+
 /**
  * A Wrapper for TAJS's string-based representation of variables that implements the SPDS Location interface.
  * Variables of the same name declared in different functions are differentiated by their scope chain
  */
 public class Variable extends Value {
 
+    private static final Interner<Variable> interner = Interners.newWeakInterner();
+
     private final String varName;
     private final FunctionScope scope;
+    private final int hash;
 
-    public Variable(String varName, Function declaringFunction) {
+    private Variable(String varName, Function declaringFunction) {
         this.varName = varName;
-        this.scope = new FunctionScope(declaringFunction);
+        this.scope = FunctionScope.of(declaringFunction);
+        this.hash = 31 * Objects.hashCode(varName) + scope.getId();
+    }
+
+    /**
+     * @return the canonical variable with the given name declared in the given function. Variables obtained this way
+     * can be compared by identity.
+     */
+    public static Variable of(String varName, Function declaringFunction) {
+        return interner.intern(new Variable(varName, declaringFunction));
     }
 
     public String getVarName() {
@@ -42,7 +57,7 @@ public class Variable extends Value {
     }
 
     public Function getDeclaringFunction() {
-        return scope.getScopeChain().getFirst();
+        return scope.getFunction();
     }
 
     /**
@@ -53,19 +68,7 @@ public class Variable extends Value {
      * @return
      */
     public boolean isVisibleIn(Function function) {
-        Function varDeclaringFunction = getDeclaringFunction();
-        Function current = function;
-        while (Objects.nonNull(current) && !Objects.equals(current, varDeclaringFunction)) {
-            if (current.getParameterNames().contains(varName) ||
-                current.getVariableNames().contains(varName)) {
-                // This variable is shadowed by another variable with the same name in an inner scope
-                return false;
-            }
-            current = current.getOuterFunction();
-        }
-        // If current is null, we reached the outermost scope without encountering the variable's declaring scope
-        // Otherwise, the variable is visible
-        return !Objects.isNull(current);
+        return ScopeResolution.isVisibleIn(varName, getDeclaringFunction(), function);
     }
 
     public boolean capturedIn(Function function) {
@@ -84,11 +87,13 @@ public class Variable extends Value {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Variable variable = (Variable) o;
-        return Objects.equals(varName, variable.varName) && Objects.equals(scope, variable.scope);
+        // Names usually come from the same TAJS node and are then identical, so check identity before equals
+        return scope.getId() == variable.scope.getId() &&
+                (varName == variable.varName || Objects.equals(varName, variable.varName));
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(varName, scope);
+        return hash;
     }
 }
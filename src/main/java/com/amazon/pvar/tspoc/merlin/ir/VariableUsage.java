@@ -0,0 +1,186 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.ir;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.CatchNode;
+import dk.brics.tajs.flowgraph.jsnodes.DeclareFunctionNode;
+import dk.brics.tajs.flowgraph.jsnodes.ReadVariableNode;
+import dk.brics.tajs.flowgraph.jsnodes.WriteVariableNode;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Syntactic variable usage of every function of a program.
+ * <p>
+ * The table is computed once per flowgraph, bottom-up over the function nesting tree: all functions at the same
+ * nesting depth are processed in parallel, starting from the innermost ones, so that the sets of each function can be
+ * built from those of the functions it declares.
+ * <p>
+ * Like {@link ScopeResolution}, the table only stores names and holds its functions weakly, so that it can be kept
+ * strongly for as long as the program it describes is alive without keeping that program alive itself.
+ */
+public final class VariableUsage {
+
+    /**
+     * @param reads names read by ReadVariableNodes of the function itself
+     * @param writes names written by WriteVariableNodes of the function itself
+     * @param freeVariables names read (or bound by catch clauses) in the function or any nested function that are not
+     *                      bound by the function itself; see
+     *                      {@link com.amazon.pvar.tspoc.merlin.solver.CapturedVariableAnalysis}
+     * @param nestedReferences names read or written in a nested function that resolve to a declaration in this
+     *                         function or further out
+     */
+    public record FunctionVariables(
+            ImmutableSet<String> reads,
+            ImmutableSet<String> writes,
+            ImmutableSet<String> freeVariables,
+            ImmutableSet<String> nestedReferences
+    ) {
+
+        /**
+         * @return true if name is read or written in the function or in a nested function that does not shadow it
+         */
+        public boolean references(String name) {
+            return reads.contains(name) || writes.contains(name) || nestedReferences.contains(name);
+        }
+    }
+
+    private static final ConcurrentMap<FlowGraph, VariableUsage> byFlowGraph = new MapMaker().weakKeys().makeMap();
+    /**
+     * Values are weak, so that a table lives exactly as long as its flowgraph
+     */
+    private static final ConcurrentMap<Function, VariableUsage> byFunction =
+            new MapMaker().weakKeys().weakValues().makeMap();
+    /**
+     * Tables computed for programs whose flowgraph was not indexed, owned by their outermost function
+     */
+    private static final ConcurrentMap<Function, VariableUsage> byOutermostScope = new MapMaker().weakKeys().makeMap();
+
+    private final ConcurrentMap<Function, FunctionVariables> functionVariables = new MapMaker().weakKeys().makeMap();
+
+    private VariableUsage(Collection<Function> functions) {
+        final var byDepth = functions.stream()
+                .collect(Collectors.groupingBy(function -> FunctionScope.of(function).getScopeChain().size()));
+        final var depths = new ArrayList<>(byDepth.keySet());
+        depths.sort(Comparator.reverseOrder());
+        for (final var depth : depths) {
+            byDepth.get(depth).parallelStream().forEach(this::variablesOf);
+        }
+        functions.forEach(function -> byFunction.put(function, this));
+    }
+
+    public static VariableUsage of(FlowGraph flowGraph) {
+        return byFlowGraph.computeIfAbsent(flowGraph, key -> new VariableUsage(key.getFunctions()));
+    }
+
+    /**
+     * @return the variable usage of function. If the flowgraph of function has not been indexed by
+     * {@link #of(FlowGraph)}, the usage is computed for the functions nested in its outermost scope.
+     */
+    public static FunctionVariables forFunction(Function function) {
+        var table = byFunction.get(function);
+        if (table == null) {
+            table = forOutermostScope(ScopeResolution.outermostScope(function));
+        }
+        return table.variablesOf(function);
+    }
+
+    private static VariableUsage forOutermostScope(Function outermost) {
+        final var existing = byOutermostScope.get(outermost);
+        if (existing != null) {
+            return existing;
+        }
+        // Computing a table is expensive, so threads resolving functions of the same program wait for a single one
+        synchronized (byOutermostScope) {
+            return byOutermostScope.computeIfAbsent(outermost, key -> new VariableUsage(nestingTree(key)));
+        }
+    }
+
+    /**
+     * @return root and all functions declared in it, directly or in nested functions
+     */
+    public static List<Function> nestingTree(Function root) {
+        final List<Function> result = new ArrayList<>();
+        final Deque<Function> worklist = new ArrayDeque<>();
+        worklist.add(root);
+        while (!worklist.isEmpty()) {
+            final var current = worklist.remove();
+            result.add(current);
+            FlowgraphUtils.allNodesInFunction(current)
+                    .filter(node -> node instanceof DeclareFunctionNode)
+                    .forEach(node -> worklist.add(((DeclareFunctionNode) node).getFunction()));
+        }
+        return result;
+    }
+
+    private FunctionVariables variablesOf(Function function) {
+        final var existing = functionVariables.get(function);
+        if (existing != null) {
+            return existing;
+        }
+        // Nested functions are normally computed before their enclosing function, so this only recurses for
+        // functions that were missing from the table
+        final var computed = compute(function);
+        final var previous = functionVariables.putIfAbsent(function, computed);
+        return previous == null ? computed : previous;
+    }
+
+    private FunctionVariables compute(Function function) {
+        final var reads = ImmutableSet.<String>builder();
+        final var writes = ImmutableSet.<String>builder();
+        final var catchNames = ImmutableSet.<String>builder();
+        final List<DeclareFunctionNode> declarations = new ArrayList<>();
+        FlowgraphUtils.allNodesInFunction(function).forEach(node -> {
+            if (node instanceof ReadVariableNode readVar) {
+                reads.add(readVar.getVariableName());
+            } else if (node instanceof WriteVariableNode writeVar) {
+                writes.add(writeVar.getVariableName());
+            } else if (node instanceof CatchNode catchNode && catchNode.getVariableName() != null) {
+                catchNames.add(catchNode.getVariableName());
+            } else if (node instanceof DeclareFunctionNode declFun) {
+                declarations.add(declFun);
+            }
+        });
+        final var readSet = reads.build();
+        final var writeSet = writes.build();
+
+        final Set<String> bound = new HashSet<>(function.getVariableNames());
+        if (function.getName() != null) {
+            bound.add(function.getName());
+        }
+        final var freeVariables = ImmutableSet.<String>builder();
+        readSet.stream().filter(name -> !bound.contains(name)).forEach(freeVariables::add);
+        catchNames.build().stream().filter(name -> !bound.contains(name)).forEach(freeVariables::add);
+        final var nestedReferences = ImmutableSet.<String>builder();
+        for (final var declaration : declarations) {
+            final var nested = declaration.getFunction();
+            final var nestedVariables = variablesOf(nested);
+            freeVariables.addAll(nestedVariables.freeVariables());
+            final var shadowed = ScopeResolution.declaredNames(nested);
+            for (final var names : List.of(nestedVariables.reads(), nestedVariables.writes(),
+                    nestedVariables.nestedReferences())) {
+                names.stream().filter(name -> !shadowed.contains(name)).forEach(nestedReferences::add);
+            }
+        }
+        return new FunctionVariables(readSet, writeSet, freeVariables.build(), nestedReferences.build());
+    }
+}
@@ -1,6 +1,6 @@
 package com.amazon.pvar.tspoc.merlin.livecollections
 
-import scala.collection.mutable
+import java.util.concurrent.atomic.AtomicReference
 import scala.jdk.CollectionConverters._
 
 /** Trait for collections allowing to register callbacks when new events are
@@ -44,28 +44,60 @@ sealed trait LiveCollection[A] {
 /** A set that allows registering callbacks for new elements that are added.
   * Each live set is associated with a `Scheduler` to allow waiting for all
   * computations related to this liveset to complete.
+  *
+  * Elements and handlers are kept together in one immutable state that is
+  * replaced by compare-and-set, so neither adding an element nor registering a
+  * handler takes a lock. Whichever of the two replaces the state last runs the
+  * handler on the element, which runs every handler exactly once on every
+  * element. Handlers are submitted to the scheduler after the update, never
+  * run by the caller.
   */
 class LiveSet[A](sched: Scheduler) extends LiveCollection[A] {
-  private val handlers: mutable.Set[Handler[A]] = mutable.Set.empty
-  private val elems: mutable.Set[A] = mutable.Set.empty
+  private val state =
+    new AtomicReference(LiveSet.State[A](Set.empty, Set.empty))
 
-  override def onAdd(handler: Handler[A]): Unit = synchronized {
-    if (!handlers.contains(handler)) {
-      handlers += handler
-      elems.foreach(answer => {
+  override def onAdd(handler: Handler[A]): Unit = {
+    val previous = state.getAndUpdate(s =>
+      if (s.handlers.contains(handler)) s
+      else s.copy(handlers = s.handlers + handler)
+    )
+    if (!previous.handlers.contains(handler)) {
+      previous.elems.foreach(answer => {
         sched.addThread(handler.run(answer))
       })
     }
   }
 
-  /** Adds an element to the LiveSet and runs any handlers registered on it. */
-  def add(elem: A): Unit = synchronized {
-    if (!elems.contains(elem)) {
-      elems += elem
-      handlers.foreach(handler => sched.addThread(handler.run(elem)))
+  /** Adds an element to the LiveSet and runs any handlers registered on it.
+    *
+    * @return
+    *   true if the element was not in the set yet
+    */
+  def add(elem: A): Boolean = {
+    val previous = state.getAndUpdate(s =>
+      if (s.elems.contains(elem)) s else s.copy(elems = s.elems + elem)
+    )
+    val added = !previous.elems.contains(elem)
+    if (added) {
+      previous.handlers.foreach(handler => sched.addThread(handler.run(elem)))
     }
+    added
   }
 
+  /** Whether elem has been added, without waiting for the scheduler. */
+  def contains(elem: A): Boolean = state.get().elems.contains(elem)
+
+  /** The current elements, without waiting for the scheduler. The returned
+    * set is immutable and does not reflect elements added later.
+    */
+  def elements: java.util.Set[A] = state.get().elems.asJava
+
+  /** The current number of elements, without waiting for the scheduler. */
+  def size: Int = state.get().elems.size
+
+  /** The number of handlers registered on this set. */
+  def handlerCount: Int = state.get().handlers.size
+
   /** Block until all computations on the same scheduler have finished. */
   def waitUntilStable(): Unit = sched.waitUntilDone()
 
@@ -73,11 +105,75 @@ class LiveSet[A](sched: Scheduler) extends LiveCollection[A] {
     */
   override def toSet: Set[A] = {
     waitUntilStable()
-    elems.toSet
+    state.get().elems
   }
 
 }
 
+object LiveSet {
+  private case class State[A](elems: Set[A], handlers: Set[Handler[A]])
+}
+
+/** A live collection for owners that already deduplicate elements in indices
+  * of their own, such as the call graph, so that the view does not keep a
+  * second set of them. The owner adds each element exactly once. Elements are
+  * kept in
+  * insertion order, newest first, in an immutable list that shares its state
+  * with the handlers, so that adding an element and registering a handler are
+  * lock-free and every handler runs exactly once on every element, as for
+  * `LiveSet`.
+  */
+final class LiveView[A](sched: Scheduler) extends LiveCollection[A] {
+  private val state = new AtomicReference(LiveView.State[A](Nil, 0, Nil))
+
+  override def onAdd(handler: Handler[A]): Unit = {
+    val previous = state.getAndUpdate(s =>
+      if (s.handlers.contains(handler)) s
+      else s.copy(handlers = handler :: s.handlers)
+    )
+    if (!previous.handlers.contains(handler)) {
+      previous.elems.foreach(elem => sched.addThread(handler.run(elem)))
+    }
+  }
+
+  /** Stores a new element, then runs the handlers on it. */
+  def add(elem: A): Unit = {
+    val previous = state.getAndUpdate(s =>
+      s.copy(elems = elem :: s.elems, size = s.size + 1)
+    )
+    previous.handlers.foreach(handler => sched.addThread(handler.run(elem)))
+  }
+
+  /** The current number of elements, without waiting for the scheduler. */
+  def size: Int = state.get().size
+
+  /** The current elements, newest first, without waiting for the scheduler.
+    * Iteration does not reflect elements added after this call.
+    */
+  def iterator: java.util.Iterator[A] = state.get().elems.iterator.asJava
+
+  /** The current elements in insertion order, without waiting for the
+    * scheduler.
+    */
+  def elements: java.util.List[A] = state.get().elems.reverse.asJava
+
+  /** The number of handlers registered on this view. */
+  def handlerCount: Int = state.get().handlers.size
+
+  override def toSet: Set[A] = {
+    sched.waitUntilDone()
+    state.get().elems.toSet
+  }
+}
+
+object LiveView {
+  private case class State[A](
+      elems: List[A],
+      size: Int,
+      handlers: List[Handler[A]]
+  )
+}
+
 private case class MappedLiveSet[A, B](liveSet: LiveCollection[A], func: A => B)
     extends LiveCollection[B] {
   override def onAdd(handler: Handler[B]): Unit =
@@ -16,10 +16,118 @@ final class Scheduler(
     while (!pool.awaitQuiescence(1, TimeUnit.HOURS)) {}
   }
 
+  /** Wait until no task is running or waiting to be run, or until the
+    * timeout elapses.
+    *
+    * @return true if the scheduler became quiescent in time
+    */
+  def waitUntilDone(timeout: Long, unit: TimeUnit): Boolean =
+    pool.awaitQuiescence(timeout, unit)
+
+  /** The group of the task running on the current thread, if any */
+  private val currentGroup = new ThreadLocal[TaskGroup]
+
   def addThread(func: => Unit): Unit = {
-    pool.execute(() => func)
+    execute(() => func)
+  }
+
+  /** Java-friendly variant of `addThread`. */
+  def execute(task: Runnable): Unit = {
+    val group = currentGroup.get()
+    if (group == null) {
+      pool.execute(task)
+    } else {
+      group.taskSubmitted()
+      pool.execute(() =>
+        try {
+          runInGroup(group, task)
+        } finally {
+          group.taskFinished()
+        }
+      )
+    }
+  }
+
+  /** Run `task` on the calling thread as part of `group`. Tasks it submits,
+    * and all tasks those submit in turn, belong to the group as well, so that
+    * `group.waitUntilDone` waits for the work caused by `task` rather than
+    * for every task of the scheduler.
+    */
+  def runInGroup(group: TaskGroup, task: Runnable): Unit = {
+    val previous = currentGroup.get()
+    currentGroup.set(group)
+    try {
+      task.run()
+    } finally {
+      currentGroup.set(previous)
+    }
   }
 
+  /** True if no task is running or waiting to be run. Unlike
+    * `waitUntilDone`, this does not block.
+    */
+  def isQuiescent: Boolean =
+    pool.isQuiescent && queuedTaskCount == 0
+
+  /** An estimate of the number of tasks waiting to be run. */
+  def queuedTaskCount: Long =
+    pool.getQueuedTaskCount + pool.getQueuedSubmissionCount
+
+}
+
+/** The tasks submitted on behalf of one client of a scheduler, see
+  * `Scheduler.runInGroup`.
+  */
+final class TaskGroup {
+  private var pending = 0L
+
+  private[livecollections] def taskSubmitted(): Unit = synchronized {
+    pending += 1
+  }
+
+  private[livecollections] def taskFinished(): Unit = synchronized {
+    pending -= 1
+    if (pending == 0) {
+      notifyAll()
+    }
+  }
+
+  /** Wait until no task of the group is running or waiting to be run, or
+    * until the timeout elapses. Must not be called from a task of the group.
+    *
+    * @return true if all tasks of the group finished in time
+    */
+  def waitUntilDone(timeout: Long, unit: TimeUnit): Boolean = synchronized {
+    val deadline = System.nanoTime() + unit.toNanos(timeout)
+    var remaining = unit.toNanos(timeout)
+    while (pending > 0 && remaining > 0) {
+      TimeUnit.NANOSECONDS.timedWait(this, remaining)
+      remaining = deadline - System.nanoTime()
+    }
+    pending == 0
+  }
+
+  /** Wait until no task of the group is running or waiting to be run, or
+    * until `condition` holds. The condition is checked when the last task
+    * finishes and whenever `signal` is called, so tasks that may make it hold
+    * must call `signal`. Must not be called from a task of the group.
+    *
+    * @return
+    *   true if all tasks of the group finished
+    */
+  @throws[InterruptedException]
+  def waitUntilDoneOr(condition: java.util.function.BooleanSupplier): Boolean =
+    synchronized {
+      while (pending > 0 && !condition.getAsBoolean) {
+        wait()
+      }
+      pending == 0
+    }
+
+  /** Wake up threads in `waitUntilDoneOr` to re-check their condition. */
+  def signal(): Unit = synchronized {
+    notifyAll()
+  }
 }
 
 object Scheduler {
@@ -30,4 +138,16 @@ object Scheduler {
   )
 
   def create(pool: ForkJoinPool) = new Scheduler(pool)
+
+  /** A single-threaded scheduler for live collections that do not belong to a
+    * computation with a scheduler of its own. Created on first use and shared
+    * by all of them, so that they do not each leak a pool; its worker is a
+    * daemon thread and needs no shutdown.
+    */
+  lazy val shared: Scheduler = create()
+
+  /** A scheduler running its tasks on `parallelism` threads. */
+  def create(parallelism: Int): Scheduler = new Scheduler(
+    new ForkJoinPool(parallelism)
+  )
 }
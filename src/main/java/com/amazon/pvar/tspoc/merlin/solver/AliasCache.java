@@ -0,0 +1,112 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.solver;
+
+import com.amazon.pvar.tspoc.merlin.ir.Allocation;
+import com.amazon.pvar.tspoc.merlin.ir.NodeState;
+import com.amazon.pvar.tspoc.merlin.ir.Value;
+import com.amazon.pvar.tspoc.merlin.livecollections.TaggedHandler;
+import dk.brics.tajs.flowgraph.jsnodes.Node;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * Allocation sites of the base values of property accesses, shared by all solvers of a {@link QueryManager}.
+ * <p>
+ * Field reads and writes need the allocations the base register may point to at the access. The first subscriber for
+ * a (location, base) pair starts the backward query for the base and registers a single handler on its points-to
+ * set, which records each allocation and fans it out to all subscribers. Later subscribers, typically solvers for
+ * other initial queries reaching the same property access, receive the allocations resolved so far in one task and
+ * are then notified of new ones by the same handler, instead of each registering their own handler on the points-to
+ * set. Every subscribing solver is recorded as relying on the backward query for the base, see
+ * {@link QueryManager#recordRequest(MerlinSolver, MerlinSolver)}.
+ */
+public final class AliasCache {
+
+    private record Key(Node location, Value base) {
+    }
+
+    private static final class Entry {
+        private final List<Allocation> resolvedBases = new ArrayList<>();
+        private final Map<QueryID, Consumer<Allocation>> subscribers = new LinkedHashMap<>();
+        /**
+         * The backward query for the base, started by the first subscriber
+         */
+        private BackwardMerlinSolver solver = null;
+    }
+
+    private final QueryManager queryManager;
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    public AliasCache(QueryManager queryManager) {
+        this.queryManager = queryManager;
+    }
+
+    /**
+     * Run handler on every allocation that base may point to at location, now and as they are discovered.
+     * Subscribing again with an equal queryID has no effect.
+     *
+     * @param requester the solver relying on the allocations, or null for a client outside the analysis. Each
+     *                  requester is recorded as relying on the backward query for the base.
+     */
+    public void subscribe(Node location, Value base, QueryID queryID, @Nullable MerlinSolver requester,
+                          Consumer<Allocation> handler) {
+        final var key = new Key(location, base);
+        final var entry = entries.computeIfAbsent(key, k -> new Entry());
+        final List<Allocation> resolvedBases;
+        final boolean start;
+        synchronized (entry) {
+            if (entry.subscribers.putIfAbsent(queryID, handler) != null) {
+                return;
+            }
+            resolvedBases = List.copyOf(entry.resolvedBases);
+            start = entry.solver == null;
+            if (start) {
+                // Only takes the query manager's and the solver's internal locks, never a solver's monitor
+                entry.solver = queryManager.getOrStartBackwardQuery(
+                        new sync.pds.solver.nodes.Node<>(NodeState.of(location), base), requester);
+            } else if (requester != null) {
+                queryManager.recordRequest(entry.solver, requester);
+            } else {
+                queryManager.getOrCreateBackwardSolver(entry.solver.initialQuery);
+            }
+        }
+        if (!resolvedBases.isEmpty()) {
+            queryManager.scheduler().execute(() -> resolvedBases.forEach(handler));
+        }
+        if (start) {
+            queryManager.getPointsToGraph().getPointsToSet(location, base)
+                    .onAdd(TaggedHandler.create(key, (Allocation alloc) -> deliver(entry, alloc)));
+        }
+    }
+
+    private static void deliver(Entry entry, Allocation alloc) {
+        final List<Consumer<Allocation>> subscribers;
+        synchronized (entry) {
+            entry.resolvedBases.add(alloc);
+            subscribers = List.copyOf(entry.subscribers.values());
+        }
+        subscribers.forEach(subscriber -> subscriber.accept(alloc));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
@@ -17,9 +17,13 @@ package com.amazon.pvar.tspoc.merlin.solver;
 
 import com.amazon.pvar.tspoc.merlin.DebugUtils;
 import com.amazon.pvar.tspoc.merlin.ir.*;
+import com.amazon.pvar.tspoc.merlin.livecollections.Handler;
+import com.amazon.pvar.tspoc.merlin.livecollections.LiveCollection;
+import com.amazon.pvar.tspoc.merlin.livecollections.LiveSet;
+import com.amazon.pvar.tspoc.merlin.livecollections.TaggedHandler;
+import com.amazon.pvar.tspoc.merlin.livecollections.TaskGroup;
 import com.amazon.pvar.tspoc.merlin.solver.flowfunctions.AbstractFlowFunctions;
 import com.amazon.pvar.tspoc.merlin.solver.flowfunctions.BackwardFlowFunctions;
-import com.amazon.pvar.tspoc.merlin.solver.flowfunctions.FlowFunctionContext;
 import dk.brics.tajs.flowgraph.jsnodes.CallNode;
 import dk.brics.tajs.flowgraph.jsnodes.ConstantNode;
 import dk.brics.tajs.flowgraph.jsnodes.DeclareFunctionNode;
@@ -32,15 +36,38 @@ import wpds.impl.WeightedPAutomaton;
 import wpds.interfaces.State;
 import wpds.interfaces.WPAStateListener;
 
-import java.util.Objects;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class BackwardMerlinSolver extends MerlinSolver {
 
     private boolean isFunctionQuery = false;
 
+    /**
+     * States reached with an empty field stack, tracked once {@link #emptyFieldStackStates()} has been called
+     */
+    private LiveSet<Node<NodeState, Value>> emptyFieldStackStates;
+
+    /**
+     * Allocations of the initial query in the order they were found, recorded by one handler shared by all bounded
+     * solves of this solver, see {@link #solveBounded(int, TaskGroup)}
+     */
+    private final Queue<Allocation> boundedAllocations = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Task groups of the bounded solves waiting for more allocations, signalled whenever one is found
+     */
+    private final Set<TaskGroup> boundedWaits = ConcurrentHashMap.newKeySet();
+
+    private final Handler<Allocation> boundedHandler = TaggedHandler.create(boundedAllocations, (Allocation alloc) -> {
+        boundedAllocations.add(alloc);
+        boundedWaits.forEach(TaskGroup::signal);
+    });
+
     public BackwardMerlinSolver(QueryManager queryManager, Node<NodeState, Value> initialQuery) {
         super(queryManager, initialQuery);
-        DebugUtils.debug("Creating backwards solver for query: " + initialQuery);
+        DebugUtils.debug(() -> "Creating backwards solver for query: " + initialQuery);
         registerPointsToUpdateListener(initialQuery);
     }
 
@@ -125,6 +152,41 @@ public class BackwardMerlinSolver extends MerlinSolver {
         );
     }
 
+    /**
+     * @return the states reached by this solver with an empty field stack, i.e. the (statement, value) pairs whose
+     * value flows to the initial query value without being stored in or loaded from a property on the way. Includes
+     * the states reached before the first call.
+     */
+    public synchronized LiveCollection<Node<NodeState, Value>> emptyFieldStackStates() {
+        if (emptyFieldStackStates == null) {
+            final var states = new LiveSet<Node<NodeState, Value>>(queryManager.scheduler());
+            emptyFieldStackStates = states;
+            // Registering the listener replays the in-transitions added so far
+            this.fieldAutomaton.registerListener(
+                    new WPAStateListener<>(new SingleNode<>(initialQuery)) {
+                        @Override
+                        public void onOutTransitionAdded(
+                                Transition<Property, INode<Node<NodeState, Value>>> transition,
+                                Weight.NoWeight noWeight,
+                                WeightedPAutomaton<Property, INode<Node<NodeState, Value>>, Weight.NoWeight> weightedPAutomaton
+                        ) {}
+
+                        @Override
+                        public void onInTransitionAdded(
+                                Transition<Property, INode<Node<NodeState, Value>>> transition,
+                                Weight.NoWeight noWeight,
+                                WeightedPAutomaton<Property, INode<Node<NodeState, Value>>, Weight.NoWeight> weightedPAutomaton
+                        ) {
+                            if (!(transition.getStart() instanceof GeneratedState)) {
+                                states.add(transition.getStart().fact());
+                            }
+                        }
+                    }
+            );
+        }
+        return emptyFieldStackStates;
+    }
+
     /**
      * If this solver is attempting to resolve callees of a call site, and it has reached a function declaration,
      * add a new call edge to the call graph
@@ -139,7 +201,7 @@ public class BackwardMerlinSolver extends MerlinSolver {
                 if (node
                         .fact()
                         .equals(
-                                new Variable(
+                                Variable.of(
                                         declareFunctionNode.getFunction().getName(),
                                         declareFunctionNode.getBlock().getFunction()
                                 )
@@ -181,19 +243,19 @@ public class BackwardMerlinSolver extends MerlinSolver {
             // past the unbalanced pop because the value flows past the entry point of the
             // current function
             if (targetVal.equals(BackwardMerlinSolver.this.initialQuery.fact())) {
-                DebugUtils.debug("Following unbalanced pop flow for " + BackwardMerlinSolver.this.initialQuery.fact());
+                DebugUtils.debug(() -> "Following unbalanced pop flow for " + BackwardMerlinSolver.this.initialQuery.fact());
                 final var func = transition.getLabel().getNode().getBlock().getFunction();
-                final var flowFunctions = makeFlowFunctions(curr);
+                final var flowFunctions = flowFunctions();
                 final var callSites = flowFunctions.findInvocationsOfFunction(func);
                 final var queryID = getQueryID(curr, true, true);
                 flowFunctions.continueWithSubqueryResult(callSites, queryID, callNode -> {
                     Node<NodeState, Value> normalizedCallPop = new Node<>(
-                            new NodeState(callNode),
+                            NodeState.of(callNode),
                             valueINode.fact());
                     propagate(curr, normalizedCallPop);
                 });
             } else {
-                DebugUtils.debug("Unbalanced pop with target " + targetVal + " doesn't match initialQuery: "
+                DebugUtils.debug(() -> "Unbalanced pop with target " + targetVal + " doesn't match initialQuery: "
                         + BackwardMerlinSolver.this.initialQuery);
             }
         };
@@ -224,6 +286,54 @@ public class BackwardMerlinSolver extends MerlinSolver {
         );
     }
 
+    /**
+     * Solve this query until at least limit allocations are known for it, and wait for the result. Once the limit is
+     * reached, the solver is suspended together with its exclusive subqueries, i.e. those no other solver or client
+     * relies on (see {@link QueryManager#suspendWithExclusiveSubqueries(MerlinSolver)}); they resume if the query is
+     * requested again. Pinned solvers are never suspended and keep running. Like
+     * {@link QueryManager#resolveCallSite}, this waits for the tasks caused by the call rather than for the whole
+     * scheduler. Must not be called from a scheduler task.
+     *
+     * @param limit the number of allocations to stop at, 1 for an existential query
+     * @return at most limit allocations, tagged as partial if the query was stopped before reaching its fixed point
+     */
+    public BoundedQueryResult solveBounded(int limit) {
+        return solveBounded(limit, new TaskGroup());
+    }
+
+    /**
+     * Variant of {@link #solveBounded(int)} for callers that already started work for this query in tasks, e.g. by
+     * resuming it. The query is solved in tasks, and the result is final once no task of the group is left.
+     */
+    BoundedQueryResult solveBounded(int limit, TaskGroup tasks) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Bounded queries need a positive limit, got " + limit);
+        }
+        boundedWaits.add(tasks);
+        try {
+            queryManager.scheduler().runInGroup(tasks, () -> {
+                getPointsToGraph().getPointsToSet(initialQuery.stmt().getNode(), initialQuery.fact())
+                        .onAdd(boundedHandler);
+                queryManager.scheduler().execute(this::solve);
+            });
+            if (tasks.waitUntilDoneOr(() -> boundedAllocations.size() >= limit)
+                    && boundedAllocations.size() < limit) {
+                return new BoundedQueryResult(firstAllocations(boundedAllocations, limit), false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new BoundedQueryResult(firstAllocations(boundedAllocations, limit), true);
+        } finally {
+            boundedWaits.remove(tasks);
+        }
+        queryManager.suspendWithExclusiveSubqueries(this);
+        return new BoundedQueryResult(firstAllocations(boundedAllocations, limit), true);
+    }
+
+    private static Set<Allocation> firstAllocations(Collection<Allocation> found, int limit) {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(found.stream().limit(limit).toList()));
+    }
+
     public void setFunctionQuery(boolean functionQuery) {
         isFunctionQuery = functionQuery;
     }
@@ -245,9 +355,8 @@ public class BackwardMerlinSolver extends MerlinSolver {
                 inUnbalancedPopListener, resolvesAliasing);
     }
 
-    protected final AbstractFlowFunctions makeFlowFunctions(Node<NodeState, Value> currentPDSNode) {
-        final var context = new FlowFunctionContext(currentPDSNode);
-        return new BackwardFlowFunctions(this, queryManager, context);
+    protected final AbstractFlowFunctions makeFlowFunctions() {
+        return new BackwardFlowFunctions(this, queryManager);
     }
 
 }
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.solver;
+
+import com.amazon.pvar.tspoc.merlin.ir.*;
+import com.amazon.pvar.tspoc.merlin.livecollections.LiveCollection;
+import com.amazon.pvar.tspoc.merlin.livecollections.LiveSet;
+import com.amazon.pvar.tspoc.merlin.livecollections.TaggedHandler;
+import com.amazon.pvar.tspoc.merlin.solver.flowfunctions.AbstractFlowFunctions;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.CallNode;
+import dk.brics.tajs.flowgraph.jsnodes.LoadNode;
+import dk.brics.tajs.flowgraph.jsnodes.ReadPropertyNode;
+import dk.brics.tajs.flowgraph.jsnodes.ReadVariableNode;
+import sync.pds.solver.nodes.Node;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Meet-in-the-middle resolution of call sites, used by
+ * {@link AbstractFlowFunctions#resolveFunctionCall(CallNode, QueryManager, MerlinSolver)} when
+ * {@link SolverOptions#bidirectionalCalls()} is set.
+ * <p>
+ * Backward queries from the called value only report a callee once they reach its declaration. The resolver also
+ * runs the forward queries from the function allocations of the candidate callees, and reports a candidate as soon as
+ * both directions meet: when a state the backward queries reached with an empty field stack, i.e. a value that flows
+ * unchanged into the called value, is a location the candidate's allocation was found at by its forward query. A
+ * backward state (n, v) describes v after n and a forward state describes its value before the statement, so the
+ * backward state meets the forward points-to facts for v at the successors of n.
+ * <p>
+ * Only call sites with a bound on their candidates are resolved this way: the bound of the {@link CallGraphPrepass} if
+ * enabled, or else the functions named like the variable or property the call site calls. Running the forward queries
+ * of every function of the program for the other call sites would cost more than their backward queries save.
+ * <p>
+ * Solvers started by the resolver itself are suspended once they are no longer needed: the forward solver of a
+ * candidate when it has met every call site waiting for it, and the backward solvers of a call site when all its
+ * candidates have met and they are the prepass bound, i.e. no other callee is left to find. Solvers that other clients
+ * or solvers requested from the {@link QueryManager} keep running.
+ * Points-to facts are context-insensitive, so a meet may join a flow into the called value in one calling context
+ * with a flow of the candidate to the same location in another.
+ */
+public final class BidirectionalCallResolver {
+
+    private record CalleeTag(CallNode callNode) {
+    }
+
+    private record FrontierTag(CallNode callNode) {
+    }
+
+    private record CandidateTag(CallNode callNode, Function candidate) {
+    }
+
+    private static final class Resolution {
+        private final CallNode callNode;
+        private final LiveSet<Function> callees;
+        /**
+         * Whether the candidates contain every callee, so that the backward queries have nothing left to find once all
+         * candidates have met
+         */
+        private final boolean completeCandidates;
+        private final Set<Function> found = new HashSet<>();
+        private final Set<Function> pendingCandidates = new HashSet<>();
+        private final Set<PointsToGraph.PointsToLocation> frontier = new HashSet<>();
+        private final Map<PointsToGraph.PointsToLocation, Set<Function>> candidateLocations = new HashMap<>();
+        private final List<MerlinSolver> ownBackwardSolvers = new ArrayList<>();
+        private final List<MerlinSolver> sharedBackwardSolvers = new ArrayList<>();
+
+        private Resolution(CallNode callNode, LiveSet<Function> callees, boolean completeCandidates) {
+            this.callNode = callNode;
+            this.callees = callees;
+            this.completeCandidates = completeCandidates;
+        }
+    }
+
+    private final QueryManager queryManager;
+    private final ConcurrentMap<CallNode, Resolution> resolutions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Function, Map<String, List<Function>>> programFunctionsByName =
+            new ConcurrentHashMap<>();
+    /**
+     * Forward solvers of candidates started by this resolver, and the call sites still waiting for each candidate.
+     * Both are guarded by ownForwardSolvers.
+     */
+    private final Map<Function, ForwardMerlinSolver> ownForwardSolvers = new HashMap<>();
+    private final Map<Function, Set<CallNode>> waitingCallSites = new HashMap<>();
+
+    public BidirectionalCallResolver(QueryManager queryManager) {
+        this.queryManager = queryManager;
+    }
+
+    /**
+     * Find the functions callNode may invoke for the analysis of requester, using the functions in its prepass bound
+     * or the functions named like the value it calls as candidates
+     *
+     * @param requester the solver relying on the result, or null for a client outside the analysis
+     * @return empty if the candidates of callNode are not bounded, in which case it should be resolved backwards only
+     */
+    public Optional<LiveCollection<Function>> resolve(CallNode callNode, @Nullable MerlinSolver requester) {
+        if (queryManager.options().callGraphPrepass()) {
+            final var bound = CallGraphPrepass.forFunction(callNode.getBlock().getFunction()).calleesOf(callNode);
+            if (bound.isPresent()) {
+                return Optional.of(resolve(callNode, bound.get(), true, requester));
+            }
+        }
+        final var candidates = calledName(callNode)
+                .map(name -> functionsNamed(callNode.getBlock().getFunction(), name))
+                .orElse(List.of());
+        if (candidates.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(resolve(callNode, candidates, false, requester));
+    }
+
+    /**
+     * Find the functions callNode may invoke. Functions outside candidates are still found by the backward queries,
+     * but only candidates can be found early by a meet.
+     *
+     * @param completeCandidates whether candidates contain every function callNode may invoke
+     * @param requester          the solver relying on the result, or null for a client outside the analysis
+     */
+    public LiveCollection<Function> resolve(CallNode callNode, Collection<Function> candidates,
+                                            boolean completeCandidates, @Nullable MerlinSolver requester) {
+        final var existing = resolutions.get(callNode);
+        if (existing != null) {
+            recordRequest(existing, requester);
+            return existing.callees;
+        }
+        final var resolution = new Resolution(callNode, new LiveSet<>(queryManager.scheduler()), completeCandidates);
+        final var previous = resolutions.putIfAbsent(callNode, resolution);
+        if (previous != null) {
+            recordRequest(previous, requester);
+            return previous.callees;
+        }
+        start(resolution, candidates, requester);
+        return resolution.callees;
+    }
+
+    /**
+     * @return the name of the variable or fixed property whose value callNode calls, if that is the only value the
+     * function register may hold
+     */
+    private static Optional<String> calledName(CallNode callNode) {
+        if (callNode.getFunctionRegister() == -1) {
+            return Optional.ofNullable(callNode.getPropertyString());
+        }
+        final Set<String> names = new HashSet<>();
+        final Set<dk.brics.tajs.flowgraph.jsnodes.Node> visited = new HashSet<>();
+        final Deque<dk.brics.tajs.flowgraph.jsnodes.Node> worklist =
+                new ArrayDeque<>(FlowgraphUtils.predecessorsOf(callNode));
+        while (!worklist.isEmpty()) {
+            final var node = worklist.pop();
+            if (!visited.add(node)) {
+                continue;
+            }
+            if (!(node instanceof LoadNode load) || load.getResultRegister() != callNode.getFunctionRegister()) {
+                worklist.addAll(FlowgraphUtils.predecessorsOf(node));
+            } else if (node instanceof ReadVariableNode readVar && readVar.getVariableName() != null) {
+                names.add(readVar.getVariableName());
+            } else if (node instanceof ReadPropertyNode readProp && readProp.isPropertyFixed()) {
+                names.add(readProp.getPropertyString());
+            } else {
+                return Optional.empty();
+            }
+        }
+        return names.size() == 1 ? Optional.of(names.iterator().next()) : Optional.empty();
+    }
+
+    /**
+     * @return the functions declared in the program containing function that are named name
+     */
+    private List<Function> functionsNamed(Function function, String name) {
+        final var program = ScopeResolution.outermostScope(function);
+        return programFunctionsByName.computeIfAbsent(program, root -> VariableUsage.nestingTree(root).stream()
+                        .filter(nested -> !nested.equals(root) && nested.getName() != null)
+                        .collect(Collectors.groupingBy(Function::getName)))
+                .getOrDefault(name, List.of());
+    }
+
+    /**
+     * Record that requester relies on the backward solvers of resolution that other clients share. The solvers owned
+     * by the resolution are left to the resolver, which only suspends them once no callee is left to find.
+     */
+    private void recordRequest(Resolution resolution, @Nullable MerlinSolver requester) {
+        if (requester == null) {
+            return;
+        }
+        final List<MerlinSolver> shared;
+        synchronized (resolution) {
+            shared = List.copyOf(resolution.sharedBackwardSolvers);
+        }
+        shared.forEach(solver -> queryManager.recordRequest(solver, requester));
+    }
+
+    private void start(Resolution resolution, Collection<Function> candidates, @Nullable MerlinSolver requester) {
+        final var callNode = resolution.callNode;
+        synchronized (resolution) {
+            resolution.pendingCandidates.addAll(candidates);
+        }
+        for (final var query : AbstractFlowFunctions.callTargetQueries(callNode)) {
+            var solver = queryManager.startBackwardQueryIfAbsent(query);
+            if (solver == null) {
+                solver = queryManager.getOrStartBackwardQuery(query, requester);
+                synchronized (resolution) {
+                    resolution.sharedBackwardSolvers.add(solver);
+                }
+            } else {
+                synchronized (resolution) {
+                    resolution.ownBackwardSolvers.add(solver);
+                }
+            }
+            AbstractFlowFunctions.allocationsToFunctions(
+                            queryManager.getPointsToGraph().getPointsToSet(query.stmt().getNode(), query.fact()))
+                    .onAdd(TaggedHandler.create(new CalleeTag(callNode),
+                            (Function callee) -> onCallee(resolution, callee)));
+            solver.emptyFieldStackStates().onAdd(TaggedHandler.create(new FrontierTag(callNode),
+                    (Node<NodeState, Value> state) -> onFrontierState(resolution, state)));
+        }
+        for (final var candidate : candidates) {
+            final var allocation = new FunctionAllocation(candidate.getNode());
+            acquireForwardSolver(callNode, candidate, new Node<>(NodeState.of(candidate.getNode()), allocation),
+                    requester);
+            queryManager.getPointsToGraph().getKnownValuesPointingTo(allocation)
+                    .onAdd(TaggedHandler.create(new CandidateTag(callNode, candidate),
+                            (PointsToGraph.PointsToLocation location) ->
+                                    onCandidateLocation(resolution, candidate, location)));
+        }
+    }
+
+    private void acquireForwardSolver(CallNode callNode, Function candidate, Node<NodeState, Value> query,
+                                      @Nullable MerlinSolver requester) {
+        synchronized (ownForwardSolvers) {
+            waitingCallSites.computeIfAbsent(candidate, key -> new HashSet<>()).add(callNode);
+            final var own = ownForwardSolvers.get(candidate);
+            if (own != null) {
+                own.resume();
+                return;
+            }
+            final var created = queryManager.startForwardQueryIfAbsent(query);
+            if (created != null) {
+                ownForwardSolvers.put(candidate, created);
+                return;
+            }
+        }
+        queryManager.getOrStartForwardQuery(query, requester);
+    }
+
+    /**
+     * Stop waiting for candidate at callNode, suspending its forward solver if no other call site waits for it
+     */
+    private void releaseForwardSolver(CallNode callNode, Function candidate) {
+        synchronized (ownForwardSolvers) {
+            final var waiting = waitingCallSites.get(candidate);
+            if (waiting != null && waiting.remove(callNode) && waiting.isEmpty()) {
+                final var own = ownForwardSolvers.get(candidate);
+                if (own != null) {
+                    queryManager.suspendIfUnrequested(own);
+                }
+            }
+        }
+    }
+
+    private void onFrontierState(Resolution resolution, Node<NodeState, Value> state) {
+        final var stmt = state.stmt().getNode();
+        if (stmt == null) {
+            return;
+        }
+        final List<Function> met = new ArrayList<>();
+        synchronized (resolution) {
+            for (final var successor : FlowgraphUtils.successorsOf(stmt)) {
+                final var location = new PointsToGraph.PointsToLocation(successor, state.fact());
+                if (resolution.frontier.add(location)) {
+                    met.addAll(resolution.candidateLocations.getOrDefault(location, Set.of()));
+                }
+            }
+        }
+        met.forEach(candidate -> onCallee(resolution, candidate));
+    }
+
+    private void onCandidateLocation(Resolution resolution, Function candidate,
+                                     PointsToGraph.PointsToLocation location) {
+        final boolean met;
+        synchronized (resolution) {
+            // The candidate's forward solver may keep running for other call sites, but once it met this one its
+            // locations are no longer of interest here
+            if (resolution.found.contains(candidate)) {
+                return;
+            }
+            resolution.candidateLocations.computeIfAbsent(location, key -> new HashSet<>()).add(candidate);
+            met = resolution.frontier.contains(location);
+        }
+        if (met) {
+            onCallee(resolution, candidate);
+        }
+    }
+
+    private void onCallee(Resolution resolution, Function callee) {
+        final boolean wasCandidate;
+        final boolean allCandidatesMet;
+        final List<MerlinSolver> ownBackwardSolvers;
+        synchronized (resolution) {
+            if (!resolution.found.add(callee)) {
+                return;
+            }
+            wasCandidate = resolution.pendingCandidates.remove(callee);
+            allCandidatesMet = wasCandidate && resolution.pendingCandidates.isEmpty() && resolution.completeCandidates;
+            ownBackwardSolvers = List.copyOf(resolution.ownBackwardSolvers);
+        }
+        resolution.callees.add(callee);
+        queryManager.getCallGraph().addEdge(resolution.callNode, callee);
+        if (wasCandidate) {
+            releaseForwardSolver(resolution.callNode, callee);
+        }
+        if (allCandidatesMet) {
+            ownBackwardSolvers.forEach(queryManager::suspendIfUnrequested);
+        }
+    }
+}
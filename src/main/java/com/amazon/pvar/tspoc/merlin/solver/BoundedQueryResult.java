@@ -0,0 +1,30 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.solver;
+
+import com.amazon.pvar.tspoc.merlin.ir.Allocation;
+
+import java.util.Set;
+
+/**
+ * Result of a query solved up to a limit on the number of allocations, see
+ * {@link BackwardMerlinSolver#solveBounded(int)}.
+ *
+ * @param allocations the allocations found, in the order they were discovered
+ * @param partial true if the query was stopped on reaching the limit, so that it may have further allocations
+ */
+public record BoundedQueryResult(Set<Allocation> allocations, boolean partial) {
+}
@@ -19,14 +19,30 @@ import com.amazon.pvar.tspoc.merlin.experiments.Location;
 import com.amazon.pvar.tspoc.merlin.experiments.SerializableCallGraph;
 import com.amazon.pvar.tspoc.merlin.experiments.SerializableCallGraphEdge;
 import com.amazon.pvar.tspoc.merlin.experiments.Span;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
+import com.amazon.pvar.tspoc.merlin.livecollections.Handler;
+import com.amazon.pvar.tspoc.merlin.livecollections.LiveCollection;
+import com.amazon.pvar.tspoc.merlin.livecollections.LiveView;
+import com.amazon.pvar.tspoc.merlin.livecollections.Scheduler;
+import com.amazon.pvar.tspoc.merlin.livecollections.TaggedHandler;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
 import dk.brics.tajs.flowgraph.Function;
 import dk.brics.tajs.flowgraph.SourceLocation;
 import dk.brics.tajs.flowgraph.jsnodes.CallNode;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -35,9 +51,20 @@ import java.util.stream.Collectors;
  * The implementation includes an iterable edge set, as well as a callsite -> function multimap and a
  * function -> callsite multimap to support fast bidirectional lookup.
  * <p>
- * Note: This class is purely for reporting the resulting call graph at the end of the analysis.
- * To obtain callers or call sites during analysis, use getLiveKnownFunctionInvocations in PointsToGraph
- * or `resolveFunctionCallLive` in flow functions
+ * Each edge is kept once in each lookup index and once in the live edge view, an immutable list of published edges
+ * from which iteration and snapshots are derived. The lookup indices are live maps, so the live per-callsite and
+ * per-callee views are their value sets and a new edge only wakes the handlers of its own call site and callee. No
+ * structure is locked: adding an edge inserts it into the concurrent indices and publishes it with a compare-and-set,
+ * and handlers are submitted to the scheduler rather than run by the thread adding the edge. Reads of the live
+ * structures are weakly consistent; use {@link #snapshot()} to obtain a consistent, immutable view of the call graph
+ * while solvers are still adding edges.
+ * <p>
+ * To react to edges as soon as they are discovered, register a handler with {@link #onEdgeAdded} or on the live
+ * per-callsite and per-callee views. Handlers run on the call graph's scheduler, so when the call graph belongs to a
+ * QueryManager, waiting for the QueryManager to finish also waits for all edge handlers.
+ * <p>
+ * Note: To obtain callers or call sites from within flow functions, use getKnownFunctionInvocations in
+ * PointsToGraph or `resolveFunctionCall` in flow functions, which also trigger the queries needed to find them.
  */
 public class CallGraph implements Iterable<CallGraph.Edge> {
 
@@ -104,10 +131,31 @@ public class CallGraph implements Iterable<CallGraph.Edge> {
         }
     }
 
-    private final Set<Edge> edgeSet = new HashSet<>();
-    private final Multimap<CallNode, Function> calleeBackingMultimap = HashMultimap.create();
-    private final Multimap<Function, CallNode> callerBackingMultimap = HashMultimap.create();
+    private final LiveMap<CallNode, Function> calleeIndex;
+    private final LiveMap<Function, CallNode> callerIndex;
+
+    /**
+     * All published edges and the handlers on them. An edge is published with a single update of the view once it is
+     * in all indices, so each list read from it is a call graph that existed at some point in time, which is what
+     * snapshots are built from.
+     */
+    private final LiveView<Edge> liveEdges;
+
+    /**
+     * Creates a call graph whose edge handlers run on the shared scheduler, see {@link Scheduler#shared()}
+     */
+    public CallGraph() {
+        this(Scheduler.shared());
+    }
 
+    /**
+     * @param scheduler the scheduler on which handlers for new edges are run
+     */
+    public CallGraph(Scheduler scheduler) {
+        calleeIndex = LiveMap.create(scheduler);
+        callerIndex = LiveMap.create(scheduler);
+        liveEdges = new LiveView<>(scheduler);
+    }
 
     /**
      * Adds a new edge to the call graph, updating all internal data structures if the edge is not already present
@@ -116,16 +164,17 @@ public class CallGraph implements Iterable<CallGraph.Edge> {
      * @return true if the edge was added successfully, false if the edge was already present in the call graph or
      * adding the edge failed for any other reason.
      */
-    public synchronized boolean addEdge(Edge newEdge) {
-        boolean added = edgeSet.add(newEdge);
+    public boolean addEdge(Edge newEdge) {
+        // The callee index decides which of several concurrent adds of the same edge publishes it
+        boolean added = calleeIndex.put(newEdge.getCallSite(), newEdge.getCallTarget());
         if (added) {
-            calleeBackingMultimap.put(newEdge.getCallSite(), newEdge.getCallTarget());
-            callerBackingMultimap.put(newEdge.getCallTarget(), newEdge.getCallSite());
+            callerIndex.put(newEdge.getCallTarget(), newEdge.getCallSite());
+            liveEdges.add(newEdge);
         }
         return added;
     }
 
-    public synchronized boolean addEdge(CallNode callsite, Function target) {
+    public boolean addEdge(CallNode callsite, Function target) {
         Edge edge = new Edge(callsite, target);
         return addEdge(edge);
     }
@@ -134,7 +183,7 @@ public class CallGraph implements Iterable<CallGraph.Edge> {
      * @return the number of edges in the call graph
      */
     public int size() {
-        return edgeSet.size();
+        return liveEdges.size();
     }
 
     /**
@@ -142,33 +191,145 @@ public class CallGraph implements Iterable<CallGraph.Edge> {
      * @return true if the specified edge is present in the call graph, false otherwise
      */
     public boolean contains(Edge edge) {
-        return edgeSet.contains(edge);
+        final var callees = calleeIndex.getIfPresent(edge.getCallSite());
+        return callees != null && callees.contains(edge.getCallTarget());
+    }
+
+    /**
+     * @param callSite
+     * @return the functions currently known to be invoked at callSite
+     */
+    public Set<Function> getCallees(CallNode callSite) {
+        final var callees = calleeIndex.getIfPresent(callSite);
+        return callees == null ? Collections.emptySet() : Collections.unmodifiableSet(callees.elements());
+    }
+
+    /**
+     * @param callTarget
+     * @return the call sites currently known to invoke callTarget
+     */
+    public Set<CallNode> getCallers(Function callTarget) {
+        final var callers = callerIndex.getIfPresent(callTarget);
+        return callers == null ? Collections.emptySet() : Collections.unmodifiableSet(callers.elements());
+    }
+
+    /**
+     * @return a live collection of all edges in the call graph, invoking handlers for each edge as it is added
+     */
+    public LiveCollection<Edge> getLiveEdges() {
+        return liveEdges;
+    }
+
+    /**
+     * @param callSite
+     * @return a live collection of the functions invoked at callSite, invoking handlers for each new callee
+     */
+    public LiveCollection<Function> getLiveCallees(CallNode callSite) {
+        return calleeIndex.get(callSite);
+    }
+
+    /**
+     * @param callTarget
+     * @return a live collection of the call sites invoking callTarget, invoking handlers for each new caller
+     */
+    public LiveCollection<CallNode> getLiveCallers(Function callTarget) {
+        return callerIndex.get(callTarget);
     }
 
     /**
-     * @return an iterator over the set of edges in the call graph
+     * @return an estimate of the heap retained by the published edges, the lookup indices and their handlers
+     */
+    public long estimatedFootprint() {
+        return HeapFootprint.estimateCallGraph(size()) +
+                HeapFootprint.estimateLiveMap(calleeIndex.counts()) +
+                HeapFootprint.estimateLiveMap(callerIndex.counts());
+    }
+
+    /**
+     * Run handler on every edge already in the call graph and on every edge added in the future. As for all live
+     * collections, registering an equal handler twice has no effect.
+     */
+    public void onEdgeAdded(Handler<Edge> handler) {
+        liveEdges.onAdd(handler);
+    }
+
+    /**
+     * Java-friendly variant of {@link #onEdgeAdded(Handler)}, using tag to identify the handler.
+     */
+    public <T> void onEdgeAdded(T tag, Consumer<Edge> handler) {
+        onEdgeAdded(TaggedHandler.create(tag, handler));
+    }
+
+    /**
+     * @return an iterator over the set of edges in the call graph. The iterator is weakly consistent: it never
+     * throws ConcurrentModificationException, but may or may not reflect edges added during iteration.
      */
     @Override
     public Iterator<Edge> iterator() {
-        return new Iterator<>() {
+        return liveEdges.iterator();
+    }
+
+    /**
+     * Take a consistent snapshot of the call graph. The snapshot contains exactly the edges that were published when
+     * it was taken and is not affected by edges added afterwards. An edge is published in one atomic step after it has
+     * been added to the lookup indices, so every edge in a snapshot is also visible through
+     * {@link #getCallees(CallNode)} and {@link #getCallers(Function)}; an edge whose addEdge call has not returned yet
+     * may be missing from the snapshot even though {@link #contains(Edge)} already reports it.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(liveEdges.elements());
+    }
 
-            private final Iterator<Edge> delegate = edgeSet.iterator();
+    /**
+     * An immutable view of the call graph at a point in time, including both lookup directions.
+     */
+    public static class Snapshot implements Iterable<Edge> {
 
-            @Override
-            public boolean hasNext() {
-                return delegate.hasNext();
-            }
+        private final ImmutableSet<Edge> edges;
+        private final ImmutableSetMultimap<CallNode, Function> callees;
+        private final ImmutableSetMultimap<Function, CallNode> callers;
 
-            @Override
-            public Edge next() {
-                return delegate.next();
+        private Snapshot(List<Edge> edgeList) {
+            this.edges = ImmutableSet.copyOf(edgeList);
+            final var calleeBuilder = ImmutableSetMultimap.<CallNode, Function>builder();
+            final var callerBuilder = ImmutableSetMultimap.<Function, CallNode>builder();
+            for (final var edge : edgeList) {
+                calleeBuilder.put(edge.getCallSite(), edge.getCallTarget());
+                callerBuilder.put(edge.getCallTarget(), edge.getCallSite());
             }
-        };
+            this.callees = calleeBuilder.build();
+            this.callers = callerBuilder.build();
+        }
+
+        public int size() {
+            return edges.size();
+        }
+
+        public boolean contains(Edge edge) {
+            return edges.contains(edge);
+        }
+
+        public ImmutableSet<Function> getCallees(CallNode callSite) {
+            return callees.get(callSite);
+        }
+
+        public ImmutableSet<CallNode> getCallers(Function callTarget) {
+            return callers.get(callTarget);
+        }
+
+        public ImmutableSet<Edge> edgeSet() {
+            return edges;
+        }
+
+        @Override
+        public Iterator<Edge> iterator() {
+            return edges.iterator();
+        }
     }
 
     @Override
     public String toString() {
-        return edgeSet.stream()
+        return edgeSet().stream()
                 .map(e -> e.toString() + "\n")
                 .collect(Collectors.joining())
                 .strip();
@@ -181,6 +342,8 @@ public class CallGraph implements Iterable<CallGraph.Edge> {
      * <p>
      * Note that the edges are serialized in a non-deterministic order; any consumers of the resulting
      * JSON should treat the `edges` array as a set rather than a list.
+     * <p>
+     * For large call graphs, prefer {@link #writeJSON(Writer, boolean)}, which avoids materializing the JSON tree.
      */
     public JsonElement toJSON() {
         final var gson = new Gson();
@@ -188,14 +351,181 @@ public class CallGraph implements Iterable<CallGraph.Edge> {
     }
 
     public SerializableCallGraph toSerializableCallGraph() {
-        final var serializedEdges = edgeSet
+        final var serializedEdges = edgeSet()
             .stream()
             .map(Edge::toSerializable)
             .collect(Collectors.toSet());
         return new SerializableCallGraph(serializedEdges);
     }
 
+    private static final Comparator<SourceLocation> SOURCE_LOCATION_ORDER = Comparator
+            .comparing((SourceLocation loc) -> loc.getLocation().getPath(),
+                    Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparingInt(SourceLocation::getLineNumber)
+            .thenComparingInt(SourceLocation::getColumnNumber)
+            .thenComparingInt(SourceLocation::getEndLineNumber)
+            .thenComparingInt(SourceLocation::getEndColumnNumber);
+
+    /**
+     * Ordering of edges by call site first and callee second, comparing source locations by file, start position and
+     * end position. Used to produce deterministic output.
+     */
+    public static final Comparator<Edge> SOURCE_ORDER = Comparator
+            .comparing((Edge edge) -> edge.getCallSite().getSourceLocation(), SOURCE_LOCATION_ORDER)
+            .thenComparing(edge -> edge.getCallTarget().getSourceLocation(), SOURCE_LOCATION_ORDER);
+
+    /**
+     * Writes the same JSON as {@link #toJSON()} to out, streaming edges directly from the edge set instead of
+     * building an intermediate JSON tree. The writer is flushed but not closed.
+     *
+     * @param sorted if true, edges are written in {@link #SOURCE_ORDER}; otherwise they are written in the same
+     *               non-deterministic order as toJSON.
+     */
+    public void writeJSON(Writer out, boolean sorted) throws IOException {
+        final var jsonWriter = new JsonWriter(out);
+        jsonWriter.setLenient(true);
+        jsonWriter.beginObject();
+        jsonWriter.name("edges");
+        jsonWriter.beginArray();
+        final Iterable<Edge> edges = sorted ? edgeSet().stream().sorted(SOURCE_ORDER)::iterator : this;
+        for (final var edge : edges) {
+            writeEdge(jsonWriter, edge);
+        }
+        jsonWriter.endArray();
+        jsonWriter.endObject();
+        jsonWriter.flush();
+    }
+
+    /**
+     * Writes the same JSON as {@link #writeJSON(Writer, boolean)} to out incrementally: every edge already in the call
+     * graph and every edge added later is written as soon as its handler runs, in discovery order, until the returned
+     * stream is closed. Closing the stream terminates the JSON document and flushes, but does not close, out; wait for
+     * the scheduler of the call graph before closing to include all edges.
+     */
+    public EdgeStream streamJSON(Writer out) throws IOException {
+        final var stream = new EdgeStream(out);
+        onEdgeAdded(stream, stream::write);
+        return stream;
+    }
+
+    /**
+     * An open JSON document receiving the edges of a call graph, see {@link #streamJSON(Writer)}
+     */
+    public static final class EdgeStream implements Closeable {
+
+        private final JsonWriter jsonWriter;
+        private long edgesWritten = 0;
+        private boolean closed = false;
+
+        private EdgeStream(Writer out) throws IOException {
+            jsonWriter = new JsonWriter(out);
+            jsonWriter.setLenient(true);
+            jsonWriter.beginObject();
+            jsonWriter.name("edges");
+            jsonWriter.beginArray();
+        }
+
+        private synchronized void write(Edge edge) {
+            if (closed) {
+                return;
+            }
+            try {
+                writeEdge(jsonWriter, edge);
+                edgesWritten++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * @return the number of edges written so far
+         */
+        public synchronized long edgesWritten() {
+            return edgesWritten;
+        }
+
+        /**
+         * Terminate the JSON document. Edges added to the call graph afterwards are not written.
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            jsonWriter.endArray();
+            jsonWriter.endObject();
+            jsonWriter.flush();
+        }
+    }
+
+    /**
+     * Writes the JSON representation of the call graph to file through a buffered channel.
+     *
+     * @see #writeJSON(Writer, boolean)
+     */
+    public void writeJSON(Path file, boolean sorted) throws IOException {
+        try (final var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             final var writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), 1 << 16)) {
+            writeJSON(writer, sorted);
+        }
+    }
+
+    private static void writeEdge(JsonWriter jsonWriter, Edge edge) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name("callee");
+        writeSpan(jsonWriter, edge.getCallTarget().getSourceLocation());
+        jsonWriter.name("caller");
+        writeSpan(jsonWriter, edge.getCallSite().getSourceLocation());
+        jsonWriter.endObject();
+    }
+
+    /**
+     * Field names and order must match the Span and Location records, as serialized by Gson in toJSON.
+     */
+    private static void writeSpan(JsonWriter jsonWriter, SourceLocation sourceLocation) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name("start");
+        writeLocation(jsonWriter, sourceLocation.getLineNumber(), sourceLocation.getColumnNumber());
+        jsonWriter.name("end");
+        writeLocation(jsonWriter, sourceLocation.getEndLineNumber(), sourceLocation.getEndColumnNumber());
+        final var path = sourceLocation.getLocation().getPath();
+        if (path != null) {
+            // Gson omits null fields by default
+            jsonWriter.name("file").value(path);
+        }
+        jsonWriter.endObject();
+    }
+
+    private static void writeLocation(JsonWriter jsonWriter, int line, int column) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name("line").value(line);
+        jsonWriter.name("column").value(column);
+        jsonWriter.endObject();
+    }
+
+    /**
+     * @return an unmodifiable, weakly consistent live view of the edge set
+     */
     public Set<Edge> edgeSet() {
-        return edgeSet;
+        return edgeSetView;
     }
+
+    private final Set<Edge> edgeSetView = new AbstractSet<>() {
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Edge edge && CallGraph.this.contains(edge);
+        }
+
+        @Override
+        public Iterator<Edge> iterator() {
+            return CallGraph.this.iterator();
+        }
+
+        @Override
+        public int size() {
+            return CallGraph.this.size();
+        }
+    };
 }
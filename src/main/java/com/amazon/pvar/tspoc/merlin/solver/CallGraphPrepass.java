@@ -0,0 +1,345 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.solver;
+
+import com.amazon.pvar.tspoc.merlin.ir.FlowgraphUtils;
+import com.amazon.pvar.tspoc.merlin.ir.Register;
+import com.amazon.pvar.tspoc.merlin.ir.ScopeResolution;
+import com.amazon.pvar.tspoc.merlin.ir.VariableUsage;
+import com.google.common.collect.MapMaker;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.*;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cheap, flow-insensitive call graph over the whole flowgraph, used to bound the callees of call nodes before (and
+ * instead of) running SPDS queries; see {@link SolverOptions#callGraphPrepass()}.
+ * <p>
+ * Like the field-based call graph of the Jam baseline in scripts/evaluation, functions are tracked through registers,
+ * operators, variables identified by name only, and properties identified by name only, regardless of the object they
+ * belong to. Global variables, i.e. names declared in the outermost scope or not declared at all, are properties of
+ * the global object, so they share the set of the property of that name: a function written by {@code window.f = g}
+ * or {@code this.f = g} bounds a later call {@code f()}.
+ * <p>
+ * A function flows into a variable or property wherever it is written to one of that name. Values of unknown origin,
+ * i.e. parameters, call results, caught exceptions and dynamic property reads, make the bound of a call node unknown,
+ * so that the call is not pruned. So do method calls named {@code call} or {@code apply}, which may invoke their
+ * receiver. A write to a dynamic property, such as {@code o[k] = g}, may write any property, so the values written
+ * that way flow into every property and global variable read; a write of a value of unknown origin to a dynamic
+ * property therefore makes all of them unknown. A call node whose callee is known to hold no function of the program,
+ * such as a call to a library function, gets an empty bound, and the analysis starts no query for it.
+ * <p>
+ * The bounds are stored as node indices and weak references to functions, so that a call graph does not keep the
+ * functions of its program alive through the weak-key caches.
+ */
+public final class CallGraphPrepass {
+
+    /**
+     * The functions a register, variable or property may hold, unless unknown is set
+     */
+    private static final class FunctionSet {
+        private final Set<Function> functions = new HashSet<>();
+        private boolean unknown = false;
+
+        private boolean addAll(FunctionSet other) {
+            var changed = false;
+            if (other.unknown && !unknown) {
+                unknown = true;
+                changed = true;
+            }
+            return functions.addAll(other.functions) || changed;
+        }
+
+        private boolean add(Function function) {
+            return functions.add(function);
+        }
+
+        private boolean setUnknown() {
+            final var changed = !unknown;
+            unknown = true;
+            return changed;
+        }
+    }
+
+    private static final Set<String> RECEIVER_INVOKING_METHODS = Set.of("call", "apply");
+
+    private static final ConcurrentMap<FlowGraph, CallGraphPrepass> byFlowGraph = new MapMaker().weakKeys().makeMap();
+    /**
+     * Values are weak, so that a call graph lives exactly as long as its flowgraph
+     */
+    private static final ConcurrentMap<Function, CallGraphPrepass> byFunction =
+            new MapMaker().weakKeys().weakValues().makeMap();
+    /**
+     * Call graphs of programs whose flowgraph has not been analyzed by {@link #of(FlowGraph)}, kept for as long as
+     * their outermost function is alive
+     */
+    private static final ConcurrentMap<Function, CallGraphPrepass> byOutermostScope =
+            new MapMaker().weakKeys().makeMap();
+
+    /**
+     * The functions of the program, by their position in the bounds
+     */
+    private final List<WeakReference<Function>> functions;
+    /**
+     * Bounded callees of each call node of the program by node index, as positions in functions; call nodes with
+     * unknown callees are absent
+     */
+    private final Map<Integer, int[]> callees = new HashMap<>();
+
+    private CallGraphPrepass(Collection<Function> programFunctions) {
+        final var analysis = new Analysis(programFunctions);
+        final Map<Function, Integer> positions = new HashMap<>();
+        final List<WeakReference<Function>> functionRefs = new ArrayList<>(programFunctions.size());
+        for (final var function : programFunctions) {
+            positions.put(function, functionRefs.size());
+            functionRefs.add(new WeakReference<>(function));
+        }
+        this.functions = functionRefs;
+        analysis.bounds.forEach((callNode, bound) -> callees.put(callNode.getIndex(), bound.stream()
+                .mapToInt(function -> positions.getOrDefault(function, -1))
+                .filter(position -> position != -1)
+                .sorted()
+                .toArray()));
+        programFunctions.forEach(function -> byFunction.put(function, this));
+    }
+
+    public static CallGraphPrepass of(FlowGraph flowGraph) {
+        return byFlowGraph.computeIfAbsent(flowGraph, key -> new CallGraphPrepass(key.getFunctions()));
+    }
+
+    /**
+     * @return the call graph of the program containing function. If its flowgraph has not been analyzed by
+     * {@link #of(FlowGraph)}, the call graph is computed once for the functions nested in its outermost scope.
+     */
+    public static CallGraphPrepass forFunction(Function function) {
+        final var existing = byFunction.get(function);
+        if (existing != null) {
+            return existing;
+        }
+        final var outermost = ScopeResolution.outermostScope(function);
+        final var computed = byOutermostScope.get(outermost);
+        if (computed != null) {
+            return computed;
+        }
+        // Computing a call graph is expensive, so threads resolving calls of the same program wait for a single one
+        synchronized (byOutermostScope) {
+            return byOutermostScope.computeIfAbsent(outermost,
+                    key -> new CallGraphPrepass(VariableUsage.nestingTree(key)));
+        }
+    }
+
+    /**
+     * @return the functions callNode may invoke, or an empty Optional if the prepass cannot bound them. callNode must
+     * belong to the program of this call graph.
+     */
+    public Optional<Set<Function>> calleesOf(CallNode callNode) {
+        final var bound = callees.get(callNode.getIndex());
+        if (bound == null) {
+            return Optional.empty();
+        }
+        final Set<Function> result = new HashSet<>();
+        for (final var position : bound) {
+            final var function = functions.get(position).get();
+            if (function != null) {
+                result.add(function);
+            }
+        }
+        return Optional.of(result);
+    }
+
+    /**
+     * @return false if the prepass rules out that callNode invokes function
+     */
+    public boolean mayCall(CallNode callNode, Function function) {
+        final var bound = callees.get(callNode.getIndex());
+        if (bound == null) {
+            return true;
+        }
+        for (final var position : bound) {
+            if (functions.get(position).get() == function) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The fixpoint computation of the bounds, discarded once they are known
+     */
+    private static final class Analysis {
+
+        private final Map<Register, FunctionSet> registers = new HashMap<>();
+        private final Map<String, FunctionSet> variables = new HashMap<>();
+        private final Map<String, FunctionSet> properties = new HashMap<>();
+        /**
+         * The values written to dynamic properties, which every property read may see
+         */
+        private final FunctionSet dynamicProperties = new FunctionSet();
+        private final Map<CallNode, Set<Function>> bounds = new HashMap<>();
+
+        private Analysis(Collection<Function> functions) {
+            final List<Node> nodes = new ArrayList<>();
+            for (final var function : functions) {
+                function.getParameterNames().forEach(name -> variable(name, function).setUnknown());
+                FlowgraphUtils.allNodesInFunction(function)
+                        .filter(node -> node instanceof Node)
+                        .forEach(node -> nodes.add((Node) node));
+            }
+            var changed = true;
+            while (changed) {
+                changed = false;
+                for (final var node : nodes) {
+                    changed |= transfer(node);
+                }
+            }
+            for (final var node : nodes) {
+                if (node instanceof CallNode callNode) {
+                    final var targets = targetsOf(callNode);
+                    if (!targets.unknown) {
+                        bounds.put(callNode, targets.functions);
+                    }
+                }
+            }
+        }
+
+        private FunctionSet register(int id, Node node) {
+            return registers.computeIfAbsent(Register.of(id, node.getBlock().getFunction()), key -> new FunctionSet());
+        }
+
+        /**
+         * @return the set of the variable name as seen from usageScope, which for global variables is the set of the
+         * global object's property of that name
+         */
+        private FunctionSet variable(String name, Function usageScope) {
+            final var declaringScope = ScopeResolution.declaringScope(name, usageScope);
+            if (declaringScope == null || declaringScope.getOuterFunction() == null) {
+                return property(name);
+            }
+            return variables.computeIfAbsent(name, key -> new FunctionSet());
+        }
+
+        private FunctionSet variable(String name, Node node) {
+            return variable(name, node.getBlock().getFunction());
+        }
+
+        /**
+         * @return true if name, as seen from node, is a property of the global object
+         */
+        private boolean isGlobal(String name, Node node) {
+            final var declaringScope = ScopeResolution.declaringScope(name, node.getBlock().getFunction());
+            return declaringScope == null || declaringScope.getOuterFunction() == null;
+        }
+
+        /**
+         * Add the functions the variable name may hold when read at node to result
+         */
+        private boolean readVariable(FunctionSet result, String name, Node node) {
+            final var changed = result.addAll(variable(name, node));
+            return isGlobal(name, node) ? result.addAll(dynamicProperties) | changed : changed;
+        }
+
+        /**
+         * Add the functions the property name may hold to result, including those written to dynamic properties
+         */
+        private boolean readProperty(FunctionSet result, String name) {
+            return result.addAll(property(name)) | result.addAll(dynamicProperties);
+        }
+
+        private FunctionSet property(String name) {
+            return properties.computeIfAbsent(name, key -> new FunctionSet());
+        }
+
+        /**
+         * Apply the effect of node on the abstract state
+         *
+         * @return true if the state changed
+         */
+        private boolean transfer(Node node) {
+            if (node instanceof DeclareFunctionNode declFun) {
+                var changed = false;
+                if (declFun.getResultRegister() != -1) {
+                    changed = register(declFun.getResultRegister(), node).add(declFun.getFunction());
+                }
+                if (declFun.getFunction().getName() != null) {
+                    changed |= variable(declFun.getFunction().getName(), node).add(declFun.getFunction());
+                }
+                return changed;
+            } else if (node instanceof ReadVariableNode readVar) {
+                return readVar.getResultRegister() != -1 &&
+                        readVariable(register(readVar.getResultRegister(), node), readVar.getVariableName(), node);
+            } else if (node instanceof WriteVariableNode writeVar) {
+                return variable(writeVar.getVariableName(), node).addAll(register(writeVar.getValueRegister(), node));
+            } else if (node instanceof ReadPropertyNode readProp) {
+                if (readProp.getResultRegister() == -1) {
+                    return false;
+                }
+                final var result = register(readProp.getResultRegister(), node);
+                return readProp.isPropertyFixed() ? readProperty(result, readProp.getPropertyString())
+                        : result.setUnknown();
+            } else if (node instanceof WritePropertyNode writeProp) {
+                final var written = register(writeProp.getValueRegister(), node);
+                return writeProp.isPropertyFixed() ? property(writeProp.getPropertyString()).addAll(written)
+                        : dynamicProperties.addAll(written);
+            } else if (node instanceof BinaryOperatorNode binOp) {
+                // The flow functions pass the operands through to the result, so the prepass does as well
+                if (binOp.getResultRegister() == -1) {
+                    return false;
+                }
+                final var result = register(binOp.getResultRegister(), node);
+                return result.addAll(register(binOp.getArg1Register(), node)) |
+                        result.addAll(register(binOp.getArg2Register(), node));
+            } else if (node instanceof UnaryOperatorNode unOp) {
+                return unOp.getResultRegister() != -1 &&
+                        register(unOp.getResultRegister(), node).addAll(register(unOp.getArgRegister(), node));
+            } else if (node instanceof CallNode callNode) {
+                return callNode.getResultRegister() != -1 && register(callNode.getResultRegister(), node).setUnknown();
+            } else if (node instanceof CatchNode catchNode) {
+                var changed = false;
+                if (catchNode.getVariableName() != null) {
+                    changed = variable(catchNode.getVariableName(), node).setUnknown();
+                }
+                if (catchNode.getValueRegister() != -1) {
+                    changed |= register(catchNode.getValueRegister(), node).setUnknown();
+                }
+                return changed;
+            }
+            return false;
+        }
+
+        private FunctionSet targetsOf(CallNode callNode) {
+            final var result = new FunctionSet();
+            if (callNode.getTajsFunctionName() != null) {
+                return result;
+            }
+            if (callNode.getFunctionRegister() != -1) {
+                result.addAll(register(callNode.getFunctionRegister(), callNode));
+            } else if (callNode.getPropertyString() != null) {
+                if (RECEIVER_INVOKING_METHODS.contains(callNode.getPropertyString())) {
+                    result.setUnknown();
+                } else {
+                    readProperty(result, callNode.getPropertyString());
+                }
+            } else {
+                result.setUnknown();
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.solver;
+
+import dk.brics.tajs.flowgraph.Function;
+
+import java.util.Set;
+
+/**
+ * Callees of a call site resolved within a time budget, see {@link QueryManager#resolveCallSite}.
+ *
+ * @param callees the functions the call site may invoke
+ * @param complete false if the budget ran out, so that callees were completed with the bound of the
+ *                 {@link CallGraphPrepass} rather than by the queries
+ */
+public record CallSiteResolution(Set<Function> callees, boolean complete) {
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.solver;
+
+import com.amazon.pvar.tspoc.merlin.DebugUtils;
+import com.amazon.pvar.tspoc.merlin.ir.*;
+import dk.brics.tajs.flowgraph.AbstractNode;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.CallNode;
+import dk.brics.tajs.flowgraph.jsnodes.ConstantNode;
+import dk.brics.tajs.flowgraph.jsnodes.DeclareFunctionNode;
+import dk.brics.tajs.flowgraph.jsnodes.Node;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * The results of a finished analysis, in a form that can be written to disk and restored into a fresh
+ * {@link QueryManager} when the same program is analyzed again.
+ * <p>
+ * A checkpoint contains the points-to facts and call edges discovered so far, together with the backward and forward
+ * queries whose solvers ran to completion. The solvers' reached states are not recorded, and later analysis steps
+ * depend on them, such as data flows for unresolved function calls and meet-in-the-middle call resolution. Restoring a
+ * checkpoint therefore solves the recorded queries again, starting from the restored graphs, rather than treating
+ * them as answered.
+ * <p>
+ * Nodes are identified by their flowgraph index and functions by the index of their entry node, so checkpoints are
+ * only meaningful for the flowgraph they were computed on. Each checkpoint therefore records a hash of the index, kind,
+ * function and source location of every node, see {@link #flowGraphHash}. Likewise, the {@link SolverOptions} change
+ * which facts the solvers find, so they are recorded as well, except for the number of threads, which does not change
+ * the results. A checkpoint of another format version, flowgraph or options is not an error but is ignored with a
+ * warning, as is a file that is not a checkpoint at all.
+ */
+public final class Checkpoint {
+
+    private static final int MAGIC = 0x4D434B50; // "MCKP"
+    private static final int VERSION = 3;
+
+    private static final byte REGISTER = 0;
+    private static final byte CONSTANT_ALLOCATION = 1;
+    private static final byte FUNCTION_ALLOCATION = 2;
+    private static final byte OBJECT_ALLOCATION = 3;
+    private static final byte METHOD_CALL = 4;
+    private static final byte VARIABLE = 5;
+    private static final byte PROPERTY = 6;
+    private static final byte WILDCARD_PROPERTY = 7;
+    private static final byte EPSILON_PROPERTY = 8;
+    private static final byte EMPTY_PROPERTY = 9;
+
+    private static final byte NODE_STATE = 0;
+    private static final byte ENTRY_NODE_STATE = 1;
+    private static final byte EPSILON_NODE_STATE = 2;
+
+    public record PointsToFact(PointsToGraph.PointsToLocation location, Allocation allocation) {
+    }
+
+    private final SolverOptions options;
+    private final List<PointsToFact> pointsToFacts;
+    private final List<CallGraph.Edge> callEdges;
+    private final Set<sync.pds.solver.nodes.Node<NodeState, Value>> completedBackwardQueries;
+    private final Set<sync.pds.solver.nodes.Node<NodeState, Value>> completedForwardQueries;
+
+    public Checkpoint(
+            SolverOptions options,
+            List<PointsToFact> pointsToFacts,
+            List<CallGraph.Edge> callEdges,
+            Set<sync.pds.solver.nodes.Node<NodeState, Value>> completedBackwardQueries,
+            Set<sync.pds.solver.nodes.Node<NodeState, Value>> completedForwardQueries
+    ) {
+        this.options = options;
+        this.pointsToFacts = pointsToFacts;
+        this.callEdges = callEdges;
+        this.completedBackwardQueries = completedBackwardQueries;
+        this.completedForwardQueries = completedForwardQueries;
+    }
+
+    /**
+     * Capture the current contents of the given graphs. This waits for the graphs' scheduler, so it must not be
+     * called from a scheduler task.
+     */
+    public static Checkpoint capture(
+            SolverOptions options,
+            PointsToGraph pointsToGraph,
+            CallGraph callGraph,
+            Set<sync.pds.solver.nodes.Node<NodeState, Value>> completedBackwardQueries,
+            Set<sync.pds.solver.nodes.Node<NodeState, Value>> completedForwardQueries
+    ) {
+        final List<PointsToFact> pointsToFacts = new ArrayList<>();
+        pointsToGraph.forEachPointsToFact((location, allocation) ->
+                pointsToFacts.add(new PointsToFact(location, allocation)));
+        return new Checkpoint(
+                options,
+                pointsToFacts,
+                new ArrayList<>(callGraph.snapshot().edgeSet()),
+                Set.copyOf(completedBackwardQueries),
+                Set.copyOf(completedForwardQueries)
+        );
+    }
+
+    public SolverOptions getOptions() {
+        return options;
+    }
+
+    public List<PointsToFact> getPointsToFacts() {
+        return Collections.unmodifiableList(pointsToFacts);
+    }
+
+    public List<CallGraph.Edge> getCallEdges() {
+        return Collections.unmodifiableList(callEdges);
+    }
+
+    public Set<sync.pds.solver.nodes.Node<NodeState, Value>> getCompletedBackwardQueries() {
+        return Collections.unmodifiableSet(completedBackwardQueries);
+    }
+
+    public Set<sync.pds.solver.nodes.Node<NodeState, Value>> getCompletedForwardQueries() {
+        return Collections.unmodifiableSet(completedForwardQueries);
+    }
+
+    /**
+     * Add the checkpointed points-to facts and call edges to the given graphs. Facts are added directly to the
+     * points-to graph so that call edges are only restored from the recorded edge list.
+     */
+    public void restoreInto(PointsToGraph pointsToGraph, CallGraph callGraph) {
+        pointsToFacts.forEach(fact -> pointsToGraph.addPointsToFact(fact.location(), fact.allocation()));
+        callEdges.forEach(edge -> callGraph.addEdge(edge.getCallSite(), edge.getCallTarget()));
+    }
+
+    /**
+     * @return a SHA-256 hash of what checkpoint ids depend on: the index, kind, function and source location of every
+     * node of the flowgraph, in index order
+     */
+    public static byte[] flowGraphHash(FlowGraph flowGraph) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+        final var nodes = FlowgraphUtils.allNodes(flowGraph)
+                .sorted(Comparator.comparingInt(AbstractNode::getIndex))
+                .toList();
+        try (final var out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            out.writeInt(nodes.size());
+            for (final var node : nodes) {
+                out.writeInt(node.getIndex());
+                out.writeUTF(node.getClass().getName());
+                out.writeInt(functionId(node.getBlock().getFunction()));
+                final var location = node.getSourceLocation();
+                if (location == null) {
+                    out.writeBoolean(false);
+                } else {
+                    out.writeBoolean(true);
+                    out.writeUTF(location.getLocation() == null ? "" : location.getLocation().getPath());
+                    out.writeInt(location.getLineNumber());
+                    out.writeInt(location.getColumnNumber());
+                    out.writeInt(location.getEndLineNumber());
+                    out.writeInt(location.getEndColumnNumber());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return digest.digest();
+    }
+
+    public void write(FlowGraph flowGraph, Path file) throws IOException {
+        final var tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile), 1 << 16))) {
+            final var encoder = new Encoder(out);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            final var hash = flowGraphHash(flowGraph);
+            out.writeInt(hash.length);
+            out.write(hash);
+            encoder.writeOptions(options);
+            out.writeInt(pointsToFacts.size());
+            for (final var fact : pointsToFacts) {
+                encoder.writeNode(fact.location().getLocation());
+                encoder.writeValue(fact.location().getValue());
+                encoder.writeValue((Value) fact.allocation());
+            }
+            out.writeInt(callEdges.size());
+            for (final var edge : callEdges) {
+                encoder.writeNode(edge.getCallSite());
+                encoder.writeFunction(edge.getCallTarget());
+            }
+            encoder.writeQueries(completedBackwardQueries);
+            encoder.writeQueries(completedForwardQueries);
+        }
+        // Replace the previous checkpoint only once the new one is complete
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Read a checkpoint for the given flowgraph and options.
+     *
+     * @return the checkpoint, or an empty optional if the file does not exist, is not a checkpoint of this version, or
+     * was computed on a different flowgraph or with different options
+     * @throws IOException if the file cannot be read, or its contents are corrupt although its header matches
+     */
+    public static Optional<Checkpoint> read(FlowGraph flowGraph, SolverOptions options, Path file)
+            throws IOException {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (final var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                DebugUtils.warn("Ignoring " + file + ": it is not a checkpoint file");
+                return Optional.empty();
+            }
+            final var version = in.readInt();
+            if (version != VERSION) {
+                DebugUtils.warn("Ignoring checkpoint " + file + " with unsupported version " + version);
+                return Optional.empty();
+            }
+            final var hash = new byte[in.readInt()];
+            in.readFully(hash);
+            if (!Arrays.equals(hash, flowGraphHash(flowGraph))) {
+                DebugUtils.warn("Ignoring checkpoint " + file + ": it was computed on a different flowgraph");
+                return Optional.empty();
+            }
+            final var decoder = new Decoder(in, flowGraph);
+            final var checkpointOptions = decoder.readOptions(options.threads());
+            if (!checkpointOptions.equals(options)) {
+                DebugUtils.warn("Ignoring checkpoint " + file + ": it was computed with options " +
+                        checkpointOptions + " instead of " + options);
+                return Optional.empty();
+            }
+            final var factCount = in.readInt();
+            final List<PointsToFact> pointsToFacts = new ArrayList<>(factCount);
+            for (int i = 0; i < factCount; i++) {
+                final var location = new PointsToGraph.PointsToLocation(decoder.readNode(), decoder.readValue());
+                pointsToFacts.add(new PointsToFact(location, (Allocation) decoder.readValue()));
+            }
+            final var edgeCount = in.readInt();
+            final List<CallGraph.Edge> callEdges = new ArrayList<>(edgeCount);
+            for (int i = 0; i < edgeCount; i++) {
+                callEdges.add(new CallGraph.Edge((CallNode) decoder.readNode(), decoder.readFunction()));
+            }
+            final var completedBackwardQueries = decoder.readQueries();
+            final var completedForwardQueries = decoder.readQueries();
+            return Optional.of(new Checkpoint(checkpointOptions, pointsToFacts, callEdges, completedBackwardQueries,
+                    completedForwardQueries));
+        }
+    }
+
+    /**
+     * Functions are identified by the index of their entry node, which is stable for a given flowgraph
+     */
+    private static int functionId(Function function) {
+        return function.getEntry().getFirstNode().getIndex();
+    }
+
+    private static final class Encoder {
+
+        private final DataOutputStream out;
+
+        private Encoder(DataOutputStream out) {
+            this.out = out;
+        }
+
+        private void writeNode(Node node) throws IOException {
+            out.writeInt(node.getIndex());
+        }
+
+        private void writeFunction(Function function) throws IOException {
+            out.writeInt(functionId(function));
+        }
+
+        private void writeString(String string) throws IOException {
+            final var bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeOptions(SolverOptions options) throws IOException {
+            out.writeBoolean(options.sparse());
+            out.writeBoolean(options.indexedFieldReads());
+            out.writeBoolean(options.bidirectionalCalls());
+            out.writeBoolean(options.callGraphPrepass());
+        }
+
+        private void writeValue(Value value) throws IOException {
+            // Allocations extend Register, so they have to be matched first
+            if (value instanceof ConstantAllocation constantAllocation) {
+                out.writeByte(CONSTANT_ALLOCATION);
+                writeNode(constantAllocation.getAllocationStatement());
+            } else if (value instanceof FunctionAllocation functionAllocation) {
+                out.writeByte(FUNCTION_ALLOCATION);
+                writeNode(functionAllocation.getAllocationStatement());
+            } else if (value instanceof ObjectAllocation objectAllocation) {
+                out.writeByte(OBJECT_ALLOCATION);
+                writeNode(objectAllocation.getAllocationStatement());
+            } else if (value instanceof Register register) {
+                out.writeByte(REGISTER);
+                out.writeInt(register.getId());
+                writeFunction(register.getContainingFunction());
+            } else if (value instanceof MethodCall methodCall) {
+                out.writeByte(METHOD_CALL);
+                writeNode(methodCall.getCallNode());
+            } else if (value instanceof Variable variable) {
+                out.writeByte(VARIABLE);
+                writeString(variable.getVarName());
+                writeFunction(variable.getDeclaringFunction());
+            } else if (value == Property.getWildcard()) {
+                out.writeByte(WILDCARD_PROPERTY);
+            } else if (value == Property.getEpsilon()) {
+                out.writeByte(EPSILON_PROPERTY);
+            } else if (value == Property.getEmpty()) {
+                out.writeByte(EMPTY_PROPERTY);
+            } else if (value instanceof Property property) {
+                out.writeByte(PROPERTY);
+                writeString(property.getPropertyName());
+            } else {
+                throw new IllegalArgumentException("Cannot checkpoint value " + value);
+            }
+        }
+
+        private void writeNodeState(NodeState nodeState) throws IOException {
+            if (nodeState == NodeState.getEpsilon()) {
+                out.writeByte(EPSILON_NODE_STATE);
+            } else {
+                out.writeByte(nodeState instanceof EntryNode ? ENTRY_NODE_STATE : NODE_STATE);
+                writeNode(nodeState.getNode());
+            }
+        }
+
+        private void writeQueries(Set<sync.pds.solver.nodes.Node<NodeState, Value>> queries) throws IOException {
+            out.writeInt(queries.size());
+            for (final var query : queries) {
+                writeNodeState(query.stmt());
+                writeValue(query.fact());
+            }
+        }
+    }
+
+    private static final class Decoder {
+
+        private final DataInputStream in;
+        private final NodeIndex nodeIndex;
+
+        private Decoder(DataInputStream in, FlowGraph flowGraph) {
+            this.in = in;
+            this.nodeIndex = NodeIndex.of(flowGraph);
+        }
+
+        private Node readNode() throws IOException {
+            final var index = in.readInt();
+            try {
+                return nodeIndex.getNode(index);
+            } catch (NoSuchElementException e) {
+                throw new IOException("Checkpoint refers to unknown node " + index, e);
+            }
+        }
+
+        private Function readFunction() throws IOException {
+            final var entryNode = readNode();
+            final var function = entryNode.getBlock().getFunction();
+            if (functionId(function) != entryNode.getIndex()) {
+                throw new IOException("Checkpoint refers to unknown function " + entryNode.getIndex());
+            }
+            return function;
+        }
+
+        private String readString() throws IOException {
+            final var bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @param threads the number of threads to complete the options with, since it is not recorded
+         */
+        private SolverOptions readOptions(int threads) throws IOException {
+            return SolverOptions.defaults()
+                    .withSparse(in.readBoolean())
+                    .withIndexedFieldReads(in.readBoolean())
+                    .withBidirectionalCalls(in.readBoolean())
+                    .withCallGraphPrepass(in.readBoolean())
+                    .withThreads(threads);
+        }
+
+        private Value readValue() throws IOException {
+            final var tag = in.readByte();
+            return switch (tag) {
+                case REGISTER -> {
+                    final var id = in.readInt();
+                    yield Register.of(id, readFunction());
+                }
+                case CONSTANT_ALLOCATION -> new ConstantAllocation((ConstantNode) readNode());
+                case FUNCTION_ALLOCATION -> new FunctionAllocation((DeclareFunctionNode) readNode());
+                case OBJECT_ALLOCATION -> new ObjectAllocation(readNode());
+                case METHOD_CALL -> new MethodCall((CallNode) readNode());
+                case VARIABLE -> {
+                    final var name = readString();
+                    yield Variable.of(name, readFunction());
+                }
+                case PROPERTY -> Property.of(readString());
+                case WILDCARD_PROPERTY -> Property.getWildcard();
+                case EPSILON_PROPERTY -> Property.getEpsilon();
+                case EMPTY_PROPERTY -> Property.getEmpty();
+                default -> throw new IOException("Unknown value tag in checkpoint: " + tag);
+            };
+        }
+
+        private NodeState readNodeState() throws IOException {
+            final var tag = in.readByte();
+            return switch (tag) {
+                case NODE_STATE -> NodeState.of(readNode());
+                case ENTRY_NODE_STATE -> new EntryNode((ConstantNode) readNode());
+                case EPSILON_NODE_STATE -> NodeState.getEpsilon();
+                default -> throw new IOException("Unknown node state tag in checkpoint: " + tag);
+            };
+        }
+
+        private Set<sync.pds.solver.nodes.Node<NodeState, Value>> readQueries() throws IOException {
+            final var count = in.readInt();
+            final Set<sync.pds.solver.nodes.Node<NodeState, Value>> queries = new HashSet<>();
+            for (int i = 0; i < count; i++) {
+                final var stmt = readNodeState();
+                queries.add(new sync.pds.solver.nodes.Node<>(stmt, readValue()));
+            }
+            return queries;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.solver;
+
+import com.amazon.pvar.tspoc.merlin.ir.FlowgraphUtils;
+import com.amazon.pvar.tspoc.merlin.ir.Property;
+import com.amazon.pvar.tspoc.merlin.ir.Register;
+import com.amazon.pvar.tspoc.merlin.ir.ScopeResolution;
+import com.amazon.pvar.tspoc.merlin.ir.VariableUsage;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.WritePropertyNode;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Populates the property write index of the {@link PointsToGraph} for indexed field reads
+ * (see {@link SolverOptions#indexedFieldReads()}).
+ * <p>
+ * Writes are recorded into the index whenever a solver resolves the base of a fixed-property write, but a read must
+ * see every write of its property, including writes no solver has visited. The first time a property is read in a
+ * program, the index therefore resolves the bases of all writes of that property in the program, and records each base
+ * allocation as it is discovered. Writes of dynamic properties, such as {@code o[k] = v}, may write any property, so
+ * they are recorded for every property read from their base.
+ */
+public final class FieldStoreIndex {
+
+    /**
+     * Tags the handler resolving the base of a single write site for one property
+     */
+    private record StoreSiteID(WritePropertyNode site, Property property) implements QueryID {
+    }
+
+    /**
+     * The writes of a program: fixed-property writes by property name, and writes of dynamic properties
+     */
+    private record ProgramWrites(Map<String, List<WritePropertyNode>> fixed, List<WritePropertyNode> dynamic) {
+    }
+
+    private record TrackedProperty(Function program, Property property) {
+    }
+
+    private final QueryManager queryManager;
+    private final Set<TrackedProperty> trackedProperties = ConcurrentHashMap.newKeySet();
+    /**
+     * Writes of each program (outermost function)
+     */
+    private final ConcurrentMap<Function, ProgramWrites> writesByProgram = new ConcurrentHashMap<>();
+
+    public FieldStoreIndex(QueryManager queryManager) {
+        this.queryManager = queryManager;
+    }
+
+    /**
+     * Make sure that every write of property in the program containing function is recorded in the index once its
+     * base is resolved
+     */
+    public void trackStoresTo(Function function, Property property) {
+        final var program = ScopeResolution.outermostScope(function);
+        if (!trackedProperties.add(new TrackedProperty(program, property))) {
+            return;
+        }
+        final var writes = writesByProgram.computeIfAbsent(program, FieldStoreIndex::collectWrites);
+        writes.fixed().getOrDefault(property.getPropertyName(), List.of()).forEach(site -> trackStore(site, property));
+        writes.dynamic().forEach(site -> trackStore(site, property));
+    }
+
+    private void trackStore(WritePropertyNode site, Property property) {
+        final var baseRegister = Register.of(site.getBaseRegister(), site.getBlock().getFunction());
+        queryManager.aliasCache().subscribe(site, baseRegister, new StoreSiteID(site, property), null,
+                alloc -> queryManager.getPointsToGraph().addFieldStore(alloc, property, site));
+    }
+
+    private static ProgramWrites collectWrites(Function program) {
+        final Map<String, List<WritePropertyNode>> fixed = new HashMap<>();
+        final List<WritePropertyNode> dynamic = new ArrayList<>();
+        VariableUsage.nestingTree(program).forEach(function -> FlowgraphUtils.allNodesInFunction(function)
+                .forEach(node -> {
+                    if (node instanceof WritePropertyNode write) {
+                        if (write.isPropertyFixed()) {
+                            fixed.computeIfAbsent(write.getPropertyString(), key -> new ArrayList<>()).add(write);
+                        } else {
+                            dynamic.add(write);
+                        }
+                    }
+                }));
+        return new ProgramWrites(fixed, dynamic);
+    }
+}
@@ -18,7 +18,6 @@ package com.amazon.pvar.tspoc.merlin.solver;
 import com.amazon.pvar.tspoc.merlin.DebugUtils;
 import com.amazon.pvar.tspoc.merlin.ir.*;
 import com.amazon.pvar.tspoc.merlin.solver.flowfunctions.AbstractFlowFunctions;
-import com.amazon.pvar.tspoc.merlin.solver.flowfunctions.FlowFunctionContext;
 import com.amazon.pvar.tspoc.merlin.solver.flowfunctions.ForwardFlowFunctions;
 import dk.brics.tajs.flowgraph.jsnodes.CallNode;
 import dk.brics.tajs.flowgraph.jsnodes.DeclareFunctionNode;
@@ -36,7 +35,7 @@ public class ForwardMerlinSolver extends MerlinSolver {
 
     public ForwardMerlinSolver(QueryManager queryManager, Node<NodeState, Value> initialQuery) {
         super(queryManager, initialQuery);
-        DebugUtils.debug("Creating forwards solver for " + initialQuery);
+        DebugUtils.debug(() -> "Creating forwards solver for " + initialQuery);
         if (initialQuery.fact() instanceof Allocation) {
             registerPointsToUpdateListener(initialQuery);
         }
@@ -88,7 +87,7 @@ public class ForwardMerlinSolver extends MerlinSolver {
             dk.brics.tajs.flowgraph.jsnodes.Node tajsNode = node.stmt().getNode();
             if (tajsNode instanceof CallNode callNode) {
                 Register callNodeFunctionRegister =
-                        new Register(callNode.getFunctionRegister(), callNode.getBlock().getFunction());
+                        Register.of(callNode.getFunctionRegister(), callNode.getBlock().getFunction());
                 if (node.fact().equals(callNodeFunctionRegister)) {
                     queryManager.getCallGraph().addEdge(callNode, ((DeclareFunctionNode) funcAlloc.getAllocationStatement()).getFunction());
                 }
@@ -108,12 +107,12 @@ public class ForwardMerlinSolver extends MerlinSolver {
                         final var shouldContinue = targetVal.equals(ForwardMerlinSolver.this.initialQuery.fact());
                         if (shouldContinue) {
                             final var targetFunc = transition.getLabel().getNode().getBlock().getFunction();
-                            final var flowFunctions = makeFlowFunctions(curr);
+                            final var flowFunctions = flowFunctions();
                             final var callSites = flowFunctions.findInvocationsOfFunction(targetFunc);
                             final var queryID = getQueryID(curr, true, true);
                             flowFunctions.continueWithSubqueryResult(callSites, queryID, callNode -> {
                                 Node<NodeState, Value> normalizedCallPop = new Node<>(
-                                        new NodeState(callNode),
+                                        NodeState.of(callNode),
                                         valueINode.fact()
                                 );
                                 propagate(curr, normalizedCallPop);
@@ -164,8 +163,7 @@ public class ForwardMerlinSolver extends MerlinSolver {
     }
 
     @Override
-    protected final AbstractFlowFunctions makeFlowFunctions(Node<NodeState, Value> currentPDSNode) {
-        final var context = new FlowFunctionContext(currentPDSNode);
-        return new ForwardFlowFunctions(this, queryManager, context);
+    protected final AbstractFlowFunctions makeFlowFunctions() {
+        return new ForwardFlowFunctions(this, queryManager);
     }
 }
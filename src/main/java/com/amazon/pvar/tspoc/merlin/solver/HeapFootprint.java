@@ -0,0 +1,89 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.solver;
+
+import java.util.Map;
+
+/**
+ * Estimated retained heap sizes of the main data structures of an analysis, in bytes.
+ * <p>
+ * The estimates are computed from element counts multiplied by approximate per-element costs (the element itself
+ * plus the hash table entries that index it) on a 64-bit JVM with compressed references. They are not exact, but are
+ * cheap enough to sample during a run and good enough to tell which structure dominates the heap.
+ *
+ * @param solverBytes estimated size of each solver, keyed by its query string
+ * @param pointsToGraphBytes estimated size of the points-to graph, including the live sets and their handlers
+ * @param callGraphBytes estimated size of the call graph, including its indices and live views
+ * @param schedulerQueueBytes estimated size of the tasks waiting in the scheduler's queues
+ */
+public record HeapFootprint(
+        Map<String, Long> solverBytes,
+        long pointsToGraphBytes,
+        long callGraphBytes,
+        long schedulerQueueBytes
+) {
+
+    /** A reached state: the SPDS node, its NodeState and a hash set entry */
+    static final long REACHED_STATE_BYTES = 72;
+    /** An automaton transition, which the automaton stores in its transition set and its in/out/weight maps */
+    static final long TRANSITION_BYTES = 192;
+    /** A solver update listener: the lambda with its captures and a hash set entry */
+    static final long LISTENER_BYTES = 64;
+    /** An empty live set, with its atomic state reference and the state it points to */
+    static final long LIVE_SET_BYTES = 64;
+    /** An element of a live set */
+    static final long LIVE_SET_ELEMENT_BYTES = 40;
+    /** A handler registered on a live set */
+    static final long LIVE_SET_HANDLER_BYTES = 64;
+    /** A key of a live map, including its hash map entry */
+    static final long LIVE_MAP_KEY_BYTES = 72;
+    /** A call edge and its cell in the published edge list; its index entries are counted as live map elements */
+    static final long CALL_EDGE_BYTES = 56;
+    /** A queued scheduler task: the fork/join adapter and the closure it runs */
+    static final long SCHEDULER_TASK_BYTES = 64;
+
+    public static long estimateSolver(int reachedStates, int fieldTransitions, int callTransitions, int listeners) {
+        return reachedStates * REACHED_STATE_BYTES +
+                (long) (fieldTransitions + callTransitions) * TRANSITION_BYTES +
+                listeners * LISTENER_BYTES;
+    }
+
+    public static long estimateLiveMap(LiveMap.Counts counts) {
+        return counts.keys() * (LIVE_MAP_KEY_BYTES + LIVE_SET_BYTES) +
+                counts.elements() * LIVE_SET_ELEMENT_BYTES +
+                counts.handlers() * LIVE_SET_HANDLER_BYTES;
+    }
+
+    public static long estimateCallGraph(int edges) {
+        return edges * CALL_EDGE_BYTES;
+    }
+
+    public static long estimateSchedulerQueue(long queuedTasks) {
+        return queuedTasks * SCHEDULER_TASK_BYTES;
+    }
+
+    public long solversBytes() {
+        return solverBytes.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public long largestSolverBytes() {
+        return solverBytes.values().stream().mapToLong(Long::longValue).max().orElse(0);
+    }
+
+    public long totalBytes() {
+        return solversBytes() + pointsToGraphBytes + callGraphBytes + schedulerQueueBytes;
+    }
+}
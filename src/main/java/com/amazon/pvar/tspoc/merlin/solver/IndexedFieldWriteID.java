@@ -0,0 +1,29 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.solver;
+
+import com.amazon.pvar.tspoc.merlin.ir.NodeState;
+import com.amazon.pvar.tspoc.merlin.ir.Value;
+import dk.brics.tajs.flowgraph.jsnodes.WritePropertyNode;
+import sync.pds.solver.nodes.Node;
+
+/**
+ * Identifies the handler continuing a backward property read at the allocations of the value written by one indexed
+ * write
+ */
+public record IndexedFieldWriteID(Query initialQuery, Node<NodeState, Value> readState, WritePropertyNode site)
+        implements QueryID {
+}
@@ -3,9 +3,15 @@ package com.amazon.pvar.tspoc.merlin.solver;
 import com.amazon.pvar.tspoc.merlin.livecollections.LiveSet;
 import com.amazon.pvar.tspoc.merlin.livecollections.Scheduler;
 
+import javax.annotation.Nullable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * A multimap whose value sets are live sets. Neither lookups nor insertions lock the map: keys are added to a
+ * concurrent map and values to lock-free live sets, which schedule their handlers rather than running them.
+ */
 public class LiveMap<K, V> {
 
     private final Scheduler scheduler;
@@ -14,18 +20,59 @@ public class LiveMap<K, V> {
         this.scheduler = scheduler;
     }
 
-    private final Map<K, LiveSet<V>> backingMap = new HashMap<>();
+    private final Map<K, LiveSet<V>> backingMap = new ConcurrentHashMap<>();
 
     public static <K,V> LiveMap<K, V> create(Scheduler scheduler) {
         return new LiveMap<>(scheduler);
     }
 
-    public synchronized void put(K k, V v) {
-        this.get(k).add(v);
+    /**
+     * @return true if v was not associated with k yet
+     */
+    public boolean put(K k, V v) {
+        return this.get(k).add(v);
     }
 
-    public synchronized LiveSet<V> get(K k) {
-        return backingMap.computeIfAbsent(k, key -> new LiveSet<>(scheduler));
+    public LiveSet<V> get(K k) {
+        final var set = backingMap.get(k);
+        return set != null ? set : backingMap.computeIfAbsent(k, key -> new LiveSet<>(scheduler));
+    }
+
+    /**
+     * @return the live set of k, or null if nothing was added or registered for k yet. Unlike {@link #get}, this
+     * does not create an empty set for lookups of absent keys.
+     */
+    public @Nullable LiveSet<V> getIfPresent(K k) {
+        return backingMap.get(k);
+    }
+
+    /**
+     * Aggregate sizes of a live map, used for heap footprint estimates
+     */
+    public record Counts(long keys, long elements, long handlers) {
+    }
+
+    /**
+     * @return the number of keys, elements and registered handlers in this map. The value sets are read without
+     * waiting for the scheduler, so the counts reflect the current state of a possibly running analysis.
+     */
+    public Counts counts() {
+        final var sets = entries().values();
+        long elements = 0;
+        long handlers = 0;
+        for (final var set : sets) {
+            elements += set.size();
+            handlers += set.handlerCount();
+        }
+        return new Counts(sets.size(), elements, handlers);
+    }
+
+    /**
+     * @return a copy of the current key/value-set associations. The value sets are live and may still grow, so
+     * callers that need final contents should wait for the scheduler before reading them.
+     */
+    public Map<K, LiveSet<V>> entries() {
+        return new HashMap<>(backingMap);
     }
 
 }
@@ -42,6 +42,8 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
@@ -50,9 +52,53 @@ public abstract class MerlinSolver extends SyncPDSSolver<NodeState, Value, Prope
     public final Node<NodeState, Value> initialQuery;
     protected final QueryManager queryManager;
     /**
-     * Unresolved calls for which we added artificial data flows already.
+     * Unresolved calls for which we added artificial data flows already. Concurrent, since QueryManager.solve() may
+     * handle the unresolved calls of this solver while its tasks run on other scheduler threads.
      * */
-    protected final Set<Pair<CallNode, Value>> handledUnresolvedCalls = new HashSet<>();
+    protected final Set<Pair<CallNode, Value>> handledUnresolvedCalls = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Sizes of the solver's internal structures, maintained by listeners so that they can be read from other threads
+     * without locking the solver. Used for heap footprint estimates.
+     */
+    private final AtomicInteger reachedStateCount = new AtomicInteger();
+    private final AtomicInteger fieldTransitionCount = new AtomicInteger();
+    private final AtomicInteger callTransitionCount = new AtomicInteger();
+    private final AtomicInteger listenerCount = new AtomicInteger();
+
+    /**
+     * The solver's flow function instance, reused for every transfer. Created on first use, since it refers back to
+     * the fully constructed solver.
+     */
+    private volatile AbstractFlowFunctions flowFunctions;
+    /**
+     * Reusable next-state buffers, indexed by the depth of nested computeSuccessor calls. Transfers nest when
+     * propagating a next state triggers listeners of this solver, so each depth needs its own buffer.
+     */
+    private final List<List<State>> nextStateBuffers = new ArrayList<>();
+    private int transferDepth = 0;
+
+    /**
+     * Call nodes whose reached states are re-processed by computeSuccessor when they are updated, and the states
+     * reached so far at each call node. Both are maintained by a single solver listener, registered when the first
+     * call node is watched, so that an update only triggers work for its own call node.
+     */
+    private final Set<CallNode> watchedCallNodes = new HashSet<>();
+    private final Map<CallNode, List<Node<NodeState, Value>>> reachedCallNodeStates = new HashMap<>();
+    private boolean callNodeListenerRegistered = false;
+
+    /**
+     * While suspended, reached states are not processed but kept in deferredStates until the solver is resumed.
+     * Pinned solvers, i.e. solvers that have been requested by a client outside the analysis through the getOrCreate
+     * and getOrStart methods of the {@link QueryManager}, have clients relying on their results and cannot be
+     * suspended. These fields are
+     * guarded by suspensionLock rather than the solver's monitor, so that a solver can be pinned by another solver's
+     * transfer without taking its monitor.
+     */
+    private final Object suspensionLock = new Object();
+    private boolean suspended = false;
+    private boolean pinned = false;
+    private final List<Node<NodeState, Value>> deferredStates = new ArrayList<>();
 
     /**
      * The SyncPDSSolver class requires WeightFunctions in the case that the analysis includes a weight domain.
@@ -84,6 +130,9 @@ public abstract class MerlinSolver extends SyncPDSSolver<NodeState, Value, Prope
         );
         this.queryManager = queryManager;
         this.initialQuery = initialQuery;
+        registerListener(node -> reachedStateCount.incrementAndGet());
+        fieldAutomaton.registerListener((transition, weight, automaton) -> fieldTransitionCount.incrementAndGet());
+        callAutomaton.registerListener((transition, weight, automaton) -> callTransitionCount.incrementAndGet());
     }
 
     public PointsToGraph getPointsToGraph() {
@@ -124,7 +173,21 @@ public abstract class MerlinSolver extends SyncPDSSolver<NodeState, Value, Prope
         return callWeightFunction;
     }
 
-    protected abstract AbstractFlowFunctions makeFlowFunctions(Node<NodeState, Value> currentPDSNode);
+    protected abstract AbstractFlowFunctions makeFlowFunctions();
+
+    protected final AbstractFlowFunctions flowFunctions() {
+        var result = flowFunctions;
+        if (result == null) {
+            synchronized (this) {
+                result = flowFunctions;
+                if (result == null) {
+                    result = makeFlowFunctions();
+                    flowFunctions = result;
+                }
+            }
+        }
+        return result;
+    }
 
     @Override
     public synchronized void computeSuccessor(Node<NodeState, Value> node) {
@@ -133,19 +196,134 @@ public abstract class MerlinSolver extends SyncPDSSolver<NodeState, Value, Prope
                     "The analysis may have reached the beginning of the program without finding an allocation site");
             return;
         }
-        final var flowFunctions = makeFlowFunctions(node);
+        synchronized (suspensionLock) {
+            if (suspended) {
+                deferredStates.add(node);
+                return;
+            }
+        }
+        final var flowFunctions = flowFunctions();
         for (final var nextNode : flowFunctions.nextNodes(node.stmt().getNode())) {
             if (nextNode instanceof CallNode callNode) {
-                this.registerListener(updatedNode -> {
-                    if (updatedNode.stmt().getNode().equals(callNode)) {
-                        DebugUtils.debug("Listener called about update for " + callNode);
-                        computeSuccessor(updatedNode);
-                    }
-                });
+                watchCallNode(callNode);
+            }
+        }
+        final var forward = this instanceof ForwardMerlinSolver;
+        final var cacheable = NormalFlowCache.isCacheable(node.stmt().getNode());
+        if (cacheable) {
+            final var cachedNextStates = queryManager.normalFlowCache().lookup(forward, node);
+            if (cachedNextStates != null) {
+                for (final var nextState : cachedNextStates) {
+                    propagate(node, nextState);
+                }
+                return;
+            }
+        }
+        if (transferDepth == nextStateBuffers.size()) {
+            nextStateBuffers.add(new ArrayList<>());
+        }
+        final var nextStates = nextStateBuffers.get(transferDepth++);
+        try {
+            final var queryIndependent = flowFunctions.computeNextStates(node, nextStates);
+            if (cacheable && queryIndependent) {
+                queryManager.normalFlowCache().store(forward, node, nextStates);
+            }
+            // Indexed loop, as propagating may run nested transfers that use the buffers of deeper levels
+            for (int i = 0; i < nextStates.size(); i++) {
+                propagate(node, nextStates.get(i));
+            }
+        } finally {
+            nextStates.clear();
+            transferDepth--;
+        }
+    }
+
+    /**
+     * Stop processing reached states until {@link #resume()} is called.
+     *
+     * @return false if the solver is pinned and was not suspended
+     */
+    public boolean suspend() {
+        synchronized (suspensionLock) {
+            if (pinned) {
+                return false;
+            }
+            suspended = true;
+            return true;
+        }
+    }
+
+    /**
+     * Continue a suspended solver, processing the states reached while it was suspended in a new scheduler task
+     */
+    public void resume() {
+        final List<Node<NodeState, Value>> deferred;
+        synchronized (suspensionLock) {
+            if (!suspended) {
+                return;
+            }
+            suspended = false;
+            deferred = List.copyOf(deferredStates);
+            deferredStates.clear();
+        }
+        if (!deferred.isEmpty()) {
+            queryManager.scheduler().execute(() -> {
+                synchronized (this) {
+                    deferred.forEach(this::computeSuccessor);
+                }
+            });
+        }
+    }
+
+    /**
+     * Mark this solver as relied upon by other clients, resuming it if it was suspended
+     */
+    public void pin() {
+        synchronized (suspensionLock) {
+            pinned = true;
+        }
+        resume();
+    }
+
+    public boolean isPinned() {
+        synchronized (suspensionLock) {
+            return pinned;
+        }
+    }
+
+    public boolean isSuspended() {
+        synchronized (suspensionLock) {
+            return suspended;
+        }
+    }
+
+    private synchronized void watchCallNode(CallNode callNode) {
+        if (!watchedCallNodes.add(callNode)) {
+            return;
+        }
+        if (!callNodeListenerRegistered) {
+            callNodeListenerRegistered = true;
+            listenerCount.incrementAndGet();
+            // Registering replays all states reached so far, including those at callNode
+            registerListener(this::onCallNodeStateReached);
+            return;
+        }
+        final var reachedStates = reachedCallNodeStates.get(callNode);
+        if (reachedStates != null) {
+            for (final var state : List.copyOf(reachedStates)) {
+                computeSuccessor(state);
+            }
+        }
+    }
+
+    private synchronized void onCallNodeStateReached(Node<NodeState, Value> updatedNode) {
+        if (updatedNode.stmt().getNode() instanceof CallNode callNode) {
+            reachedCallNodeStates.computeIfAbsent(callNode, key -> new ArrayList<>()).add(updatedNode);
+            if (watchedCallNodes.contains(callNode)) {
+                DebugUtils.debug(() -> "Listener called about update for " + callNode);
+                computeSuccessor(updatedNode);
             }
         }
-        final var nextStates = flowFunctions.computeNextStates();
-        nextStates.forEach(nextState -> propagate(node, nextState));
     }
 
     @Override
@@ -212,6 +390,16 @@ public abstract class MerlinSolver extends SyncPDSSolver<NodeState, Value, Prope
         super.propagate(curr, s);
     }
 
+    /**
+     * Propagate from curr to each of the given states while holding the solver's monitor once. Handlers running on
+     * other scheduler threads can compute a batch of next states without the monitor and then merge them here.
+     */
+    public synchronized final void propagateAll(Node<NodeState, Value> curr, Collection<? extends State> states) {
+        for (final var state : states) {
+            super.propagate(curr, state);
+        }
+    }
+
     public static BufferedImage visualizeCallPDS(WeightedPushdownSystem<NodeState, INode<Value>, Weight.NoWeight> callPDS) {
         // TODO: merge with visualizeFieldPDS once done
         final var graph = new DefaultDirectedGraph<Node<NodeState, Value>, CallEdge>(CallEdge.class);
@@ -225,8 +413,8 @@ public abstract class MerlinSolver extends SyncPDSSolver<NodeState, Value, Prope
 
                 continue;
             }
-            final var src = new Node<>(new NodeState(rule.getL1().getNode()), rule.getS1().fact());
-            final var dst = new Node<>(new NodeState(rule.getL2().getNode()), rule.getS2().fact());
+            final var src = new Node<>(NodeState.of(rule.getL1().getNode()), rule.getS1().fact());
+            final var dst = new Node<>(NodeState.of(rule.getL2().getNode()), rule.getS2().fact());
             ensureVertexExists.accept(src);
             ensureVertexExists.accept(dst);
             final CallEdge edge;
@@ -361,19 +549,23 @@ public abstract class MerlinSolver extends SyncPDSSolver<NodeState, Value, Prope
     public final boolean addDataFlowsForUnresolvedFunctionCalls() {
         var changed = false;
         queryManager.scheduler().waitUntilDone();
-        for (final var state : this.getReachedStates()) {
+        final List<Node<NodeState, Value>> reachedStates;
+        synchronized (this) {
+            reachedStates = List.copyOf(getReachedStates());
+        }
+        for (final var state : reachedStates) {
             if (state.stmt().getNode() instanceof CallNode callNode) {
-                final var callees = AbstractFlowFunctions.resolveFunctionCall(callNode, queryManager).toJavaSet();
+                final var callees = AbstractFlowFunctions.resolveFunctionCall(callNode, queryManager, this).toJavaSet();
                 final var callAndQuery = Pair.make(callNode, state.fact());
-                if (callees.isEmpty() && !handledUnresolvedCalls.contains(callAndQuery)) {
+                if (callees.isEmpty() && handledUnresolvedCalls.add(callAndQuery)) {
                     AbstractFlowFunctions.logUnsoundness(callNode, "Treating unresolved function call as side-effect free");
                     // Add data flow for unresolved function call
-                    final var flowFunctions = makeFlowFunctions(new Node<>(
-                            new NodeState(callNode),
-                            state.fact()
-                    ));
-                    flowFunctions.handleUnresolvedCall();
-                    handledUnresolvedCalls.add(callAndQuery);
+                    synchronized (this) {
+                        flowFunctions().handleUnresolvedCall(new Node<>(
+                                NodeState.of(callNode),
+                                state.fact()
+                        ));
+                    }
                     changed = true;
                 }
             }
@@ -381,6 +573,19 @@ public abstract class MerlinSolver extends SyncPDSSolver<NodeState, Value, Prope
         return changed;
     }
 
+    /**
+     * @return an estimate of the heap retained by this solver's reached states, automata and listeners. Safe to call
+     * from any thread while the solver is running.
+     */
+    public long estimatedFootprint() {
+        return HeapFootprint.estimateSolver(
+                reachedStateCount.get(),
+                fieldTransitionCount.get(),
+                callTransitionCount.get(),
+                listenerCount.get()
+        );
+    }
+
     public synchronized int stateCount() {
         return getReachedStates().size();
     }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.solver;
+
+import com.amazon.pvar.tspoc.merlin.ir.NodeState;
+import com.amazon.pvar.tspoc.merlin.ir.Value;
+import dk.brics.tajs.flowgraph.jsnodes.*;
+import sync.pds.solver.nodes.Node;
+import wpds.interfaces.State;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Next states of intraprocedural normal-flow transfers, shared by all solvers of a {@link QueryManager}.
+ * <p>
+ * The next states of a normal-flow transfer depend only on its direction and SPDS node (statement and value), so a
+ * transfer computed by one solver can be replayed by every other solver reaching the same node. Only transfers at the
+ * node types listed here are cached, and only if the flow functions report that the transfer did not start subqueries
+ * or register handlers (e.g. the closure handling of forward variable writes), since those depend on the query.
+ * Calls, returns, function entries and property accesses are never cached.
+ */
+public final class NormalFlowCache {
+
+    private static final Set<Class<? extends dk.brics.tajs.flowgraph.jsnodes.Node>> CACHEABLE_NODE_TYPES = Set.of(
+            BinaryOperatorNode.class,
+            UnaryOperatorNode.class,
+            ReadVariableNode.class,
+            WriteVariableNode.class,
+            DeclareVariableNode.class,
+            DeclareFunctionNode.class,
+            NewObjectNode.class,
+            DeletePropertyNode.class,
+            TypeofNode.class,
+            NopNode.class,
+            IfNode.class,
+            CatchNode.class,
+            BeginLoopNode.class,
+            EndLoopNode.class,
+            BeginForInNode.class,
+            EndForInNode.class,
+            NextPropertyNode.class,
+            HasNextPropertyNode.class
+    );
+
+    private record Key(boolean forward, Node<NodeState, Value> pdsNode) {
+    }
+
+    private final ConcurrentMap<Key, List<State>> transfers = new ConcurrentHashMap<>();
+
+    /**
+     * @return true if transfers at this node may be cached, provided they turn out to be query independent
+     */
+    public static boolean isCacheable(dk.brics.tajs.flowgraph.jsnodes.Node node) {
+        return CACHEABLE_NODE_TYPES.contains(node.getClass());
+    }
+
+    /**
+     * @return the next states of the transfer at pdsNode, or null if it has not been cached yet
+     */
+    @Nullable
+    public List<State> lookup(boolean forward, Node<NodeState, Value> pdsNode) {
+        return transfers.get(new Key(forward, pdsNode));
+    }
+
+    public void store(boolean forward, Node<NodeState, Value> pdsNode, Collection<State> nextStates) {
+        transfers.putIfAbsent(new Key(forward, pdsNode), List.copyOf(nextStates));
+    }
+
+    public int size() {
+        return transfers.size();
+    }
+}
@@ -22,8 +22,10 @@ import com.amazon.pvar.tspoc.merlin.livecollections.LiveSet;
 import com.amazon.pvar.tspoc.merlin.livecollections.Scheduler;
 import dk.brics.tajs.flowgraph.jsnodes.CallNode;
 import dk.brics.tajs.flowgraph.jsnodes.Node;
+import dk.brics.tajs.flowgraph.jsnodes.WritePropertyNode;
 
 import java.util.Objects;
+import java.util.function.BiConsumer;
 
 /**
  * This class stores points-to information collected during the course of an analysis.
@@ -36,10 +38,27 @@ public class PointsToGraph {
 
     private final LiveMap<Allocation, PointsToLocation> allocationLiveMap;
 
+    /**
+     * Call nodes known to invoke a function allocation. This is the subset of allocationLiveMap restricted to
+     * call-site locations, kept separately so that invocation lookups do not have to filter all locations.
+     */
+    private final LiveMap<FunctionAllocation, CallNode> invocationLiveMap;
+
+    /**
+     * Fixed-property writes known to store into a property of an allocation, i.e. whose base register may point to
+     * the allocation
+     */
+    private final LiveMap<FieldKey, WritePropertyNode> fieldStoreLiveMap;
+
+    private record FieldKey(Allocation allocation, Property property) {
+    }
+
     public PointsToGraph(Scheduler scheduler) {
         this.scheduler = scheduler;
         pointsToLiveMap = LiveMap.create(scheduler);
         allocationLiveMap = LiveMap.create(scheduler);
+        invocationLiveMap = LiveMap.create(scheduler);
+        fieldStoreLiveMap = LiveMap.create(scheduler);
     }
 
     /**
@@ -127,26 +146,72 @@ public class PointsToGraph {
      * @return
      */
     public LiveCollection<CallNode> getKnownFunctionInvocations(FunctionAllocation functionAlloc) {
-        final var allocLiveMap = allocationLiveMap.get(functionAlloc);
-        DebugUtils.debug("listening for function invocations of " + functionAlloc.getAllocationStatement() +
-                " on " + allocLiveMap);
-        return allocLiveMap
-                .filter(ptl -> {
-                    if (ptl.getLocation() instanceof CallNode callNode) {
-                        if (ptl.getValue() instanceof Register register) {
-                            return callNode.getFunctionRegister() != -1 &&
-                                    callNode.getFunctionRegister() == register.getId() &&
-                                    callNode.getBlock().getFunction().equals(register.getContainingFunction());
-                        } else if (ptl.getValue() instanceof MethodCall methodCall) {
-                            return methodCall.getCallNode().equals(callNode);
-                        } else {
-                            return false;
-                        }
-                    }
-                    return false;
-                })
-                .map(ptl -> (CallNode) ptl.getLocation());
+        final var invocations = invocationLiveMap.get(functionAlloc);
+        DebugUtils.debug(() -> "listening for function invocations of " + functionAlloc.getAllocationStatement() +
+                " on " + invocations);
+        return invocations;
+    }
+
+    /**
+     * Get the write sites known to store into the given property of the provided allocation site
+     *
+     * @param alloc
+     * @param property
+     * @return
+     */
+    public LiveSet<WritePropertyNode> getFieldStores(Allocation alloc, Property property) {
+        return fieldStoreLiveMap.get(new FieldKey(alloc, property));
+    }
+
+    /**
+     * Record that site writes property of alloc, i.e. that the base register of site may point to alloc
+     *
+     * @param alloc
+     * @param property
+     * @param site
+     */
+    public void addFieldStore(Allocation alloc, Property property, WritePropertyNode site) {
+        fieldStoreLiveMap.put(new FieldKey(alloc, property), site);
+    }
 
+    /**
+     * @return an estimate of the heap retained by the points-to graph's maps, their live sets and handlers
+     */
+    public long estimatedFootprint() {
+        return HeapFootprint.estimateLiveMap(pointsToLiveMap.counts()) +
+                HeapFootprint.estimateLiveMap(allocationLiveMap.counts()) +
+                HeapFootprint.estimateLiveMap(invocationLiveMap.counts()) +
+                HeapFootprint.estimateLiveMap(fieldStoreLiveMap.counts());
+    }
+
+    /**
+     * Run the given action on every points-to fact in the graph. This waits for the graph's scheduler, so it must
+     * not be called from a scheduler task.
+     *
+     * @param action
+     */
+    public void forEachPointsToFact(BiConsumer<PointsToLocation, Allocation> action) {
+        pointsToLiveMap.entries().forEach((location, allocations) ->
+                allocations.toJavaSet().forEach(allocation -> action.accept(location, allocation)));
+    }
+
+    /**
+     * @param location
+     * @param value
+     * @return true if a points-to fact for value at location determines the function invoked at location, i.e. if
+     * location is a call node and value is its function register or its method call
+     */
+    public static boolean isInvocation(Node location, Value value) {
+        if (location instanceof CallNode callNode) {
+            if (value instanceof Register register) {
+                return callNode.getFunctionRegister() != -1 &&
+                        callNode.getFunctionRegister() == register.getId() &&
+                        callNode.getBlock().getFunction().equals(register.getContainingFunction());
+            } else if (value instanceof MethodCall methodCall) {
+                return methodCall.getCallNode().equals(callNode);
+            }
+        }
+        return false;
     }
 
     /**
@@ -158,7 +223,11 @@ public class PointsToGraph {
     public void addPointsToFact(PointsToLocation pointsToLocation, Allocation allocation) {
         pointsToLiveMap.put(pointsToLocation, allocation);
         allocationLiveMap.put(allocation, pointsToLocation);
-        DebugUtils.debug("[" + this + "]: Discovered points-to: " + pointsToLocation + " -> " + allocation);
+        if (allocation instanceof FunctionAllocation functionAllocation &&
+                isInvocation(pointsToLocation.getLocation(), pointsToLocation.getValue())) {
+            invocationLiveMap.put(functionAllocation, (CallNode) pointsToLocation.getLocation());
+        }
+        DebugUtils.debug(() -> "[" + this + "]: Discovered points-to: " + pointsToLocation + " -> " + allocation);
     }
 
     /**
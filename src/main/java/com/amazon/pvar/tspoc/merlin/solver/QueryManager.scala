@@ -1,39 +1,83 @@
 package com.amazon.pvar.tspoc.merlin.solver
 
-import com.amazon.pvar.tspoc.merlin.ir.{Allocation, FunctionAllocation, MethodCall, NodeState, Register, Value}
-import com.amazon.pvar.tspoc.merlin.livecollections.Scheduler
+import com.amazon.pvar.tspoc.merlin.ir.{Allocation, FunctionAllocation, NodeState, Value}
+import com.amazon.pvar.tspoc.merlin.livecollections.{Scheduler, TaggedHandler, TaskGroup}
+import com.amazon.pvar.tspoc.merlin.solver.flowfunctions.AbstractFlowFunctions
+import dk.brics.tajs.flowgraph.{FlowGraph, Function}
 import dk.brics.tajs.flowgraph.jsnodes.CallNode
 import sync.pds.solver.nodes.Node
 
+import java.io.IOException
+import java.nio.file.Path
+import java.util.concurrent.{ConcurrentHashMap, TimeUnit}
 import scala.collection.mutable
+import scala.jdk.CollectionConverters._
 import scala.util.DynamicVariable
 
-class QueryManager() {
+class QueryManager(val options: SolverOptions) {
   import QueryManager.{BackwardQuery, ForwardQuery}
 
+  def this() = this(SolverOptions.defaults())
+
   private val backwardSolvers =
     mutable.Map.empty[BackwardQuery, BackwardMerlinSolver]
 
   private val forwardSolvers =
     mutable.Map.empty[ForwardQuery, ForwardMerlinSolver]
 
-  private val callGraph = new CallGraph()
+  val scheduler: Scheduler = Scheduler.create(options.threads)
 
-  val scheduler = new Scheduler()
+  private val callGraph = new CallGraph(scheduler)
 
   private val pointsToGraph = new PointsToGraph(scheduler)
 
+  /** Normal-flow transfers shared between all solvers */
+  val normalFlowCache = new NormalFlowCache()
+
+  /** Resolved base allocations of property accesses shared between all solvers */
+  val aliasCache = new AliasCache(this)
+
+  /** Resolves property writes into the points-to graph's write index for indexed field reads */
+  val fieldStoreIndex = new FieldStoreIndex(this)
+
+  /** Meet-in-the-middle call site resolution, used if `options.bidirectionalCalls` is set */
+  val callResolver = new BidirectionalCallResolver(this)
+
+  /** Subqueries requested by the analysis of each solver, and the solvers
+    * requesting each subquery
+    */
+  private val subqueries =
+    new ConcurrentHashMap[MerlinSolver, java.util.Set[MerlinSolver]]()
+
+  private val requesters =
+    new ConcurrentHashMap[MerlinSolver, java.util.Set[MerlinSolver]]()
+
+  /** Exclusive subqueries suspended together with each suspended solver */
+  private val suspendedSubqueries =
+    new ConcurrentHashMap[MerlinSolver, Seq[MerlinSolver]]()
+
   def getOrCreateBackwardSolver(
       backwardQuery: BackwardQuery
-  ): BackwardMerlinSolver = backwardSolvers.synchronized {
-    backwardSolvers.getOrElseUpdate(
-      backwardQuery, {
-        val solver =
-          new BackwardMerlinSolver(this, backwardQuery)
-        solver.setFunctionQuery(true)
-        solver
-      }
-    )
+  ): BackwardMerlinSolver = {
+    val solver = backwardSolvers.synchronized {
+      backwardSolvers.getOrElseUpdate(
+        backwardQuery,
+        newBackwardSolver(backwardQuery)
+      )
+    }
+    // Pinned outside the map's lock, since solvers request other solvers while holding their own monitor
+    solver.pin()
+    resumeSuspendedSubqueries(solver)
+    solver
+  }
+
+  private def newBackwardSolver(
+      backwardQuery: BackwardQuery
+  ): BackwardMerlinSolver = {
+    val solver =
+      new BackwardMerlinSolver(this, backwardQuery)
+    solver.setFunctionQuery(true)
+    solver
   }
 
   def getOrStartBackwardQuery(
@@ -46,13 +90,44 @@ class QueryManager() {
     solver
   }
 
+  /** Start a backward query that no other client has requested yet. Unlike
+    * solvers returned by `getOrCreateBackwardSolver` and
+    * `getOrStartBackwardQuery`, the new solver is not pinned and may be
+    * suspended by the caller.
+    *
+    * @return the new solver, or null if a solver for the query already exists
+    */
+  def startBackwardQueryIfAbsent(
+      backwardQuery: BackwardQuery
+  ): BackwardMerlinSolver = {
+    val created = backwardSolvers.synchronized {
+      if (backwardSolvers.contains(backwardQuery)) None
+      else {
+        val solver = newBackwardSolver(backwardQuery)
+        backwardSolvers.put(backwardQuery, solver)
+        Some(solver)
+      }
+    }
+    created.foreach(solver =>
+      scheduler.addThread({
+        solver.solve()
+      })
+    )
+    created.orNull
+  }
+
   def getOrCreateForwardSolver(
       forwardQuery: ForwardQuery
-  ): ForwardMerlinSolver = forwardSolvers.synchronized {
-    forwardSolvers.getOrElseUpdate(
-      forwardQuery,
-      new ForwardMerlinSolver(this, forwardQuery)
-    )
+  ): ForwardMerlinSolver = {
+    val solver = forwardSolvers.synchronized {
+      forwardSolvers.getOrElseUpdate(
+        forwardQuery,
+        new ForwardMerlinSolver(this, forwardQuery)
+      )
+    }
+    solver.pin()
+    resumeSuspendedSubqueries(solver)
+    solver
   }
 
   def getOrStartForwardQuery(
@@ -66,25 +141,277 @@ class QueryManager() {
     solver
   }
 
+  /** Forward counterpart of `startBackwardQueryIfAbsent`. */
+  def startForwardQueryIfAbsent(
+      forwardQuery: ForwardQuery
+  ): ForwardMerlinSolver = {
+    val created = forwardSolvers.synchronized {
+      if (forwardSolvers.contains(forwardQuery)) None
+      else {
+        val solver = new ForwardMerlinSolver(this, forwardQuery)
+        forwardSolvers.put(forwardQuery, solver)
+        Some(solver)
+      }
+    }
+    created.foreach(solver =>
+      scheduler.addThread({
+        solver.solve()
+      })
+    )
+    created.orNull
+  }
+
+  /** Variant of `getOrStartBackwardQuery` for subqueries issued by the
+    * analysis of `requester`. The returned solver is not pinned; instead the
+    * request is recorded, so that the subquery can be suspended together with
+    * its requester (see `suspendWithExclusiveSubqueries`). A null requester
+    * stands for a client outside the analysis.
+    */
+  def getOrStartBackwardQuery(
+      backwardQuery: BackwardQuery,
+      requester: MerlinSolver
+  ): BackwardMerlinSolver =
+    if (requester == null) getOrStartBackwardQuery(backwardQuery)
+    else {
+      val solver = backwardSolvers.synchronized {
+        backwardSolvers.getOrElseUpdate(
+          backwardQuery,
+          newBackwardSolver(backwardQuery)
+        )
+      }
+      recordRequest(solver, requester)
+      scheduler.addThread({
+        solver.solve()
+      })
+      solver
+    }
+
+  /** Forward counterpart of `getOrStartBackwardQuery(backwardQuery, requester)`. */
+  def getOrStartForwardQuery(
+      forwardQuery: ForwardQuery,
+      requester: MerlinSolver
+  ): ForwardMerlinSolver =
+    if (requester == null) getOrStartForwardQuery(forwardQuery)
+    else {
+      val solver = forwardSolvers.synchronized {
+        forwardSolvers.getOrElseUpdate(
+          forwardQuery,
+          new ForwardMerlinSolver(this, forwardQuery)
+        )
+      }
+      recordRequest(solver, requester)
+      scheduler.addThread({
+        solver.solve()
+      })
+      solver
+    }
+
+  /** Record that the analysis of `requester` relies on `solver`, resuming
+    * `solver` if it was suspended
+    */
+  def recordRequest(solver: MerlinSolver, requester: MerlinSolver): Unit = {
+    if (solver ne requester) {
+      subqueries
+        .computeIfAbsent(requester, _ => ConcurrentHashMap.newKeySet[MerlinSolver]())
+        .add(solver)
+      requesters
+        .computeIfAbsent(solver, _ => ConcurrentHashMap.newKeySet[MerlinSolver]())
+        .add(requester)
+    }
+    solver.resume()
+    resumeSuspendedSubqueries(solver)
+  }
+
+  private def resumeSuspendedSubqueries(solver: MerlinSolver): Unit = {
+    val suspended = suspendedSubqueries.remove(solver)
+    if (suspended != null) {
+      suspended.foreach(_.resume())
+    }
+  }
+
+  /** Suspend `solver` unless it is pinned or requested by another solver.
+    *
+    * @return true if the solver was suspended
+    */
+  def suspendIfUnrequested(solver: MerlinSolver): Boolean =
+    requesters.getOrDefault(solver, java.util.Set.of()).isEmpty && solver
+      .suspend()
+
+  /** Suspend `root` together with its exclusive subqueries: the solvers
+    * reachable from `root` through recorded requests that are not pinned and
+    * are only requested by `root` or by other exclusive subqueries. Shared
+    * subqueries keep running. The subqueries are resumed when `root` is
+    * requested again. Does nothing if `root` is pinned.
+    *
+    * @return the suspended solvers, starting with `root`
+    */
+  def suspendWithExclusiveSubqueries(
+      root: MerlinSolver
+  ): java.util.List[MerlinSolver] =
+    if (!root.suspend()) java.util.List.of()
+    else {
+      val exclusive = mutable.LinkedHashSet.empty[MerlinSolver]
+      val worklist = mutable.Queue(root)
+      while (worklist.nonEmpty) {
+        subqueries
+          .getOrDefault(worklist.dequeue(), java.util.Set.of())
+          .asScala
+          .foreach(subquery =>
+            if ((subquery ne root) && exclusive.add(subquery)) {
+              worklist.enqueue(subquery)
+            }
+          )
+      }
+      exclusive.filterInPlace(!_.isPinned)
+      // Remove subqueries that are also requested from outside the group until none are left
+      var changed = true
+      while (changed) {
+        changed = false
+        for (subquery <- exclusive.toSeq) {
+          val shared = requesters
+            .getOrDefault(subquery, java.util.Set.of())
+            .asScala
+            .exists(requester =>
+              (requester ne root) && !exclusive.contains(requester)
+            )
+          if (shared) {
+            exclusive -= subquery
+            changed = true
+          }
+        }
+      }
+      val suspended = exclusive.toSeq.filter(_.suspend())
+      suspendedSubqueries.put(root, suspended)
+      (root +: suspended).asJava
+    }
+
+  /** Solve `backwardQuery` until `limit` allocations are known for it, see
+    * `BackwardMerlinSolver.solveBounded`. The solver is not pinned, so that it
+    * can be suspended once the limit is reached unless another client pinned
+    * it. Must not be called from a scheduler task.
+    */
+  def solveBounded(
+      backwardQuery: BackwardQuery,
+      limit: Int
+  ): BoundedQueryResult = {
+    val solver = backwardSolvers.synchronized {
+      backwardSolvers.getOrElseUpdate(
+        backwardQuery,
+        newBackwardSolver(backwardQuery)
+      )
+    }
+    // A previous bounded query may have suspended the solver and its
+    // subqueries; their resumed work belongs to this query's tasks
+    val tasks = new TaskGroup
+    scheduler.runInGroup(
+      tasks,
+      () => {
+        solver.resume()
+        resumeSuspendedSubqueries(solver)
+      }
+    )
+    solver.solveBounded(limit, tasks)
+  }
+
+  /** Existential query: solve `backwardQuery` until any allocation is known
+    * for it.
+    */
+  def solveExistential(backwardQuery: BackwardQuery): BoundedQueryResult =
+    solveBounded(backwardQuery, 1)
+
+  /** Resolve the callees of `callNode`, waiting at most `timeoutMillis` for
+    * the queries to finish. If the budget runs out, the callees found so far
+    * are completed with the bound of the `CallGraphPrepass`, so that the
+    * result is available immediately instead of only after the queries
+    * finish. Must not be called from a scheduler task.
+    *
+    * Only the tasks caused by resolving `callNode` are waited for, not those
+    * of other clients running on the same scheduler. Results that work
+    * started earlier by other clients adds to shared solvers after these
+    * tasks finish are not included.
+    */
+  def resolveCallSite(callNode: CallNode, timeoutMillis: Long): CallSiteResolution = {
+    val found = ConcurrentHashMap.newKeySet[Function]()
+    val tasks = new TaskGroup
+    scheduler.runInGroup(
+      tasks,
+      () =>
+        AbstractFlowFunctions
+          .resolveFunctionCall(callNode, this)
+          .onAdd(TaggedHandler((callNode, found), (f: Function) => { found.add(f); () }))
+    )
+    if (tasks.waitUntilDone(timeoutMillis, TimeUnit.MILLISECONDS)) {
+      new CallSiteResolution(java.util.Set.copyOf(found), true)
+    } else {
+      CallGraphPrepass
+        .forFunction(callNode.getBlock.getFunction)
+        .calleesOf(callNode)
+        .ifPresent(bound => { found.addAll(bound); () })
+      new CallSiteResolution(java.util.Set.copyOf(found), false)
+    }
+  }
+
+  /** Whole-program mode: start resolving the callees of all `callSites` at
+    * once, adding an edge to the call graph for every callee as it is found.
+    * Queries are issued in scheduler tasks, so that they are spread over all
+    * threads, and overlapping subqueries of different call sites are solved
+    * only once by the shared solvers of this manager. Call `solve()` to wait
+    * for the complete call graph.
+    */
+  def resolveAllCallSites(callSites: java.util.Collection[CallNode]): Unit =
+    callSites.forEach(callSite =>
+      scheduler.execute(() =>
+        AbstractFlowFunctions
+          .resolveFunctionCall(callSite, this)
+          .onAdd(
+            TaggedHandler(
+              (callSite, callGraph),
+              (f: Function) => { callGraph.addEdge(callSite, f); () }
+            )
+          )
+      )
+    )
+
   def getPointsToGraph: PointsToGraph = pointsToGraph
 
   def getCallGraph: CallGraph = callGraph
 
   def addPointsToFact(location: dk.brics.tajs.flowgraph.jsnodes.Node, value: Value, alloc: Allocation): Unit = {
     this.getPointsToGraph.addPointsToFact(location, value, alloc)
-    (location, alloc, value) match {
-      case (callNode: CallNode, functionAllocation: FunctionAllocation, reg: Register)
-        if callNode.getFunctionRegister != -1 &&
-          reg.getId == callNode.getFunctionRegister &&
-          reg.getContainingFunction == callNode.getBlock.getFunction =>
-        this.getCallGraph.addEdge(callNode, functionAllocation.getAllocationStatement.getFunction)
-      case (callNode: CallNode, functionAllocation: FunctionAllocation, methodCall: MethodCall)
-        if callNode.equals(methodCall.getCallNode) =>
-        this.getCallGraph.addEdge(callNode, functionAllocation.getAllocationStatement.getFunction)
+    alloc match {
+      case functionAllocation: FunctionAllocation if PointsToGraph.isInvocation(location, value) =>
+        this.getCallGraph.addEdge(location.asInstanceOf[CallNode], functionAllocation.getAllocationStatement.getFunction)
       case _ =>
     }
   }
 
+  /** Estimate the heap retained by the solvers, result graphs and scheduler
+    * queue. Does not block, so it can be sampled while the analysis runs.
+    */
+  def heapFootprint(): HeapFootprint = {
+    val solvers: Seq[MerlinSolver] =
+      backwardSolvers.synchronized { backwardSolvers.values.toSeq } ++
+        forwardSolvers.synchronized { forwardSolvers.values.toSeq }
+    val solverBytes = new java.util.HashMap[String, java.lang.Long]()
+    solvers.foreach(solver =>
+      solverBytes.put(solver.getQueryString, solver.estimatedFootprint())
+    )
+    new HeapFootprint(
+      solverBytes,
+      pointsToGraph.estimatedFootprint(),
+      callGraph.estimatedFootprint(),
+      HeapFootprint.estimateSchedulerQueue(scheduler.queuedTaskCount)
+    )
+  }
+
+  /** The number of states reached by all solvers so far */
+  def reachedStateCount(): Int = {
+    val solvers: Seq[MerlinSolver] =
+      backwardSolvers.synchronized { backwardSolvers.values.toSeq } ++
+        forwardSolvers.synchronized { forwardSolvers.values.toSeq }
+    solvers.map(_.stateCount()).sum
+  }
+
   /** Run all solvers to completion */
   def solve(): Unit = {
     scheduler.waitUntilDone()
@@ -92,16 +419,65 @@ class QueryManager() {
     // After solving, we still need to handle unresolved function calls, which may each
     // trigger additional flows in other solvers leading to more unresolved calls. We handle
     // this by computing the fixed point of repeatedly adding data flows for unresolved
-    // calls until no new data flows are found
+    // calls until no new data flows are found. Suspended solvers are skipped:
+    // resolving their calls would request, and thereby resume, their subqueries
     while (stillIterating) {
       stillIterating = false
-      for (solver <- backwardSolvers.values ++ forwardSolvers.values) {
-          if(solver.addDataFlowsForUnresolvedFunctionCalls()) {
+      // Iterate over snapshots, since handling unresolved calls may start new
+      // queries, also from tasks running on other threads
+      val solvers: Seq[MerlinSolver] =
+        backwardSolvers.synchronized { backwardSolvers.values.toSeq } ++
+          forwardSolvers.synchronized { forwardSolvers.values.toSeq }
+      for (solver <- solvers) {
+          if(!solver.isSuspended && solver.addDataFlowsForUnresolvedFunctionCalls()) {
             stillIterating = true
           }
       }
     }
   }
+
+  /** Write the results computed so far to `file`, together with the options
+    * they were computed with. Should be called after `solve()`. Waits for the
+    * scheduler, so that the solvers of call sites whose resolution timed out
+    * finish as well. Only queries whose solvers then ran to completion are
+    * recorded: solvers suspended at the limit of a bounded query, or together
+    * with one, are left out.
+    */
+  @throws[IOException]
+  def writeCheckpoint(flowGraph: FlowGraph, file: Path): Unit = {
+    scheduler.waitUntilDone()
+    val backwardQueries = backwardSolvers.synchronized {
+      backwardSolvers.filter { case (_, solver) => !solver.isSuspended }.keySet.toSet
+    }
+    val forwardQueries = forwardSolvers.synchronized {
+      forwardSolvers.filter { case (_, solver) => !solver.isSuspended }.keySet.toSet
+    }
+    Checkpoint
+      .capture(options, pointsToGraph, callGraph, backwardQueries.asJava, forwardQueries.asJava)
+      .write(flowGraph, file)
+  }
+
+  /** Restore the results of a previous run on the same flowgraph with the
+    * same options from `file`. Must be called before any query is issued.
+    * The recorded queries are started again on top of the restored points-to
+    * graph and call graph, so that their solvers have the reached states that
+    * `solve()` and meet-in-the-middle call resolution rely on; call `solve()`
+    * to wait for them.
+    *
+    * @return
+    *   false if there was no usable checkpoint, in which case the analysis
+    *   starts from scratch
+    */
+  @throws[IOException]
+  def restoreCheckpoint(flowGraph: FlowGraph, file: Path): Boolean = {
+    val checkpoint = Checkpoint.read(flowGraph, options, file)
+    checkpoint.ifPresent(c => {
+      c.restoreInto(pointsToGraph, callGraph)
+      c.getCompletedBackwardQueries.forEach(query => { startBackwardQueryIfAbsent(query); () })
+      c.getCompletedForwardQueries.forEach(query => { startForwardQueryIfAbsent(query); () })
+    })
+    checkpoint.isPresent
+  }
 }
 
 object QueryManager {
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.solver;
+
+/**
+ * Configuration shared by all solvers of a {@link QueryManager}.
+ *
+ * @param sparse propagate register and variable values directly to the next statements that use or define them,
+ *               skipping statements in between (see {@link com.amazon.pvar.tspoc.merlin.ir.DefUseSites}). Points-to
+ *               facts are then only recorded at those statements, not at every statement the value flows through.
+ * @param indexedFieldReads resolve backward property reads through the index of property writes in the
+ *                          {@link PointsToGraph}: a value read from a property continues directly at every write of
+ *                          that property into an allocation of the read's base (see {@link FieldStoreIndex}),
+ *                          instead of being matched against writes along the flow paths of the allocation. This is
+ *                          flow- and context-insensitive for the heap: the read also sees writes that happen after it,
+ *                          and the written values are resolved in every calling context of the write. Writes of
+ *                          dynamic properties count as writes of any property; reads of dynamic properties are still
+ *                          not resolved, as without the index.
+ * @param threads the parallelism of the scheduler. Tasks of different solvers, such as the subqueries resolving the
+ *                callees of a call site, then run concurrently; the transfers of a single solver, including its
+ *                propagation into each callee, are still serialized by its monitor.
+ * @param bidirectionalCalls resolve call sites by meeting the backward queries from the called value with forward
+ *                           queries from the candidate functions (see {@link BidirectionalCallResolver}), instead of
+ *                           with backward queries only. Call sites without a bound on their candidates are still
+ *                           resolved backwards only.
+ * @param callGraphPrepass bound the callees of every call site by the flow-insensitive {@link CallGraphPrepass}:
+ *                         functions outside the bound are dropped from the resolved callees, call sites with an empty
+ *                         bound start no queries, and the bidirectional resolver only starts forward queries from
+ *                         functions inside the bound. Values written to dynamic properties are included in the bound
+ *                         of every property read.
+ */
+public record SolverOptions(boolean sparse, boolean indexedFieldReads, int threads, boolean bidirectionalCalls,
+                            boolean callGraphPrepass) {
+
+    public SolverOptions {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Scheduler needs at least one thread, got " + threads);
+        }
+    }
+
+    public static SolverOptions defaults() {
+        return new SolverOptions(false, false, 1, false, false);
+    }
+
+    public SolverOptions withSparse(boolean sparse) {
+        return new SolverOptions(sparse, indexedFieldReads, threads, bidirectionalCalls, callGraphPrepass);
+    }
+
+    public SolverOptions withIndexedFieldReads(boolean indexedFieldReads) {
+        return new SolverOptions(sparse, indexedFieldReads, threads, bidirectionalCalls, callGraphPrepass);
+    }
+
+    public SolverOptions withThreads(int threads) {
+        return new SolverOptions(sparse, indexedFieldReads, threads, bidirectionalCalls, callGraphPrepass);
+    }
+
+    public SolverOptions withBidirectionalCalls(boolean bidirectionalCalls) {
+        return new SolverOptions(sparse, indexedFieldReads, threads, bidirectionalCalls, callGraphPrepass);
+    }
+
+    public SolverOptions withCallGraphPrepass(boolean callGraphPrepass) {
+        return new SolverOptions(sparse, indexedFieldReads, threads, bidirectionalCalls, callGraphPrepass);
+    }
+}
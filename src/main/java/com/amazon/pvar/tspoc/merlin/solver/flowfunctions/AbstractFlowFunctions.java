@@ -44,6 +44,10 @@ import java.util.stream.Collectors;
  * <p>
  * This class's sole public method can be invoked to apply a flow function at a particular node and obtain the next
  * SPDS states after the flow function is applied.
+ * <p>
+ * Each solver owns a single flow function instance that it reuses for every transfer. The SPDS node being processed
+ * and the buffer receiving the next states are bound for the duration of one transfer only, so code that runs later
+ * (e.g. subquery handlers) must capture them in local variables rather than reading them back from the instance.
  */
 public abstract class AbstractFlowFunctions implements NodeVisitor {
 
@@ -52,23 +56,38 @@ public abstract class AbstractFlowFunctions implements NodeVisitor {
      */
 
     protected final QueryManager queryManager;
-    protected final FlowFunctionContext context;
-    protected final Set<State> nextStates;
+    private final boolean sparse;
     // TODO: This is only ever null in flow function unit tests. This could be avoided by using
     // a mock object in the flow function tests.
     @Nullable
     protected final MerlinSolver containingSolver;
 
-    // Sanity check to ensure each flow function instance is used for exactly one transfer
-    // function application, ensuring that no mutable state is shared across multiple invocations
-    protected boolean transferApplied = false;
+    // State of the transfer currently being applied; null between transfers
+    private sync.pds.solver.nodes.Node<NodeState, Value> currentPDSNode;
+    private Collection<State> nextStates;
+    // Cleared when the current transfer starts subqueries or registers handlers, i.e. when its effect depends on the
+    // query being solved rather than only on the SPDS node
+    private boolean queryIndependent;
 
 
-    public AbstractFlowFunctions(MerlinSolver containingSolver, QueryManager queryManager, FlowFunctionContext context) {
+    public AbstractFlowFunctions(MerlinSolver containingSolver, QueryManager queryManager) {
         this.containingSolver = containingSolver;
         this.queryManager = queryManager;
-        this.context = context;
-        this.nextStates = new HashSet<>();
+        this.sparse = queryManager.options().sparse();
+    }
+
+    /**
+     * @return the SPDS node the current transfer is applied to
+     */
+    protected final sync.pds.solver.nodes.Node<NodeState, Value> currentPDSNode() {
+        return currentPDSNode;
+    }
+
+    /**
+     * @return the value tracked by the current transfer
+     */
+    protected final Value queryValue() {
+        return currentPDSNode.fact();
     }
 
     /**
@@ -119,6 +138,10 @@ public abstract class AbstractFlowFunctions implements NodeVisitor {
      * @return
      */
     protected Node getNodeByIndex(int index, Function function) {
+        final var nodeIndex = NodeIndex.forFunction(function);
+        if (nodeIndex.isPresent()) {
+            return nodeIndex.get().getNode(index, function);
+        }
         return function.getBlocks().stream()
                 .flatMap(basicBlock -> basicBlock.getNodes().stream())
                 .filter(n -> n instanceof Node)
@@ -129,39 +152,74 @@ public abstract class AbstractFlowFunctions implements NodeVisitor {
     }
 
     protected static NodeState makeNodeState(Node n) {
-        return new NodeState(n);
+        return NodeState.of(n);
     }
 
     /**
-     * Apply flow function at the provided node and obtain the next states. Next states are stored in the nextStates
-     * member of this class.
+     * Apply flow function at the provided SPDS node and add the next states to the given buffer.
      * <p>
-     * Classes that extend this abstract class should implement "visit" methods that update (but do not re-assign)
-     * the nextStates attribute.
+     * Classes that extend this abstract class should implement "visit" methods that add next states through
+     * addStandardNormalFlow and addSingleState.
+     * <p>
+     * Transfers may be nested, as propagating a state from within a visit method can trigger further transfers of the
+     * same solver, so the previous transfer state is restored on return.
+     *
+     * @return true if the transfer only added next states, which then depend on nothing but the SPDS node, and false
+     * if it also started subqueries or registered handlers on behalf of the current query
      */
-    public final Set<State> computeNextStates() {
-        // If this assertion fails, we are inadvertently reusing the same flow function
-        // instance.
-        assert !transferApplied;
-        transferApplied = true;
-        final var node = context.currentPDSNode().stmt().getNode();
-        final var val = context.queryValue();
-        final var directionLabel = (this instanceof BackwardFlowFunctions) ? "bwd" : "fwd";
-        final var lineNum = (node.getSourceLocation() != null)
-                ? "L" + node.getSourceLocation().getLineNumber()
-                : "L?";
-        DebugUtils.debug(directionLabel + "+" + val + ": traversing node: " + node + "[" + node.getIndex() +
-                "@" + node.getBlock().getFunction() + "]   " + lineNum);
+    public final boolean computeNextStates(sync.pds.solver.nodes.Node<NodeState, Value> pdsNode,
+                                           Collection<State> nextStates) {
+        final var outerPDSNode = this.currentPDSNode;
+        final var outerNextStates = this.nextStates;
+        final var outerQueryIndependent = this.queryIndependent;
+        this.currentPDSNode = pdsNode;
+        this.nextStates = nextStates;
+        this.queryIndependent = true;
+        try {
+            applyTransfer();
+            return queryIndependent;
+        } finally {
+            this.currentPDSNode = outerPDSNode;
+            this.nextStates = outerNextStates;
+            this.queryIndependent = outerQueryIndependent;
+        }
+    }
+
+    private void applyTransfer() {
+        final var node = currentPDSNode.stmt().getNode();
+        final var val = queryValue();
+        if (DebugUtils.isDebugEnabled()) {
+            final var directionLabel = (this instanceof BackwardFlowFunctions) ? "bwd" : "fwd";
+            final var lineNum = (node.getSourceLocation() != null)
+                    ? "L" + node.getSourceLocation().getLineNumber()
+                    : "L?";
+            DebugUtils.debug(directionLabel + "+" + val + ": traversing node: " + node + "[" + node.getIndex() +
+                    "@" + node.getBlock().getFunction() + "]   " + lineNum);
+        }
         node.visitBy(this);
-        return nextStates;
     }
 
     protected void addStandardNormalFlow(Node next) {
-        addNextState(makeSPDSNode(next, context.queryValue()));
+        addNormalFlowState(next, queryValue());
     }
 
     protected void addSingleState(Node n, Value v) {
-        addNextState(makeSPDSNode(n, v));
+        addNormalFlowState(n, v);
+    }
+
+    /**
+     * Add a normal flow of v to n. In sparse mode, registers and variables skip ahead to the next statements that
+     * are relevant for them.
+     */
+    private void addNormalFlowState(Node n, Value v) {
+        if (sparse && DefUseSites.isSparseValue(v)) {
+            final var forward = this instanceof ForwardFlowFunctions;
+            for (final var target : DefUseSites.of(n.getBlock().getFunction()).nextRelevantNodes(n, v, forward)) {
+                addNextState(makeSPDSNode(target, v));
+            }
+        } else {
+            addNextState(makeSPDSNode(n, v));
+        }
     }
 
     protected static State callPushState(Node n, Value v, Node location) {
@@ -199,23 +257,13 @@ public abstract class AbstractFlowFunctions implements NodeVisitor {
      * @return
      */
     protected static Function getDeclaringScope(String varName, Function usageScope) {
-        Function currentScope = usageScope;
         if (varName.equals("process")) {
             // Accessing arguments, process is always declared by the runtime in the outermost (main) scope
-            while (!currentScope.isMain()) {
-                currentScope = currentScope.getOuterFunction();
-            }
-            return currentScope;
+            return ScopeResolution.outermostScope(usageScope);
         }
-        while (Objects.nonNull(currentScope)) {
-            if (
-                    currentScope.getVariableNames().contains(varName) ||
-                            currentScope.getParameterNames().contains(varName) ||
-                            scopeDeclaresFunctionWithName(currentScope, varName)
-            ) {
-                return currentScope;
-            }
-            currentScope = currentScope.getOuterFunction();
+        final var declaringScope = ScopeResolution.declaringScope(varName, usageScope);
+        if (Objects.nonNull(declaringScope)) {
+            return declaringScope;
         }
         final var errMsg = "Cannot get declaring scope of variable '" + varName + "' in function '" +
                 usageScope + "': '" + varName + "' should not be visible in this scope.";
@@ -224,24 +272,6 @@ public abstract class AbstractFlowFunctions implements NodeVisitor {
         return usageScope;
     }
 
-    /**
-     * @param currentScope
-     * @param functionName
-     * @return true if currentScope declares a function with name functionName, false otherwise
-     */
-    private static boolean scopeDeclaresFunctionWithName(Function currentScope, String functionName) {
-        return currentScope.getBlocks().stream()
-                .flatMap(block -> block.getNodes().stream())
-                .anyMatch(node -> {
-                    try {
-                        return node instanceof DeclareFunctionNode &&
-                                ((DeclareFunctionNode) node).getFunction().getName().equals(functionName);
-                    } catch (NullPointerException e) {
-                        return false;
-                    }
-                });
-    }
-
     /**
      * Propagate dataflow for all known values across Node n
      *
@@ -260,13 +290,14 @@ public abstract class AbstractFlowFunctions implements NodeVisitor {
     }
 
     public Pair<LiveCollection<CallNode>, Query> findInvocationsOfFunctionWithQuery(Function function) {
+        queryIndependent = false;
         DeclareFunctionNode functionDeclaration = function.getNode();
         FunctionAllocation alloc = new FunctionAllocation(functionDeclaration);
         sync.pds.solver.nodes.Node<NodeState, Value> initialQuery = new sync.pds.solver.nodes.Node<>(
-                new NodeState(functionDeclaration),
+                NodeState.of(functionDeclaration),
                 alloc
         );
-        final var solver = queryManager.getOrStartForwardQuery(initialQuery);
+        final var solver = queryManager.getOrStartForwardQuery(initialQuery, containingSolver);
         final var query = new Query(initialQuery, true);
         var result = solver.getPointsToGraph().getKnownFunctionInvocations(alloc);
         return Pair.make(result, query);
@@ -279,35 +310,78 @@ public abstract class AbstractFlowFunctions implements NodeVisitor {
      * @return
      */
     public static LiveCollection<Function> resolveFunctionCall(CallNode n, QueryManager queryManager) {
+        return resolveFunctionCall(n, queryManager, null);
+    }
+
+    /**
+     * Find all functions that could be call targets of the provided CallNode, for the analysis of requester
+     *
+     * @param n
+     * @param requester the solver relying on the result, or null for a client outside the analysis
+     * @return
+     */
+    public static LiveCollection<Function> resolveFunctionCall(CallNode n, QueryManager queryManager,
+                                                               @Nullable MerlinSolver requester) {
+        if (!queryManager.options().callGraphPrepass()) {
+            return resolveCallees(n, queryManager, requester);
+        }
+        final var prepass = CallGraphPrepass.forFunction(n.getBlock().getFunction());
+        if (prepass.calleesOf(n).map(Set::isEmpty).orElse(false)) {
+            return new LiveSet<>(queryManager.scheduler());
+        }
+        return resolveCallees(n, queryManager, requester).filter(function -> prepass.mayCall(n, function));
+    }
+
+    private static LiveCollection<Function> resolveCallees(CallNode n, QueryManager queryManager,
+                                                           @Nullable MerlinSolver requester) {
+        if (queryManager.options().bidirectionalCalls() && n.getTajsFunctionName() == null) {
+            final var callees = queryManager.callResolver().resolve(n, requester);
+            if (callees.isPresent()) {
+                return callees.get();
+            }
+        }
+        return resolveFunctionCallBackward(n, queryManager, requester);
+    }
+
+    /**
+     * Find the call targets of the provided CallNode with backward queries from the called value only
+     *
+     * @param n
+     * @param requester the solver relying on the result, or null for a client outside the analysis
+     * @return
+     */
+    public static LiveCollection<Function> resolveFunctionCallBackward(CallNode n, QueryManager queryManager,
+                                                                       @Nullable MerlinSolver requester) {
+        LiveCollection<Allocation> pointsToUnion = new LiveSet<>(queryManager.scheduler());
+        for (final var query : callTargetQueries(n)) {
+            final var solver = queryManager.getOrStartBackwardQuery(query, requester);
+            pointsToUnion = solver.getPointsToGraph().getPointsToSet(query.stmt().getNode(), query.fact())
+                    .union(pointsToUnion);
+        }
+        return AbstractFlowFunctions.allocationsToFunctions(pointsToUnion);
+    }
+
+    /**
+     * @return the backward queries whose points-to sets determine the functions invoked by the provided CallNode:
+     * the function register before the call, or the method call itself. Empty for calls that are not resolved.
+     */
+    public static List<sync.pds.solver.nodes.Node<NodeState, Value>> callTargetQueries(CallNode n) {
         if (n.getTajsFunctionName() != null) {
-            return new LiveSet<>(queryManager.scheduler()); // don't try to resolve TAJS functions
+            return List.of(); // don't try to resolve TAJS functions
         }
-        LiveCollection<Allocation> predecessorUnion = new LiveSet<>(queryManager.scheduler());
         if (n.getFunctionRegister() != -1) {
-            final var funcReg = new Register(n.getFunctionRegister(), n.getBlock().getFunction());
-            for (var predecessor : FlowgraphUtils.predecessorsOf(n).toList()) {
-                final sync.pds.solver.nodes.Node<NodeState, Value> initialQuery = new sync.pds.solver.nodes.Node<>(
-                        new NodeState(predecessor),
-                        funcReg
-                );
-                final var solver = queryManager.getOrStartBackwardQuery(initialQuery);
-                predecessorUnion = solver.getPointsToGraph().getPointsToSet(predecessor, funcReg)
-                        .union(predecessorUnion);
+            final var funcReg = Register.of(n.getFunctionRegister(), n.getBlock().getFunction());
+            final List<sync.pds.solver.nodes.Node<NodeState, Value>> queries = new ArrayList<>();
+            for (var predecessor : FlowgraphUtils.predecessorsOf(n)) {
+                queries.add(new sync.pds.solver.nodes.Node<>(NodeState.of(predecessor), funcReg));
             }
-            return AbstractFlowFunctions.allocationsToFunctions(predecessorUnion);
+            return queries;
         } else if (n.getPropertyString() != null) {
             // Method call
-            final var methodCall = new MethodCall(n);
-            final sync.pds.solver.nodes.Node<NodeState, Value> query = new sync.pds.solver.nodes.Node<>(
-                    new NodeState(n),
-                    methodCall
-            );
-            final var solver = queryManager.getOrStartBackwardQuery(query);
-            final var pointsToSet = solver.getPointsToGraph().getPointsToSet(n, methodCall);
-            return AbstractFlowFunctions.allocationsToFunctions(pointsToSet);
+            return List.of(new sync.pds.solver.nodes.Node<>(NodeState.of(n), new MethodCall(n)));
         } else {
             DebugUtils.warn("Unhandled: method calls to dynamic field of object");
-            return new LiveSet<>(queryManager.scheduler());
+            return List.of();
         }
     }
 
@@ -315,30 +389,27 @@ public abstract class AbstractFlowFunctions implements NodeVisitor {
         // should only be called with method calls
         assert FlowgraphUtils.isMethodCallWithStaticProperty(callNode);
         // TODO: figure out if this ad-hoc register allocation is guaranteed to be unique
-        return new Register(-100 + -1 * callNode.getIndex(), callNode.getBlock().getFunction());
+        return Register.of(-100 + -1 * callNode.getIndex(), callNode.getBlock().getFunction());
     }
 
     protected Collection<Node> getPredecessors(Node n) {
-        return FlowgraphUtils.predecessorsOf(n).collect(Collectors.toSet());
+        return FlowgraphUtils.predecessorsOf(n);
     }
 
     /**
-     * Executes the given `handler` on each result discovered by `subquery`. The handler is executed
-     * with `containingSolver`s flow function instance set to a new flow function instance with the state at
-     * the point where `continueWithSubqueryResult` was invoked.
-     * <p/>
-     * The handler code should avoid modifying any mutable state on the invoking flow function instance.
-     * If the state of the new flow function instance needs to be modified directly (rather than through
-     * calls to the `containingSolver`, use the second overloaded variant instead).
+     * Executes the given `handler` on each result discovered by `subquery`. The handler typically runs after the
+     * current transfer has returned, so it must only use state captured in local variables at the point where
+     * `continueWithSubqueryResult` was invoked, and propagate results through `containingSolver`.
      * <p/>
-     * To ensure predictable results, the handler code must not modify the mutable state of the invoking
-     * instance.
+     * The second overloaded variant also passes the solver's flow function instance to the handler, which is not
+     * bound to any transfer while the handler runs.
      */
     public final <A> void continueWithSubqueryResult(LiveCollection<A> subquery, QueryID queryID, Consumer<A> handler) {
         continueWithSubqueryResult(subquery, queryID, (result, newFlowFunctions) -> handler.accept(result));
     }
 
     public final <A> void continueWithSubqueryResult(LiveCollection<A> subquery, QueryID queryID, BiConsumer<A, AbstractFlowFunctions> handler) {
+        queryIndependent = false;
         if (containingSolver != null) {
             subquery.onAdd(TaggedHandler.create(queryID, result -> {
                 handler.accept(result, this);
@@ -347,18 +418,30 @@ public abstract class AbstractFlowFunctions implements NodeVisitor {
     }
 
     public final void withAllocationSitesOf(Node location, Value value, Consumer<Allocation> handler, Value originatingQueryValue) {
+        queryIndependent = false;
         if (containingSolver != null) {
-            final var findBaseAllocsBackwards = new sync.pds.solver.nodes.Node<>(new NodeState(location), value);
-            queryManager.getOrStartBackwardQuery(findBaseAllocsBackwards);
-            final var basePointsToSet = queryManager.getPointsToGraph().getPointsToSet(location, value);
+            final var findBaseAllocsBackwards = new sync.pds.solver.nodes.Node<>(NodeState.of(location), value);
             final QueryID bwdsID = new AliasQueryID(
                     new Query(containingSolver.initialQuery, containingSolver instanceof ForwardMerlinSolver),
                     new Query(findBaseAllocsBackwards, false),
                     originatingQueryValue);
-            basePointsToSet.onAdd(TaggedHandler.create(bwdsID, handler));
+            queryManager.aliasCache().subscribe(location, value, bwdsID, containingSolver, handler);
+        }
+    }
+
+    /**
+     * Add data flows for a call at pdsNode that could not be resolved to any callee
+     */
+    public final void handleUnresolvedCall(sync.pds.solver.nodes.Node<NodeState, Value> pdsNode) {
+        final var outerPDSNode = this.currentPDSNode;
+        this.currentPDSNode = pdsNode;
+        try {
+            handleUnresolvedCall();
+        } finally {
+            this.currentPDSNode = outerPDSNode;
         }
     }
 
-    // Precondition: called only on flow function instance at a CallNode
-    public abstract void handleUnresolvedCall();
+    // Precondition: called only while bound to a CallNode
+    protected abstract void handleUnresolvedCall();
 }
@@ -18,7 +18,10 @@ package com.amazon.pvar.tspoc.merlin.solver.flowfunctions;
 import com.amazon.pvar.tspoc.merlin.DebugUtils;
 import com.amazon.pvar.tspoc.merlin.ir.*;
 import com.amazon.pvar.tspoc.merlin.livecollections.LiveCollection;
+import com.amazon.pvar.tspoc.merlin.solver.IndexedFieldReadID;
+import com.amazon.pvar.tspoc.merlin.solver.IndexedFieldWriteID;
 import com.amazon.pvar.tspoc.merlin.solver.MerlinSolver;
+import com.amazon.pvar.tspoc.merlin.solver.Query;
 import com.amazon.pvar.tspoc.merlin.solver.QueryManager;
 import dk.brics.tajs.flowgraph.Function;
 import dk.brics.tajs.flowgraph.jsnodes.*;
@@ -32,8 +35,8 @@ import java.util.*;
 
 public class BackwardFlowFunctions extends AbstractFlowFunctions {
 
-    public BackwardFlowFunctions(MerlinSolver containingSolver, QueryManager queryManager, FlowFunctionContext context) {
-        super(containingSolver, queryManager, context);
+    public BackwardFlowFunctions(MerlinSolver containingSolver, QueryManager queryManager) {
+        super(containingSolver, queryManager);
     }
 
     @Override
@@ -48,15 +51,15 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
      */
     @Override
     public void visit(BinaryOperatorNode n) {
-        final var resultReg = new Register(n.getResultRegister(), n.getBlock().getFunction());
-        if (!context.queryValue().equals(resultReg)) {
+        final var resultReg = Register.of(n.getResultRegister(), n.getBlock().getFunction());
+        if (!queryValue().equals(resultReg)) {
             addNormalFlowToPreds(n);
         } else {
             // Overapproximate by adding flows to both arguments, since
             // we don't model the actual operator semantics and tracking value flows through
             // operators is needed for taint tracking examples in our case study.
-            final var arg1 = new Register(n.getArg1Register(), n.getBlock().getFunction());
-            final var arg2 = new Register(n.getArg2Register(), n.getBlock().getFunction());
+            final var arg1 = Register.of(n.getArg1Register(), n.getBlock().getFunction());
+            final var arg2 = Register.of(n.getArg2Register(), n.getBlock().getFunction());
             genSingleNormalFlow(n, arg1);
             genSingleNormalFlow(n, arg2);
         }
@@ -81,22 +84,22 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
          * albeit confusing, to handle it here, as MethodCall facts are only introduced
          * in resolveFunctionCall.
          */
-        if (context.queryValue() instanceof MethodCall methodCall && containingSolver != null) {
+        if (queryValue() instanceof MethodCall methodCall && containingSolver != null) {
             final var syntheticReadResultRegister = AbstractFlowFunctions.syntheticRegisterForMethodCall(n);
             // Add a flow from the synthetic result register into the method call at n
             final sync.pds.solver.nodes.Node<NodeState, Value> syntheticRegisterState = new sync.pds.solver.nodes.Node<>(
                     makeNodeState(n), syntheticReadResultRegister);
-            containingSolver.propagate(context.currentPDSNode(), syntheticRegisterState);
-            final var baseRegister = new Register(
+            containingSolver.propagate(currentPDSNode(), syntheticRegisterState);
+            final var baseRegister = Register.of(
                     methodCall.getCallNode().getBaseRegister(),
                     methodCall.getCallNode().getBlock().getFunction());
-            handleFlowToFieldRead(n, baseRegister, new Property(methodCall.getCallNode().getPropertyString()),
-                    syntheticRegisterState, context);
+            handleFlowToFieldRead(n, baseRegister, Property.of(methodCall.getCallNode().getPropertyString()),
+                    syntheticRegisterState);
             return;
         }
         // propagate across the call site
-        final var resultReg = new Register(n.getResultRegister(), n.getBlock().getFunction());
-        if (!resultReg.equals(context.queryValue())) {
+        final var resultReg = Register.of(n.getResultRegister(), n.getBlock().getFunction());
+        if (!resultReg.equals(queryValue())) {
             addNormalFlowToPreds(n);
         }
 
@@ -108,7 +111,7 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
         // If the call is a constructor call, kill the flow if the query value matches
         if (n.isConstructorCall() &&
                 n.getResultRegister() != 1 &&
-                context.queryValue() instanceof Register reg &&
+                queryValue() instanceof Register reg &&
                 reg.getId() == n.getResultRegister() &&
                 reg.getContainingFunction().equals(n.getBlock().getFunction())) {
             return;
@@ -116,20 +119,20 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
 
         // propagate the assigned value to the return value of possibly invoked
         // functions, if necessary
-        if (context.queryValue().equals(resultReg) ||
-                context.queryValue() instanceof ObjectAllocation) {
-            final var targetFunctions = resolveFunctionCall(n, queryManager);
-            final var currentSPDSNode = context.currentPDSNode();
-            final var queryValue = context.queryValue();
+        if (queryValue().equals(resultReg) ||
+                queryValue() instanceof ObjectAllocation) {
+            final var targetFunctions = resolveFunctionCall(n, queryManager, containingSolver);
+            final var currentSPDSNode = currentPDSNode();
+            final var queryValue = queryValue();
             if (containingSolver != null) {
                 final var queryID = containingSolver.getQueryID(currentSPDSNode, false, false);
                 continueWithSubqueryResult(targetFunctions, queryID, (targetFunction) -> {
-                    DebugUtils.debug("Discovered new callee for " + n + ": " + targetFunction);
+                    DebugUtils.debug(() -> "Discovered new callee for " + n + ": " + targetFunction);
                     final var returnNode = ((Node) targetFunction.getOrdinaryExit().getLastNode());
                     final var valueToPropagateTo = (queryValue instanceof ObjectAllocation) ? queryValue
-                            : new Register(1, targetFunction);
+                            : Register.of(1, targetFunction);
                     final var nextState = callPushState(returnNode, valueToPropagateTo, n);
-                    DebugUtils.debug("Propagating to callee: " + nextState + " for node: " + currentSPDSNode);
+                    DebugUtils.debug(() -> "Propagating to callee: " + nextState + " for node: " + currentSPDSNode);
                     containingSolver.propagate(currentSPDSNode, nextState);
                     DebugUtils.debug("Done propagating to callee");
                 });
@@ -158,13 +161,13 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
      */
     @Override
     public void visit(ConstantNode n) {
-        if (n.getResultRegister() == 1 && (context.queryValue() instanceof Variable ||
-                context.queryValue() instanceof ObjectAllocation)) {
-            handleflowToFunctionEntry(n, context.queryValue(), context);
+        if (n.getResultRegister() == 1 && (queryValue() instanceof Variable ||
+                queryValue() instanceof ObjectAllocation)) {
+            handleflowToFunctionEntry(n, queryValue());
         }
 
-        final var resultReg = new Register(n.getResultRegister(), n.getBlock().getFunction());
-        if (!context.queryValue().equals(resultReg)) {
+        final var resultReg = Register.of(n.getResultRegister(), n.getBlock().getFunction());
+        if (!queryValue().equals(resultReg)) {
             addNormalFlowToPreds(n);
         }
     }
@@ -214,15 +217,15 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
         // If a function declaration does not assign to a register, the result register
         // is -1
         if (n.getResultRegister() == -1) {
-            Variable newVar = new Variable(
+            Variable newVar = Variable.of(
                     n.getFunction().getName(),
                     getDeclaringScope(n.getFunction().getName(), n.getBlock().getFunction()));
-            if (!context.queryValue().equals(newVar)) {
+            if (!queryValue().equals(newVar)) {
                 addNormalFlowToPreds(n);
             }
         } else {
-            final var resultReg = new Register(n.getResultRegister(), n.getBlock().getFunction());
-            if (!context.queryValue().equals(resultReg)) {
+            final var resultReg = Register.of(n.getResultRegister(), n.getBlock().getFunction());
+            if (!queryValue().equals(resultReg)) {
                 addNormalFlowToPreds(n);
             }
         }
@@ -268,8 +271,8 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
      */
     @Override
     public void visit(NewObjectNode n) {
-        final var resultReg = new Register(n.getResultRegister(), n.getBlock().getFunction());
-        if (!context.queryValue().equals(resultReg)) {
+        final var resultReg = Register.of(n.getResultRegister(), n.getBlock().getFunction());
+        if (!queryValue().equals(resultReg)) {
             addNormalFlowToPreds(n);
         }
     }
@@ -313,16 +316,16 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
      */
     @Override
     public void visit(ReadPropertyNode n) {
-        final var result = new Register(n.getResultRegister(), n.getBlock().getFunction());
-        final var baseRegister = new Register(n.getBaseRegister(), n.getBlock().getFunction());
+        final var result = Register.of(n.getResultRegister(), n.getBlock().getFunction());
+        final var baseRegister = Register.of(n.getBaseRegister(), n.getBlock().getFunction());
         if (n.isPropertyFixed()) {
             // Property is a fixed String
-            Property property = new Property(n.getPropertyString());
-            if (!context.queryValue().equals(result)) {
+            Property property = Property.of(n.getPropertyString());
+            if (!queryValue().equals(result)) {
                 addNormalFlowToPreds(n);
             }
-            if (context.queryValue().equals(result)) {
-                handleFlowToFieldRead(n, baseRegister, property, context.currentPDSNode(), context);
+            if (queryValue().equals(result)) {
+                handleFlowToFieldRead(n, baseRegister, property, currentPDSNode());
             }
         } else {
             // TODO: dispatch a backward query on the register used for the property read
@@ -331,7 +334,11 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
     }
 
     private void handleFlowToFieldRead(Node location, Register baseRegister, Property property,
-            sync.pds.solver.nodes.Node<NodeState, Value> sourceState, FlowFunctionContext context) {
+            sync.pds.solver.nodes.Node<NodeState, Value> sourceState) {
+        if (queryManager.options().indexedFieldReads()) {
+            handleIndexedFieldRead(location, baseRegister, property, sourceState);
+            return;
+        }
         withAllocationSitesOf(location, baseRegister, alloc -> {
             assert containingSolver != null;
             getPredecessors(location)
@@ -343,7 +350,47 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
                                 SyncPDSSolver.PDSSystem.FIELDS);
                         containingSolver.propagate(sourceState, pushNode);
                     });
-        }, context.queryValue());
+        }, queryValue());
+    }
+
+    /**
+     * Continue the value read at location with the values written by the writes of property into the allocations of
+     * the base, as found in the points-to graph's write index, instead of pushing the property onto the field stack.
+     * The read sees every write regardless of the order of the read and the write or of the calling context of the
+     * write. The written values are resolved by separate backward queries at the writes, so that their flows start
+     * from the write's own calling context instead of the read's; the read then continues at the allocation of each
+     * written value, where its flow ends. Field stacks stay empty, since indexed reads never push properties.
+     */
+    private void handleIndexedFieldRead(Node location, Register baseRegister, Property property,
+            sync.pds.solver.nodes.Node<NodeState, Value> sourceState) {
+        queryManager.fieldStoreIndex().trackStoresTo(location.getBlock().getFunction(), property);
+        withAllocationSitesOf(location, baseRegister, alloc -> {
+            assert containingSolver != null;
+            final var initialQuery = new Query(containingSolver.initialQuery, false);
+            final var queryID = new IndexedFieldReadID(initialQuery, sourceState, alloc);
+            continueWithSubqueryResult(queryManager.getPointsToGraph().getFieldStores(alloc, property), queryID,
+                    (WritePropertyNode site) -> {
+                        final var valueRegister = Register.of(site.getValueRegister(), site.getBlock().getFunction());
+                        queryManager.aliasCache().subscribe(site, valueRegister,
+                                new IndexedFieldWriteID(initialQuery, sourceState, site), containingSolver,
+                                written -> containingSolver.propagate(sourceState, allocationState(written)));
+                    });
+        }, queryValue());
+    }
+
+    /**
+     * @return the state at which the backward analysis finds alloc, i.e. the value defined by its allocation
+     * statement, which ends its flow
+     */
+    private sync.pds.solver.nodes.Node<NodeState, Value> allocationState(Allocation alloc) {
+        final var statement = alloc.getAllocationStatement();
+        final var function = statement.getBlock().getFunction();
+        if (alloc instanceof FunctionAllocation functionAllocation &&
+                functionAllocation.getAllocationStatement().getResultRegister() == -1) {
+            final var name = functionAllocation.getAllocationStatement().getFunction().getName();
+            return makeSPDSNode(statement, Variable.of(name, getDeclaringScope(name, function)));
+        }
+        return makeSPDSNode(statement, Register.of(((Register) alloc).getId(), function));
     }
 
     /**
@@ -355,21 +402,21 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
     @Override
     public void visit(ReadVariableNode n) {
         Set<Value> killed = new HashSet<>();
-        Register resultReg = new Register(n.getResultRegister(), n.getBlock().getFunction());
-        Register baseReg = new Register(n.getResultBaseRegister(), n.getBlock().getFunction());
-        Variable read = new Variable(
+        Register resultReg = Register.of(n.getResultRegister(), n.getBlock().getFunction());
+        Register baseReg = Register.of(n.getResultBaseRegister(), n.getBlock().getFunction());
+        Variable read = Variable.of(
                 n.getVariableName(),
                 getDeclaringScope(n.getVariableName(), n.getBlock().getFunction()));
         killed.add(resultReg);
         killed.add(baseReg);
-        if (!killed.contains(context.queryValue())) {
+        if (!killed.contains(queryValue())) {
             addNormalFlowToPreds(n);
         }
 
         // Add register -> variable flow if necessary
-        if (context.queryValue().equals(resultReg)) {
+        if (queryValue().equals(resultReg)) {
             genSingleNormalFlow(n, read);
-        } else if (context.queryValue().equals(baseReg)) {
+        } else if (queryValue().equals(baseReg)) {
             genSingleNormalFlow(n, read);
         }
     }
@@ -413,11 +460,11 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
      */
     @Override
     public void visit(UnaryOperatorNode n) {
-        final var resultReg = new Register(n.getResultRegister(), n.getBlock().getFunction());
-        if (!context.queryValue().equals(resultReg)) {
+        final var resultReg = Register.of(n.getResultRegister(), n.getBlock().getFunction());
+        if (!queryValue().equals(resultReg)) {
             addNormalFlowToPreds(n);
         } else {
-            final var argRegister = new Register(n.getArgRegister(), n.getBlock().getFunction());
+            final var argRegister = Register.of(n.getArgRegister(), n.getBlock().getFunction());
             genSingleNormalFlow(n, argRegister);
         }
     }
@@ -440,14 +487,15 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
      */
     @Override
     public void visit(WritePropertyNode n) {
-        final var valueRegister = new Register(n.getValueRegister(), n.getBlock().getFunction());
-        final var baseRegister = new Register(n.getBaseRegister(), n.getBlock().getFunction());
+        final var valueRegister = Register.of(n.getValueRegister(), n.getBlock().getFunction());
+        final var baseRegister = Register.of(n.getBaseRegister(), n.getBlock().getFunction());
         if (n.isPropertyFixed()) {
             // Property is a fixed String
-            Property property = new Property(n.getPropertyString());
+            Property property = Property.of(n.getPropertyString());
             treatAsNop(n); // adds normal flows for things not affected by heap write.
-            final var queryValue = context.queryValue();
+            final var queryValue = queryValue();
             withAllocationSitesOf(n, baseRegister, alloc -> {
+                queryManager.getPointsToGraph().addFieldStore(alloc, property, n);
                 if (queryValue.equals(alloc)) {
                     getPredecessors(n)
                             .forEach(pred -> {
@@ -478,15 +526,15 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
      */
     @Override
     public void visit(WriteVariableNode n) {
-        Register argRegister = new Register(n.getValueRegister(), n.getBlock().getFunction());
-        Variable write = new Variable(
+        Register argRegister = Register.of(n.getValueRegister(), n.getBlock().getFunction());
+        Variable write = Variable.of(
                 n.getVariableName(),
                 getDeclaringScope(n.getVariableName(), n.getBlock().getFunction()));
-        if (!context.queryValue().equals(write)) {
+        if (!queryValue().equals(write)) {
             addNormalFlowToPreds(n);
         }
         // Add register -> variable flow if necessary
-        if (context.queryValue().equals(write)) {
+        if (queryValue().equals(write)) {
             genSingleNormalFlow(n, argRegister);
         }
     }
@@ -550,18 +598,17 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
                 .forEach(predecessor -> addSingleState(predecessor, v));
     }
 
-    private void handleflowToFunctionEntry(ConstantNode entryNode, Value queryVal,
-            FlowFunctionContext context) {
-        DebugUtils.debug("Handling flow to entry of " + entryNode.getBlock().getFunction() + " looking backwards for "
+    private void handleflowToFunctionEntry(ConstantNode entryNode, Value queryVal) {
+        DebugUtils.debug(() -> "Handling flow to entry of " + entryNode.getBlock().getFunction() + " looking backwards for "
                 + queryVal);
         Function containingFunction = entryNode.getBlock().getFunction();
         if (containingFunction.isMain()) {
             return;
         }
         if (containingSolver != null) {
-            final var queryID = containingSolver.getQueryID(context.currentPDSNode(), true, false);
+            final var queryID = containingSolver.getQueryID(currentPDSNode(), true, false);
             LiveCollection<CallNode> liveInvokes = findInvocationsOfFunction(containingFunction);
-            final var currentSPDSNode = context.currentPDSNode();
+            final var currentSPDSNode = currentPDSNode();
             if (queryVal instanceof Variable queryVar) {
                 Optional<String> paramName = containingFunction.getParameterNames().stream()
                         .filter(name -> name.equals(queryVar.getVarName()))
@@ -573,22 +620,22 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
                     int paramIndex = containingFunction.getParameterNames().indexOf(paramName.get());
                     // If queryVal is parameter name, go back to invocation site
                     continueWithSubqueryResult(liveInvokes, queryID, invoke -> {
-                        DebugUtils.debug("handleflowToFunctionEntry[param]: found invocation of " + containingFunction +
+                        DebugUtils.debug(() -> "handleflowToFunctionEntry[param]: found invocation of " + containingFunction +
                                 ": " + invoke + " for query: " + queryVal);
                         try {
-                            Register reg = new Register(invoke.getArgRegister(paramIndex),
+                            Register reg = Register.of(invoke.getArgRegister(paramIndex),
                                     invoke.getBlock().getFunction());
                             State nextState = makeSPDSNode(invoke, reg);
-                            DebugUtils.debug("Propagating pop state: " + nextState + " where initialQuery=" +
+                            DebugUtils.debug(() -> "Propagating pop state: " + nextState + " where initialQuery=" +
                                     containingSolver.initialQuery + " and currentSPDSNode: " + currentSPDSNode);
                             containingSolver.propagate(currentSPDSNode, nextState);
-                            DebugUtils.debug("Done propagating: " + nextState);
+                            DebugUtils.debug(() -> "Done propagating: " + nextState);
                         } catch (ArrayIndexOutOfBoundsException ignored) {
                         }
                     });
                 } else {
                     continueWithSubqueryResult(liveInvokes, queryID, invoke -> {
-                        DebugUtils.debug("handleflowToFunctionEntry[non-param]: found invocation of " +
+                        DebugUtils.debug(() -> "handleflowToFunctionEntry[non-param]: found invocation of " +
                                 containingFunction + ": " + invoke + " for query: " + queryVal);
                         Function invokeScope = invoke.getBlock().getFunction();
                         // otherwise, if queryVal is not visible at call site, it must have been
@@ -629,31 +676,31 @@ public class BackwardFlowFunctions extends AbstractFlowFunctions {
     }
 
     @Override
-    public void handleUnresolvedCall() {
+    protected void handleUnresolvedCall() {
         assert containingSolver != null;
-        final var node = context.currentPDSNode().stmt().getNode();
+        final var node = currentPDSNode().stmt().getNode();
         if (node instanceof CallNode callNode) {
             if (callNode.getResultRegister() != -1 &&
-                    context.queryValue() instanceof Register reg &&
+                    queryValue() instanceof Register reg &&
                     reg.getId() == callNode.getResultRegister() &&
                     reg.getContainingFunction().equals(callNode.getBlock().getFunction())) {
                 // Propagate to each argument to capture dependency of function result on input
                 for (int i = 0; i < callNode.getNumberOfArgs(); i++) {
-                    final var argRegister = new Register(callNode.getArgRegister(i), callNode.getBlock().getFunction());
+                    final var argRegister = Register.of(callNode.getArgRegister(i), callNode.getBlock().getFunction());
                     getPredecessors(callNode)
                             .forEach(pred -> {
                                 final var nextState = makeSPDSNode(pred, argRegister);
-                                containingSolver.propagate(context.currentPDSNode(), nextState);
+                                containingSolver.propagate(currentPDSNode(), nextState);
                             });
                 }
                 // If this is a method call, also add a flow from the base register into the result,
                 // capturing methods on primitive values
                 if (FlowgraphUtils.isMethodCallWithStaticProperty(callNode)) {
-                    final var baseRegister = new Register(callNode.getBaseRegister(), callNode.getBlock().getFunction());
+                    final var baseRegister = Register.of(callNode.getBaseRegister(), callNode.getBlock().getFunction());
                     getPredecessors(callNode)
                             .forEach(pred -> {
                                 final var nextState = makeSPDSNode(pred, baseRegister);
-                                containingSolver.propagate(context.currentPDSNode(), nextState);
+                                containingSolver.propagate(currentPDSNode(), nextState);
                             });
                 }
             }
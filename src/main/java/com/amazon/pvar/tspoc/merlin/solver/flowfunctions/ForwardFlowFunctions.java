@@ -19,11 +19,9 @@ import com.amazon.pvar.tspoc.merlin.DebugUtils;
 import com.amazon.pvar.tspoc.merlin.ir.*;
 import com.amazon.pvar.tspoc.merlin.livecollections.LiveCollection;
 import com.amazon.pvar.tspoc.merlin.solver.*;
-import dk.brics.tajs.flowgraph.AbstractNode;
 import dk.brics.tajs.flowgraph.Function;
 import dk.brics.tajs.flowgraph.SourceLocation;
 import dk.brics.tajs.flowgraph.jsnodes.*;
-import dk.brics.tajs.js2flowgraph.FlowGraphBuilder;
 import sync.pds.solver.SyncPDSSolver;
 import sync.pds.solver.nodes.NodeWithLocation;
 import sync.pds.solver.nodes.PopNode;
@@ -38,15 +36,8 @@ import java.util.stream.Stream;
 
 public class ForwardFlowFunctions extends AbstractFlowFunctions {
 
-    /**
-     * Store node successor maps for each function as needed to avoid duplicating
-     * computation
-     */
-    private final Map<Function, Map<AbstractNode, Set<AbstractNode>>> successorMapCache =
-            Collections.synchronizedMap(new HashMap<>());
-
-    public ForwardFlowFunctions(MerlinSolver containingSolver, QueryManager queryManager, FlowFunctionContext context) {
-        super(containingSolver, queryManager, context);
+    public ForwardFlowFunctions(MerlinSolver containingSolver, QueryManager queryManager) {
+        super(containingSolver, queryManager);
     }
 
     @Override
@@ -62,11 +53,11 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
     @Override
     public void visit(BinaryOperatorNode n) {
         Set<Value> killed = new HashSet<>();
-        final var arg1 = new Register(n.getArg1Register(), n.getBlock().getFunction());
+        final var arg1 = Register.of(n.getArg1Register(), n.getBlock().getFunction());
         killed.add(arg1);
-        final var arg2 = new Register(n.getArg2Register(), n.getBlock().getFunction());
+        final var arg2 = Register.of(n.getArg2Register(), n.getBlock().getFunction());
         killed.add(arg2);
-        if (!killed.contains(context.queryValue())) {
+        if (!killed.contains(queryValue())) {
             addStandardNormalFlowToNext(n);
         }
     }
@@ -93,10 +84,10 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
 
         // Save current flow function state and capture it in closure:
         if (containingSolver != null) {
-            final var queryID = containingSolver.getQueryID(context.currentPDSNode(), false, false);
-            final var sourceState = context.currentPDSNode();
-            continueWithSubqueryResult(resolveFunctionCall(n, queryManager), queryID,
-                    callee -> this.handleFlowToCallee(n, callee, sourceState, context));
+            final var queryID = containingSolver.getQueryID(currentPDSNode(), false, false);
+            final var sourceState = currentPDSNode();
+            continueWithSubqueryResult(resolveFunctionCall(n, queryManager, containingSolver), queryID,
+                    callee -> this.handleFlowToCallee(n, callee, sourceState));
         }
         // Propagate values across the call site
         treatAsNop(n);
@@ -122,12 +113,12 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
         final var firstNodeInFunction = n.getBlock().getFunction().getEntry().getFirstNode().equals(n);
         // It might be sufficient to do the below propagation only if the variable name
         // matches a parameter.
-        if (firstNodeInFunction && context.queryValue() instanceof Variable queryVar
+        if (firstNodeInFunction && queryValue() instanceof Variable queryVar
                 && queryVar.getDeclaringFunction().equals(n.getBlock().getFunction())) {
             // A parameter may be captured by a closure defined here.
             final var capturingFunctions = CapturedVariableAnalysis.functionsCapturingVarIn(n.getBlock().getFunction(),
                     queryVar.getVarName());
-            capturingFunctions.forEach(capturingFunc -> handleFlowToClosureVar(queryVar, capturingFunc, context));
+            capturingFunctions.forEach(capturingFunc -> handleFlowToClosureVar(queryVar, capturingFunc));
         }
         treatAsNop(n);
     }
@@ -180,18 +171,18 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
             // as well, so if we are looking for the function being declared here, we must
             // also
             // add a flow into the result register:
-            if (context.queryValue() instanceof FunctionAllocation functionAllocation &&
+            if (queryValue() instanceof FunctionAllocation functionAllocation &&
                     functionAllocation.getAllocationStatement().equals(n)) {
-                final var resultReg = new Register(n.getResultRegister(), n.getBlock().getFunction());
+                final var resultReg = Register.of(n.getResultRegister(), n.getBlock().getFunction());
                 genSingleNormalFlow(n, resultReg);
             }
             treatAsNop(n);
         }
         final var functionName = n.getFunction().getName();
         if (functionName != null && !functionName.isBlank()) {
-            Variable functionVariable = new Variable(n.getFunction().getName(), n.getBlock().getFunction());
+            Variable functionVariable = Variable.of(n.getFunction().getName(), n.getBlock().getFunction());
             FunctionAllocation alloc = new FunctionAllocation(n);
-            if (context.queryValue().equals(alloc)) {
+            if (queryValue().equals(alloc)) {
                 genSingleNormalFlow(n, functionVariable);
             }
             treatAsNop(n);
@@ -280,21 +271,21 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
      */
     @Override
     public void visit(ReadPropertyNode n) {
-        Register result = new Register(n.getResultRegister(), n.getBlock().getFunction());
-        Register baseReg = new Register(n.getBaseRegister(), n.getBlock().getFunction());
+        Register result = Register.of(n.getResultRegister(), n.getBlock().getFunction());
+        Register baseReg = Register.of(n.getBaseRegister(), n.getBlock().getFunction());
         if (n.isPropertyFixed()) {
             // Property is a fixed String
-            Property property = new Property(n.getPropertyString());
-            if (!context.queryValue().equals(result)) {
+            Property property = Property.of(n.getPropertyString());
+            if (!queryValue().equals(result)) {
                 addStandardNormalFlowToNext(n);
             }
             if (n.getResultRegister() == -1) {
                 return; // nothing more to do
             }
-            final var queryValue = context.queryValue();
+            final var queryValue = queryValue();
             withAllocationSitesOf(n, baseReg, alloc -> {
                 assert containingSolver != null;
-                DebugUtils.debug("fwd found alias for base of property read " + n + ": " +
+                DebugUtils.debug(() -> "fwd found alias for base of property read " + n + ": " +
                         alloc + "; for query " + queryValue + "; initial query: " + containingSolver.initialQuery);
                 if (alloc.equals(queryValue)) {
                     getSuccessors(n)
@@ -320,31 +311,31 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
     private void handleFlowToCallee(
             CallNode caller,
             Function callee,
-            sync.pds.solver.nodes.Node<NodeState, Value> sourceState,
-            FlowFunctionContext context) {
+            sync.pds.solver.nodes.Node<NodeState, Value> sourceState) {
         assert containingSolver != null;
         final int numArgs = caller.getNumberOfArgs();
-        final var queryValue = context.queryValue();
-        DebugUtils.debug(this.containingSolver.getQueryString() + "; New target function: " +
+        final var queryValue = sourceState.fact();
+        DebugUtils.debug(() -> this.containingSolver.getQueryString() + "; New target function: " +
                 callee + " for query " + this.containingSolver.getQueryString() +
                 " and query var " + queryValue + " for call node: " + caller);
         Node entryPoint = ((Node) callee.getEntry().getFirstNode());
+        // Callees are handled in separate scheduler tasks; compute this callee's entry states without the solver's
+        // monitor and merge them in one step
+        final List<State> calleeStates = new ArrayList<>();
         // HACK to ensure we use the original query value
         if ((queryValue instanceof Variable var && var.isVisibleIn(callee)) ||
                 (queryValue instanceof ObjectAllocation)) {
-            final var nextState = callPushState(entryPoint, queryValue, caller);
-            containingSolver.propagate(sourceState, nextState);
+            calleeStates.add(callPushState(entryPoint, queryValue, caller));
         } else {
             for (int i = 0; i < numArgs; i++) {
-                Register argRegister = new Register(caller.getArgRegister(i), caller.getBlock().getFunction());
+                Register argRegister = Register.of(caller.getArgRegister(i), caller.getBlock().getFunction());
                 try {
                     String paramName = callee.getParameterNames().get(i);
-                    Variable param = new Variable(paramName, callee);
+                    Variable param = Variable.of(paramName, callee);
                     if (queryValue.equals(argRegister)) {
-                        DebugUtils.debug("Propagating actual argument " + argRegister
+                        DebugUtils.debug(() -> "Propagating actual argument " + argRegister
                                 + " to function parameter: " + param);
-                        final var nextState = callPushState(entryPoint, param, caller);
-                        containingSolver.propagate(context.currentPDSNode(), nextState);
+                        calleeStates.add(callPushState(entryPoint, param, caller));
                     }
                 } catch (IndexOutOfBoundsException e) {
                     // Do nothing, if we pass an extra unused arg to a function, there's no need to
@@ -352,6 +343,9 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
                 }
             }
         }
+        if (!calleeStates.isEmpty()) {
+            containingSolver.propagateAll(sourceState, calleeStates);
+        }
     }
 
     /**
@@ -362,14 +356,14 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
      */
     @Override
     public void visit(ReadVariableNode n) {
-        Register result = new Register(n.getResultRegister(), n.getBlock().getFunction());
-        Variable read = new Variable(
+        Register result = Register.of(n.getResultRegister(), n.getBlock().getFunction());
+        Variable read = Variable.of(
                 n.getVariableName(),
                 getDeclaringScope(n.getVariableName(), n.getBlock().getFunction()));
-        if (!context.queryValue().equals(result)) {
+        if (!queryValue().equals(result)) {
             addStandardNormalFlowToNext(n);
         }
-        if (context.queryValue().equals(read)) {
+        if (queryValue().equals(read)) {
             genSingleNormalFlow(n, result);
         }
     }
@@ -389,19 +383,19 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
             // end of program
             return;
         }
-        Register result = new Register(n.getReturnValueRegister(), n.getBlock().getFunction());
+        Register result = Register.of(n.getReturnValueRegister(), n.getBlock().getFunction());
         // Handle return value assignment
         final var containingFunction = n.getBlock().getFunction();
         LiveCollection<CallNode> possibleReturnSites = findInvocationsOfFunction(containingFunction);
         if (containingSolver != null) {
-            final var currentSPDSNode = context.currentPDSNode();
+            final var currentSPDSNode = currentPDSNode();
             final var queryID = containingSolver.getQueryID(currentSPDSNode, true, false);
-            final var queryValue = context.queryValue();
+            final var queryValue = queryValue();
             continueWithSubqueryResult(possibleReturnSites, queryID, (returnSite, newFlowFunctions) -> {
                 if (queryValue.equals(result)) {
-                    DebugUtils.debug("Found return site: " + returnSite + " for " +
+                    DebugUtils.debug(() -> "Found return site: " + returnSite + " for " +
                             n.getBlock().getFunction() + "[fwd query: " + containingSolver.initialQuery + "]");
-                    Register returnReg = new Register(returnSite.getResultRegister(),
+                    Register returnReg = Register.of(returnSite.getResultRegister(),
                             returnSite.getBlock().getFunction());
                     State popState = callPopState(returnSite, returnReg);
                     containingSolver.propagate(currentSPDSNode, popState);
@@ -409,14 +403,14 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
                 // Handle return propagation of formal parameters
                 // TODO: and any other values visible but not declared in this function scope
                 for (int i = 0; i < containingFunction.getParameterNames().size(); i++) {
-                    final var paramVar = new Variable(containingFunction.getParameterNames().get(i),
+                    final var paramVar = Variable.of(containingFunction.getParameterNames().get(i),
                             containingFunction);
-                    if (context.queryValue().equals(paramVar)) {
+                    if (queryValue.equals(paramVar)) {
                         // Find corresponding actual parameter at returnSite:
                         // Note that the caller may have passed too few arguments. In that case, we
                         // don't propagate the flow
                         if (i < returnSite.getNumberOfArgs()) {
-                            final var actualReg = new Register(returnSite.getArgRegister(i),
+                            final var actualReg = Register.of(returnSite.getArgRegister(i),
                                     returnSite.getBlock().getFunction());
                             getSuccessors(returnSite).forEach(returnSucc -> {
                                 final var nextState = makeSPDSNode(returnSucc, actualReg);
@@ -465,8 +459,8 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
      */
     @Override
     public void visit(UnaryOperatorNode n) {
-        final var argRegister = new Register(n.getArgRegister(), n.getBlock().getFunction());
-        if (!context.queryValue().equals(argRegister)) {
+        final var argRegister = Register.of(n.getArgRegister(), n.getBlock().getFunction());
+        if (!queryValue().equals(argRegister)) {
             addStandardNormalFlowToNext(n);
         }
     }
@@ -489,25 +483,28 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
      */
     @Override
     public void visit(WritePropertyNode n) {
-        Value valueReg = new Register(n.getValueRegister(), n.getBlock().getFunction());
-        Value baseReg = new Register(n.getBaseRegister(), n.getBlock().getFunction());
+        Value valueReg = Register.of(n.getValueRegister(), n.getBlock().getFunction());
+        Value baseReg = Register.of(n.getBaseRegister(), n.getBlock().getFunction());
         if (n.isPropertyFixed()) {
             // Property is a fixed String
-            Property property = new Property(n.getPropertyString());
+            Property property = Property.of(n.getPropertyString());
             treatAsNop(n);
-            if (context.queryValue().equals(valueReg)) {
+            if (queryValue().equals(valueReg)) {
                 // Propagate to aliases
-                final var currentPDSNode = context.currentPDSNode();
-                withAllocationSitesOf(n, baseReg, alloc -> getSuccessors(n)
-                        .forEach(succ -> {
-                            final var pushNode = new PushNode<>(
-                                    makeNodeState(succ),
-                                    alloc,
-                                    property,
-                                    SyncPDSSolver.PDSSystem.FIELDS);
-                            assert containingSolver != null;
-                            containingSolver.propagate(currentPDSNode, pushNode);
-                        }), context.queryValue());
+                final var currentPDSNode = currentPDSNode();
+                withAllocationSitesOf(n, baseReg, alloc -> {
+                    queryManager.getPointsToGraph().addFieldStore(alloc, property, n);
+                    getSuccessors(n)
+                            .forEach(succ -> {
+                                final var pushNode = new PushNode<>(
+                                        makeNodeState(succ),
+                                        alloc,
+                                        property,
+                                        SyncPDSSolver.PDSSystem.FIELDS);
+                                assert containingSolver != null;
+                                containingSolver.propagate(currentPDSNode, pushNode);
+                            });
+                }, queryValue());
             }
         } else {
             // TODO: dispatch a backward query on the register used for the property read
@@ -523,17 +520,17 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
      */
     @Override
     public void visit(WriteVariableNode n) {
-        Register argRegister = new Register(n.getValueRegister(), n.getBlock().getFunction());
-        Variable write = new Variable(
+        Register argRegister = Register.of(n.getValueRegister(), n.getBlock().getFunction());
+        Variable write = Variable.of(
                 n.getVariableName(),
                 getDeclaringScope(n.getVariableName(), n.getBlock().getFunction()));
 
-        if (!context.queryValue().equals(write)) {
+        if (!queryValue().equals(write)) {
             addStandardNormalFlowToNext(n);
         }
 
-        if (context.queryValue().equals(argRegister) || // ad-hoc fix:
-                context.queryValue() instanceof ObjectAllocation objAlloc
+        if (queryValue().equals(argRegister) || // ad-hoc fix:
+                queryValue() instanceof ObjectAllocation objAlloc
                         && objAlloc.getResultRegister().getId() == n.getValueRegister()) {
             genSingleNormalFlow(n, write);
 
@@ -542,8 +539,8 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
             // closure-handling.md for details.
             final var capturingFunctions = CapturedVariableAnalysis.functionsCapturingVarIn(n.getBlock().getFunction(),
                     n.getVariableName());
-            final var capturedVar = new Variable(n.getVariableName(), n.getBlock().getFunction());
-            capturingFunctions.forEach(capturingFunc -> handleFlowToClosureVar(capturedVar, capturingFunc, context));
+            final var capturedVar = Variable.of(n.getVariableName(), n.getBlock().getFunction());
+            capturingFunctions.forEach(capturingFunc -> handleFlowToClosureVar(capturedVar, capturingFunc));
         }
 
     }
@@ -602,39 +599,14 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
                 .forEach(node -> addSingleState(node, v));
     }
 
-    public static Map<AbstractNode, Set<AbstractNode>> invertMapping(Map<AbstractNode, Set<AbstractNode>> multimap) {
-        Map<AbstractNode, Set<AbstractNode>> inverse = new HashMap<>();
-        multimap.forEach((key, set) -> {
-            set.forEach(value -> {
-                if (inverse.containsKey(value)) {
-                    inverse.get(value).add(key);
-                } else {
-                    Set<AbstractNode> inverseSet = new HashSet<>();
-                    inverseSet.add(key);
-                    inverse.put(value, inverseSet);
-                }
-            });
-        });
-        return inverse;
+    private Collection<Node> getSuccessors(Node n) {
+        return FlowgraphUtils.successorsOf(n);
     }
 
-    private Collection<Node> getSuccessors(Node n) {
-        return successorMapCache
-                .computeIfAbsent(
-                        n.getBlock().getFunction(),
-                        f -> invertMapping(FlowGraphBuilder.makeNodePredecessorMap(f)))
-                .getOrDefault(n, Collections.emptySet())
-                .stream()
-                .filter(abstractNode -> abstractNode instanceof Node)
-                .map(abstractNode -> ((Node) abstractNode))
-                .collect(Collectors.toSet());
-    }
-
-    private void handleFlowToClosureVar(Variable capturedVar, DeclareFunctionNode capturingFunction,
-            FlowFunctionContext context) {
+    private void handleFlowToClosureVar(Variable capturedVar, DeclareFunctionNode capturingFunction) {
         if (containingSolver != null) {
             final var callSitesAndQuery = findInvocationsOfFunctionWithQuery(capturingFunction.getFunction());
-            final var queryID = new CapturedVariableQuery(new Query(context.currentPDSNode(), true),
+            final var queryID = new CapturedVariableQuery(new Query(currentPDSNode(), true),
                     callSitesAndQuery.getSecond());
             continueWithSubqueryResult(callSitesAndQuery.getFirst(), queryID, callSite -> {
                 final var callSiteState = makeSPDSNode(callSite, capturedVar);
@@ -651,18 +623,18 @@ public class ForwardFlowFunctions extends AbstractFlowFunctions {
     }
 
     @Override
-    public void handleUnresolvedCall() {
+    protected void handleUnresolvedCall() {
         assert containingSolver != null;
-        final var node = context.currentPDSNode().stmt().getNode();
+        final var node = currentPDSNode().stmt().getNode();
         if (node instanceof CallNode callNode && callNode.getResultRegister() != 1) {
             final var parameters = IntStream.range(0, callNode.getNumberOfArgs())
-                    .mapToObj(argIdx -> new Register(callNode.getArgRegister(argIdx), callNode.getBlock().getFunction()))
+                    .mapToObj(argIdx -> Register.of(callNode.getArgRegister(argIdx), callNode.getBlock().getFunction()))
                     .collect(Collectors.toSet());
-            if (parameters.contains(context.queryValue())) {
+            if (parameters.contains(queryValue())) {
                 // add flow into result
-                final var resultReg = new Register(callNode.getResultRegister(), callNode.getBlock().getFunction());
+                final var resultReg = Register.of(callNode.getResultRegister(), callNode.getBlock().getFunction());
                 getSuccessors(callNode)
-                        .forEach(succ -> containingSolver.propagate(context.currentPDSNode(), makeSPDSNode(succ, resultReg)));
+                        .forEach(succ -> containingSolver.propagate(currentPDSNode(), makeSPDSNode(succ, resultReg)));
             }
         } else {
             logUnsoundness(node, "Precondition violated: handleUnresolvedCall transfer invoked for non-call-node: " + node);
@@ -16,15 +16,8 @@
 package com.amazon.pvar.tspoc.merlin.solver.flowfunctions;
 
 import com.amazon.pvar.tspoc.merlin.ir.Variable;
+import com.amazon.pvar.tspoc.merlin.ir.VariableUsage;
 import dk.brics.tajs.flowgraph.Function;
-import dk.brics.tajs.flowgraph.jsnodes.DeclareFunctionNode;
-import dk.brics.tajs.flowgraph.jsnodes.ReadVariableNode;
-import dk.brics.tajs.flowgraph.jsnodes.WriteVariableNode;
-
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * Utility class for determining whether a particular variable could be referenced in nested inner scopes of a function
@@ -44,44 +37,8 @@ public class SyntacticReferenceResolver {
      * @return
      */
     public boolean isVarReferencedInNestedScopes() {
-        Queue<Function> worklist = new LinkedList<>();
-        worklist.add(outerFunction);
-        while (!worklist.isEmpty()) {
-            Function current = worklist.remove();
-
-            // Is it possible for var to be used in this function?
-            if (!variable.isVisibleIn(current)) {
-                continue;
-            }
-
-            // Is var used in this function?
-            Set<ReadVariableNode> varReadNodes = current.getBlocks().stream()
-                    .flatMap(bb -> bb.getNodes().stream())
-                    .filter(node -> node instanceof ReadVariableNode)
-                    .map(node -> ((ReadVariableNode) node))
-                    .collect(Collectors.toSet());
-            for (ReadVariableNode readNode : varReadNodes) {
-                if (readNode.getVariableName().equals(variable.getVarName())) {
-                    return true;
-                }
-            }
-            Set<WriteVariableNode> varWriteNodes = current.getBlocks().stream()
-                    .flatMap(bb -> bb.getNodes().stream())
-                    .filter(node -> node instanceof WriteVariableNode)
-                    .map(node -> ((WriteVariableNode) node))
-                    .collect(Collectors.toSet());
-            for (WriteVariableNode writeNode : varWriteNodes) {
-                if (writeNode.getVariableName().equals(variable.getVarName())) {
-                    return true;
-                }
-            }
-
-            // does this function have inner functions which might reference var?
-            current.getBlocks().stream()
-                    .flatMap(bb -> bb.getNodes().stream())
-                    .filter(node -> node instanceof DeclareFunctionNode)
-                    .forEach(node -> worklist.add(((DeclareFunctionNode) node).getFunction()));
-        }
-        return false;
+        // Nested functions that redeclare the variable are already excluded from the nested references
+        return variable.isVisibleIn(outerFunction) &&
+                VariableUsage.forFunction(outerFunction).references(variable.getVarName());
     }
 }
@@ -16,6 +16,7 @@
 package com.amazon.pvar.tspoc.merlin;
 
 import com.amazon.pvar.tspoc.merlin.experiments.Main;
+import com.amazon.pvar.tspoc.merlin.ir.NodeIndex;
 import dk.brics.tajs.flowgraph.FlowGraph;
 import dk.brics.tajs.flowgraph.jsnodes.Node;
 import org.apache.log4j.BasicConfigurator;
@@ -40,14 +41,7 @@ public class AbstractCallGraphTest {
     }
 
     public Node getNodeByIndex(int index, FlowGraph flowGraph) {
-        return flowGraph.getFunctions().stream()
-                .flatMap(function -> function.getBlocks().stream())
-                .flatMap(basicBlock -> basicBlock.getNodes().stream())
-                .filter(n -> n instanceof Node)
-                .map(n -> ((Node) n))
-                .filter(n -> n.getIndex() == index)
-                .findAny()
-                .orElseThrow();
+        return NodeIndex.of(flowGraph).getNode(index);
     }
 
 }
@@ -0,0 +1,87 @@
+package com.amazon.pvar.tspoc.merlin;
+
+import com.amazon.pvar.tspoc.merlin.ir.FlowgraphUtils;
+import com.amazon.pvar.tspoc.merlin.solver.QueryManager;
+import com.amazon.pvar.tspoc.merlin.solver.SolverOptions;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.CallNode;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Resolves every call site of the call graph test programs with and without the bidirectional resolver and checks
+ * that both find the same callees.
+ */
+@RunWith(Parameterized.class)
+public class BidirectionalCallResolverTests extends AbstractCallGraphTest {
+
+    private final String program;
+
+    public BidirectionalCallResolverTests(String program) {
+        this.program = program;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> programs() {
+        final var directory = new File("src/test/resources/js/callgraph/callgraph-tests");
+        return Stream.of(Objects.requireNonNull(directory.listFiles((dir, name) -> name.endsWith(".js"))))
+                .sorted()
+                .map(file -> new Object[]{file.getPath()})
+                .toList();
+    }
+
+    private static List<CallNode> callSites(FlowGraph flowGraph) {
+        return FlowgraphUtils.allNodes(flowGraph)
+                .filter(node -> node instanceof CallNode callNode && callNode.getTajsFunctionName() == null)
+                .map(node -> (CallNode) node)
+                .sorted(Comparator.comparingInt(CallNode::getIndex))
+                .toList();
+    }
+
+    private static Map<CallNode, Set<Function>> resolve(List<CallNode> callSites, SolverOptions options) {
+        final var queryManager = new QueryManager(options);
+        queryManager.resolveAllCallSites(callSites);
+        queryManager.solve();
+        queryManager.scheduler().waitUntilDone();
+        final Map<CallNode, Set<Function>> callees = new HashMap<>();
+        for (final var callSite : callSites) {
+            callees.put(callSite, Set.copyOf(queryManager.getCallGraph().getCallees(callSite)));
+        }
+        return callees;
+    }
+
+    @Test
+    public void bidirectionalResolutionFindsTheSameCallees() {
+        // arrange
+        final var callSites = callSites(initializeFlowgraph(program));
+
+        // act
+        final var backward = resolve(callSites, SolverOptions.defaults());
+        final var bidirectional = resolve(callSites, SolverOptions.defaults().withBidirectionalCalls(true));
+
+        // assert
+        Assert.assertFalse(callSites.isEmpty());
+        Assert.assertEquals(backward, bidirectional);
+    }
+
+    @Test
+    public void bidirectionalResolutionWithinPrepassBoundsFindsTheSameCallees() {
+        // arrange
+        final var callSites = callSites(initializeFlowgraph(program));
+        final var prepass = SolverOptions.defaults().withCallGraphPrepass(true);
+
+        // act
+        final var backward = resolve(callSites, prepass);
+        final var bidirectional = resolve(callSites, prepass.withBidirectionalCalls(true));
+
+        // assert
+        Assert.assertEquals(backward, bidirectional);
+    }
+}
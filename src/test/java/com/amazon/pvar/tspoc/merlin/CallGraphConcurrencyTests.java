@@ -0,0 +1,101 @@
+package com.amazon.pvar.tspoc.merlin;
+
+import com.amazon.pvar.tspoc.merlin.experiments.Main;
+import com.amazon.pvar.tspoc.merlin.ir.FlowgraphUtils;
+import com.amazon.pvar.tspoc.merlin.solver.CallGraph;
+import dk.brics.tajs.flowgraph.jsnodes.CallNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests of CallGraph while edges are added from several threads.
+ */
+public class CallGraphConcurrencyTests extends AbstractCallGraphTest {
+
+    private static final int WRITERS = 4;
+
+    /**
+     * @return every pair of a call site and a function from the call graph test programs, which is far more edges than
+     * any of the programs has, but CallGraph does not care whether they are feasible
+     */
+    private static List<CallGraph.Edge> manyEdges() {
+        final var directory = new File("src/test/resources/js/callgraph/callgraph-tests");
+        final List<CallNode> callSites = new ArrayList<>();
+        final List<dk.brics.tajs.flowgraph.Function> functions = new ArrayList<>();
+        for (final var file : Objects.requireNonNull(directory.listFiles((dir, name) -> name.endsWith(".js")))) {
+            final var flowGraph = Main.flowgraphWithoutBabel(file.getAbsolutePath(), false);
+            FlowgraphUtils.allNodes(flowGraph)
+                    .filter(node -> node instanceof CallNode)
+                    .forEach(node -> callSites.add((CallNode) node));
+            functions.addAll(flowGraph.getFunctions());
+        }
+        final List<CallGraph.Edge> edges = new ArrayList<>();
+        for (final var callSite : callSites) {
+            for (final var function : functions) {
+                edges.add(new CallGraph.Edge(callSite, function));
+            }
+        }
+        return edges;
+    }
+
+    @Test
+    public void snapshotsTakenDuringConcurrentAddsAreConsistent() throws Exception {
+        // arrange
+        final var edges = manyEdges();
+        final var callGraph = new CallGraph();
+        final var executor = Executors.newFixedThreadPool(WRITERS);
+        final var start = new CountDownLatch(1);
+        final var writersDone = new AtomicBoolean(false);
+        final List<Future<?>> writers = new ArrayList<>();
+        for (int writer = 0; writer < WRITERS; writer++) {
+            final int offset = writer;
+            writers.add(executor.submit(() -> {
+                start.await();
+                // Every edge is added by two writers, so that adds of the same edge race as well
+                for (int i = offset; i < edges.size(); i += WRITERS / 2) {
+                    callGraph.addEdge(edges.get(i));
+                }
+                return null;
+            }));
+        }
+
+        // act
+        start.countDown();
+        CallGraph.Snapshot previous = callGraph.snapshot();
+        int snapshots = 0;
+        while (!writersDone.get()) {
+            writersDone.set(writers.stream().allMatch(Future::isDone));
+            final var snapshot = callGraph.snapshot();
+            snapshots++;
+
+            // assert
+            Assert.assertTrue(snapshot.size() >= previous.size());
+            Assert.assertTrue(snapshot.edgeSet().containsAll(previous.edgeSet()));
+            Assert.assertEquals(snapshot.size(), new HashSet<>(snapshot.edgeSet()).size());
+            for (final var edge : snapshot) {
+                Assert.assertTrue(callGraph.contains(edge));
+                Assert.assertTrue(callGraph.getCallees(edge.getCallSite()).contains(edge.getCallTarget()));
+                Assert.assertTrue(callGraph.getCallers(edge.getCallTarget()).contains(edge.getCallSite()));
+                Assert.assertTrue(snapshot.getCallees(edge.getCallSite()).contains(edge.getCallTarget()));
+                Assert.assertTrue(snapshot.getCallers(edge.getCallTarget()).contains(edge.getCallSite()));
+            }
+            previous = snapshot;
+        }
+        for (final var writer : writers) {
+            writer.get();
+        }
+        executor.shutdown();
+
+        // assert
+        Assert.assertTrue(snapshots > 0);
+        final var last = callGraph.snapshot();
+        Assert.assertEquals(new HashSet<>(edges), last.edgeSet());
+        Assert.assertEquals(edges.size(), callGraph.size());
+        Assert.assertEquals(edges.size(), last.size());
+    }
+}
@@ -0,0 +1,112 @@
+package com.amazon.pvar.tspoc.merlin;
+
+import com.amazon.pvar.tspoc.merlin.experiments.Main;
+import com.amazon.pvar.tspoc.merlin.ir.FlowgraphUtils;
+import com.amazon.pvar.tspoc.merlin.livecollections.Scheduler;
+import com.amazon.pvar.tspoc.merlin.livecollections.TaggedHandler;
+import com.amazon.pvar.tspoc.merlin.solver.CallGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.CallNode;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Tests of the handlers and live views of CallGraph.
+ */
+public class CallGraphLiveViewTests extends AbstractCallGraphTest {
+
+    private CallNode firstCall;
+    private CallNode secondCall;
+    private Function foo;
+    private Function bar;
+
+    @Before
+    public void loadProgram() {
+        final var flowgraph = Main.flowgraphWithoutBabel(
+                new File("src/test/resources/js/callgraph/callgraph-tests/simple-calls.js").getAbsolutePath(), false);
+        foo = FlowgraphUtils.getFunctionByName(flowgraph, "foo").get();
+        bar = FlowgraphUtils.getFunctionByName(flowgraph, "bar").get();
+        final var callSites = FlowgraphUtils.allNodes(flowgraph)
+                .filter(node -> node instanceof CallNode callNode && callNode.getTajsFunctionName() == null)
+                .map(node -> (CallNode) node)
+                .sorted(Comparator.comparingInt(callNode -> callNode.getSourceLocation().getLineNumber()))
+                .toList();
+        firstCall = callSites.get(0);
+        secondCall = callSites.get(1);
+    }
+
+    @Test
+    public void edgeHandlersRunOnceOnExistingAndNewEdges() {
+        // arrange
+        final var scheduler = Scheduler.create();
+        final var callGraph = new CallGraph(scheduler);
+        final Queue<CallGraph.Edge> seen = new ConcurrentLinkedQueue<>();
+        callGraph.addEdge(firstCall, foo);
+
+        // act
+        callGraph.onEdgeAdded("handler", seen::add);
+        callGraph.onEdgeAdded("handler", seen::add);
+        callGraph.addEdge(secondCall, bar);
+        callGraph.addEdge(secondCall, bar);
+        scheduler.waitUntilDone();
+
+        // assert
+        Assert.assertEquals(2, seen.size());
+        Assert.assertEquals(
+                Set.of(new CallGraph.Edge(firstCall, foo), new CallGraph.Edge(secondCall, bar)),
+                new HashSet<>(seen));
+        Assert.assertEquals(new HashSet<>(seen), callGraph.getLiveEdges().toJavaSet());
+    }
+
+    @Test
+    public void liveCalleesAndCallersOnlySeeTheirOwnEdges() {
+        // arrange
+        final var scheduler = Scheduler.create();
+        final var callGraph = new CallGraph(scheduler);
+        final Queue<Function> callees = new ConcurrentLinkedQueue<>();
+        final Queue<CallNode> callers = new ConcurrentLinkedQueue<>();
+        callGraph.addEdge(secondCall, foo);
+
+        // act
+        callGraph.getLiveCallees(secondCall).onAdd(TaggedHandler.create("callees", callees::add));
+        // A view obtained separately for the same call site runs an equal handler only once
+        callGraph.getLiveCallees(secondCall).onAdd(TaggedHandler.create("callees", callees::add));
+        callGraph.getLiveCallers(foo).onAdd(TaggedHandler.create("callers", callers::add));
+        callGraph.addEdge(secondCall, bar);
+        callGraph.addEdge(firstCall, foo);
+        callGraph.addEdge(firstCall, bar);
+        scheduler.waitUntilDone();
+
+        // assert
+        Assert.assertEquals(Set.of(foo, bar), new HashSet<>(callees));
+        Assert.assertEquals(2, callees.size());
+        Assert.assertEquals(Set.of(secondCall, firstCall), new HashSet<>(callers));
+        Assert.assertEquals(2, callers.size());
+        Assert.assertEquals(Set.of(foo, bar), callGraph.getLiveCallees(firstCall).toJavaSet());
+        Assert.assertEquals(Set.of(firstCall, secondCall), callGraph.getLiveCallers(bar).toJavaSet());
+    }
+
+    @Test
+    public void defaultCallGraphsShareOneScheduler() {
+        // arrange
+        final var first = new CallGraph();
+        final var second = new CallGraph();
+        final Queue<CallGraph.Edge> seen = new ConcurrentLinkedQueue<>();
+
+        // act
+        first.onEdgeAdded("handler", seen::add);
+        second.onEdgeAdded("handler", seen::add);
+        first.addEdge(firstCall, foo);
+        second.addEdge(secondCall, bar);
+        Scheduler.shared().waitUntilDone();
+
+        // assert
+        Assert.assertSame(Scheduler.shared(), Scheduler.shared());
+        Assert.assertEquals(2, seen.size());
+    }
+}
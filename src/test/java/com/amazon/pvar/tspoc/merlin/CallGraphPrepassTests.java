@@ -0,0 +1,169 @@
+package com.amazon.pvar.tspoc.merlin;
+
+import com.amazon.pvar.tspoc.merlin.experiments.Main;
+import com.amazon.pvar.tspoc.merlin.ir.FlowgraphUtils;
+import com.amazon.pvar.tspoc.merlin.solver.CallGraphPrepass;
+import com.amazon.pvar.tspoc.merlin.solver.QueryManager;
+import com.amazon.pvar.tspoc.merlin.solver.SolverOptions;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.Function;
+import dk.brics.tajs.flowgraph.jsnodes.CallNode;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests of the bounds of CallGraphPrepass and of resolving call sites within a time budget.
+ */
+public class CallGraphPrepassTests extends AbstractCallGraphTest {
+
+    private FlowGraph flowGraph;
+    private Function g;
+    private Function k;
+
+    @Before
+    public void loadProgram() {
+        // Without babel, so that line numbers match the source and `this` is the global object
+        flowGraph = Main.flowgraphWithoutBabel(
+                new File("src/test/resources/js/callgraph/prepass-tests/global-writes.js").getAbsolutePath(), false);
+        g = FlowgraphUtils.getFunctionByName(flowGraph, "g").get();
+        k = FlowgraphUtils.getFunctionByName(flowGraph, "k").get();
+    }
+
+    private CallNode callOnLine(int line) {
+        return callOnLine(flowGraph, line);
+    }
+
+    private static CallNode callOnLine(FlowGraph flowGraph, int line) {
+        return FlowgraphUtils.allNodes(flowGraph)
+                .filter(node -> node instanceof CallNode callNode && callNode.getTajsFunctionName() == null &&
+                        callNode.getSourceLocation().getLineNumber() == line)
+                .map(node -> (CallNode) node)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    @Test
+    public void globalVariablesSharePropertiesOfTheGlobalObject() {
+        // arrange
+        final var prepass = CallGraphPrepass.of(flowGraph);
+
+        // act
+        final var windowWrite = prepass.calleesOf(callOnLine(4));
+        final var thisWrite = prepass.calleesOf(callOnLine(6));
+
+        // assert
+        Assert.assertEquals(Optional.of(Set.of(g)), windowWrite);
+        Assert.assertEquals(Optional.of(Set.of(k)), thisWrite);
+    }
+
+    @Test
+    public void callAndApplyHaveUnknownCallees() {
+        // arrange
+        final var prepass = CallGraphPrepass.of(flowGraph);
+
+        // act
+        final var bound = prepass.calleesOf(callOnLine(7));
+
+        // assert
+        Assert.assertEquals(Optional.empty(), bound);
+        Assert.assertTrue(prepass.mayCall(callOnLine(7), g));
+    }
+
+    @Test
+    public void callsOfFunctionsOutsideTheProgramHaveEmptyBounds() {
+        // arrange
+        final var prepass = CallGraphPrepass.of(flowGraph);
+
+        // act
+        final var bound = prepass.calleesOf(callOnLine(8));
+
+        // assert
+        Assert.assertEquals(Optional.of(Set.of()), bound);
+        Assert.assertFalse(prepass.mayCall(callOnLine(8), g));
+    }
+
+    @Test
+    public void fallbackIsComputedOncePerProgram() {
+        // act
+        final var first = CallGraphPrepass.forFunction(g);
+        final var second = CallGraphPrepass.forFunction(k);
+
+        // assert
+        Assert.assertSame(first, second);
+        Assert.assertEquals(Optional.of(Set.of(g)), first.calleesOf(callOnLine(9)));
+    }
+
+    @Test
+    public void writesToDynamicPropertiesBoundEveryPropertyRead() {
+        // arrange
+        final var program = Main.flowgraphWithoutBabel(
+                new File("src/test/resources/js/callgraph/prepass-tests/dynamic-writes.js").getAbsolutePath(), false);
+        final var dynamicCall = callOnLine(program, 5);
+        final var written = FlowgraphUtils.getFunctionByName(program, "g").get();
+        final var queryManager = new QueryManager(
+                SolverOptions.defaults().withCallGraphPrepass(true).withIndexedFieldReads(true));
+
+        // act
+        final var bound = CallGraphPrepass.of(program).calleesOf(dynamicCall);
+        final var resolution = queryManager.resolveCallSite(dynamicCall, 60_000);
+
+        // assert
+        Assert.assertEquals(Optional.of(Set.of(written)), bound);
+        Assert.assertTrue(resolution.complete());
+        Assert.assertEquals(Set.of(written), resolution.callees());
+    }
+
+    @Test
+    public void resolveCallSiteFallsBackToThePrepassBoundOnTimeout() throws InterruptedException {
+        // arrange
+        final var queryManager = new QueryManager(SolverOptions.defaults().withCallGraphPrepass(true));
+        final var release = new CountDownLatch(1);
+        // Occupy the only scheduler thread, so that none of the call site's queries can run in time
+        queryManager.scheduler().execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // act
+        final var resolution = queryManager.resolveCallSite(callOnLine(9), 100);
+        release.countDown();
+
+        // assert
+        Assert.assertFalse(resolution.complete());
+        Assert.assertEquals(Set.of(g), resolution.callees());
+        queryManager.scheduler().waitUntilDone();
+    }
+
+    @Test
+    public void resolveCallSiteOnlyWaitsForItsOwnQueries() {
+        // arrange
+        final var queryManager = new QueryManager(SolverOptions.defaults().withThreads(2));
+        final var release = new CountDownLatch(1);
+        // Work of another client that does not finish while the call site is resolved
+        queryManager.scheduler().execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // act
+        final var resolution = queryManager.resolveCallSite(callOnLine(9), 60_000);
+        release.countDown();
+
+        // assert
+        Assert.assertTrue(resolution.complete());
+        Assert.assertEquals(Set.of(g), resolution.callees());
+        queryManager.scheduler().waitUntilDone();
+    }
+}
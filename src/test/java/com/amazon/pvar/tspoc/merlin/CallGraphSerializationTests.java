@@ -1,9 +1,12 @@
 package com.amazon.pvar.tspoc.merlin;
 
+import com.amazon.pvar.tspoc.merlin.experiments.Main;
 import com.amazon.pvar.tspoc.merlin.ir.FlowgraphUtils;
+import com.amazon.pvar.tspoc.merlin.livecollections.Scheduler;
 import com.amazon.pvar.tspoc.merlin.solver.CallGraph;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 import dk.brics.tajs.flowgraph.jsnodes.CallNode;
 import org.junit.Assert;
@@ -12,13 +15,17 @@ import org.junit.Test;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.*;
 
 public class CallGraphSerializationTests extends AbstractCallGraphTest {
 
-    @Test
-    public void canSerializeCallGraphsToJson() throws FileNotFoundException {
-        // arrange
-        final var testGraph = new CallGraph();
+    private CallGraph makeTestGraph() {
+        return makeTestGraph(new CallGraph());
+    }
+
+    private CallGraph makeTestGraph(CallGraph testGraph) {
         final var flowgraph = initializeFlowgraph("src/test/resources/js/callgraph/json-tests/callgraph-json-test.js");
         final var barFunc = FlowgraphUtils.getFunctionByName(flowgraph, "bar").get();
         final var callToFoo = (CallNode) FlowgraphUtils.allNodesInFunction(barFunc)
@@ -27,6 +34,63 @@ public class CallGraphSerializationTests extends AbstractCallGraphTest {
                 .get();
         final var fooFunc = FlowgraphUtils.getFunctionByName(flowgraph, "foo").get();
         testGraph.addEdge(callToFoo, fooFunc);
+        return testGraph;
+    }
+
+    /**
+     * A call graph with several edges from simple-calls.js, including two callees of the same call site
+     */
+    private CallGraph makeMultiEdgeGraph(CallGraph testGraph) {
+        // Without babel, so that line numbers match the source
+        final var flowgraph = Main.flowgraphWithoutBabel(
+                new File("src/test/resources/js/callgraph/callgraph-tests/simple-calls.js").getAbsolutePath(), false);
+        final var foo = FlowgraphUtils.getFunctionByName(flowgraph, "foo").get();
+        final var bar = FlowgraphUtils.getFunctionByName(flowgraph, "bar").get();
+        final var baz = FlowgraphUtils.getFunctionByName(flowgraph, "baz").get();
+        final var callSites = FlowgraphUtils.allNodes(flowgraph)
+                .filter(node -> node instanceof CallNode callNode && callNode.getTajsFunctionName() == null &&
+                        callNode.getSourceLocation().getLineNumber() != 11)
+                .map(node -> (CallNode) node)
+                .sorted(Comparator.comparingInt(callNode -> callNode.getSourceLocation().getLineNumber()))
+                .toList();
+        // Calls on lines 5, 17 and 26
+        Assert.assertEquals(3, callSites.size());
+        testGraph.addEdge(callSites.get(2), baz);
+        testGraph.addEdge(callSites.get(1), bar);
+        testGraph.addEdge(callSites.get(0), foo);
+        testGraph.addEdge(callSites.get(1), foo);
+        return testGraph;
+    }
+
+    private static List<JsonElement> jsonEdges(JsonElement callGraphJson) {
+        Assert.assertEquals(Set.of("edges"), callGraphJson.getAsJsonObject().keySet());
+        final List<JsonElement> edges = new ArrayList<>();
+        callGraphJson.getAsJsonObject().get("edges").getAsJsonArray().forEach(edges::add);
+        return edges;
+    }
+
+    private static List<JsonElement> jsonEdges(String callGraphJson) {
+        return jsonEdges(JsonParser.parseString(callGraphJson));
+    }
+
+    /**
+     * @return the JSON of each edge of callGraph, in {@link CallGraph#SOURCE_ORDER}
+     */
+    private static List<JsonElement> sortedJsonEdges(CallGraph callGraph) {
+        return callGraph.snapshot().edgeSet().stream()
+                .sorted(CallGraph.SOURCE_ORDER)
+                .map(edge -> {
+                    final var single = new CallGraph();
+                    single.addEdge(edge);
+                    return jsonEdges(single.toJSON()).get(0);
+                })
+                .toList();
+    }
+
+    @Test
+    public void canSerializeCallGraphsToJson() throws FileNotFoundException {
+        // arrange
+        final var testGraph = makeTestGraph();
         final var gson = new Gson();
         final var expectedJson = gson.fromJson(new FileReader("src/test/resources/js/callgraph/json-tests/callgraph-json-test.json"),
                 JsonElement.class);
@@ -46,4 +110,67 @@ public class CallGraphSerializationTests extends AbstractCallGraphTest {
         // assert
         Assert.assertEquals(expectedJson, asJson);
     }
+
+    @Test
+    public void streamingJsonMatchesJsonTree() throws IOException {
+        // arrange
+        final var testGraph = makeTestGraph();
+        final var out = new StringWriter();
+
+        // act
+        testGraph.writeJSON(out, true);
+
+        // assert
+        Assert.assertEquals(testGraph.toJSON().toString(), out.toString());
+    }
+
+    @Test
+    public void incrementalJsonMatchesJsonTree() throws IOException {
+        // arrange
+        final var scheduler = Scheduler.create();
+        final var testGraph = makeTestGraph(new CallGraph(scheduler));
+        final var out = new StringWriter();
+
+        // act
+        final var edgeStream = testGraph.streamJSON(out);
+        // Edges added while the stream is open are written as well
+        makeMultiEdgeGraph(testGraph);
+        scheduler.waitUntilDone();
+        edgeStream.close();
+
+        // assert
+        final var written = jsonEdges(out.toString());
+        Assert.assertEquals(5, edgeStream.edgesWritten());
+        Assert.assertEquals(5, written.size());
+        Assert.assertEquals(new HashSet<>(jsonEdges(testGraph.toJSON())), new HashSet<>(written));
+    }
+
+    @Test
+    public void sortedStreamingJsonOfSeveralEdgesFollowsSourceOrder() throws IOException {
+        // arrange
+        final var testGraph = makeMultiEdgeGraph(new CallGraph());
+        final var out = new StringWriter();
+
+        // act
+        testGraph.writeJSON(out, true);
+
+        // assert
+        Assert.assertEquals(4, testGraph.size());
+        Assert.assertEquals(sortedJsonEdges(testGraph), jsonEdges(out.toString()));
+    }
+
+    @Test
+    public void unsortedStreamingJsonOfSeveralEdgesMatchesJsonTree() throws IOException {
+        // arrange
+        final var testGraph = makeMultiEdgeGraph(new CallGraph());
+        final var out = new StringWriter();
+
+        // act
+        testGraph.writeJSON(out, false);
+
+        // assert
+        final var written = jsonEdges(out.toString());
+        Assert.assertEquals(4, written.size());
+        Assert.assertEquals(new HashSet<>(jsonEdges(testGraph.toJSON())), new HashSet<>(written));
+    }
 }
@@ -3,6 +3,7 @@ package com.amazon.pvar.tspoc.merlin;
 import com.amazon.pvar.tspoc.merlin.experiments.Main;
 import com.amazon.pvar.tspoc.merlin.ir.*;
 import com.amazon.pvar.tspoc.merlin.solver.CallGraph;
+import com.amazon.pvar.tspoc.merlin.solver.CallGraphPrepass;
 import com.amazon.pvar.tspoc.merlin.solver.QueryManager;
 import dk.brics.tajs.flowgraph.FlowGraph;
 import dk.brics.tajs.flowgraph.Function;
@@ -59,7 +60,7 @@ public final class CallGraphTests {
         final Value calleeQueryValue;
         final dk.brics.tajs.flowgraph.jsnodes.Node startingLocation;
         if (callNode.getFunctionRegister() != -1) {
-            calleeQueryValue = new Register(callNode.getFunctionRegister(), callNode.getBlock().getFunction());
+            calleeQueryValue = Register.of(callNode.getFunctionRegister(), callNode.getBlock().getFunction());
             startingLocation = callNode;
         } else if (callNode.getPropertyString() != null) {
             startingLocation = callNode;
@@ -69,7 +70,7 @@ public final class CallGraphTests {
         }
 
         final var initialQuery = new Node<>(
-                new NodeState(startingLocation),
+                NodeState.of(startingLocation),
                 calleeQueryValue
         );
         final var solver = queryManager.getOrStartBackwardQuery(initialQuery);
@@ -86,6 +87,9 @@ public final class CallGraphTests {
         final var callFuncPointsTo = queryManager.getPointsToGraph().getPointsToSet(callNode, calleeQueryValue).toJavaSet();
         InterproceduralPointsToTests.printPointsTo(calleeQueryValue, callNode, callFuncPointsTo);
         assertThat(actualCallees, equalTo(findCallees.expectedCallees()));
+        // The prepass bound must not rule out any expected callee
+        CallGraphPrepass.forFunction(callNode.getBlock().getFunction()).calleesOf(callNode).ifPresent(bound ->
+                assertThat(bound.containsAll(findCallees.expectedCallees()), equalTo(true)));
     }
 
     private void runFindCallerTest(FindCallers findCallers) {
@@ -94,7 +98,7 @@ public final class CallGraphTests {
         final var calleeFunc = findCallers.function();
         final Value funcAlloc = new FunctionAllocation(calleeFunc.getNode());
         final var initialQuery = new Node<>(
-                new NodeState(calleeFunc.getNode()),
+                NodeState.of(calleeFunc.getNode()),
                 funcAlloc
         );
         final var solver = queryManager.getOrStartForwardQuery(initialQuery);
@@ -126,7 +130,7 @@ public final class CallGraphTests {
     private void runFindAllocationsFlowingToTest(FindAllocationsFlowingTo findAllocs) {
         final var queryManager = new QueryManager();
         final var initialQuery = new Node<>(
-                new NodeState(findAllocs.node()),
+                NodeState.of(findAllocs.node()),
                 findAllocs.value()
         );
         final var solver = queryManager.getOrStartBackwardQuery(initialQuery);
@@ -252,7 +256,7 @@ public final class CallGraphTests {
                                     .filter(node -> node instanceof WriteVariableNode && node.getSourceLocation().getLineNumber() == currentLineNumber),
                             "Ambiguous or missing variable write corresponding to points-to query " + currentLineNumber + ": " + line
                     );
-                    final var queryValue = new Register(writeVarNode.getValueRegister(), writeVarNode.getBlock().getFunction());
+                    final var queryValue = Register.of(writeVarNode.getValueRegister(), writeVarNode.getBlock().getFunction());
                     tests.add(new FindAllocationsFlowingTo(flowGraph, writeVarNode, queryValue,
                             findAllocations(flowGraph, pointsToMatcher.group(1))));
                 }
@@ -0,0 +1,177 @@
+package com.amazon.pvar.tspoc.merlin;
+
+import com.amazon.pvar.tspoc.merlin.ir.FlowgraphUtils;
+import com.amazon.pvar.tspoc.merlin.ir.NodeState;
+import com.amazon.pvar.tspoc.merlin.ir.Value;
+import com.amazon.pvar.tspoc.merlin.ir.Variable;
+import com.amazon.pvar.tspoc.merlin.solver.Checkpoint;
+import com.amazon.pvar.tspoc.merlin.solver.QueryManager;
+import com.amazon.pvar.tspoc.merlin.solver.SolverOptions;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.jsnodes.CallNode;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import sync.pds.solver.nodes.Node;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests of writing the results of a QueryManager to a checkpoint and restoring them into a fresh one.
+ */
+public class CheckpointTests extends AbstractCallGraphTest {
+
+    private FlowGraph flowGraph;
+    private List<CallNode> callSites;
+    private Path file;
+
+    @Before
+    public void loadProgram() throws IOException {
+        flowGraph = initializeFlowgraph("src/test/resources/js/callgraph/callgraph-tests/simple-calls.js");
+        callSites = FlowgraphUtils.allNodes(flowGraph)
+                .filter(node -> node instanceof CallNode callNode && callNode.getTajsFunctionName() == null)
+                .map(node -> (CallNode) node)
+                .toList();
+        file = Files.createTempFile("merlin", ".checkpoint");
+        Files.delete(file);
+    }
+
+    @After
+    public void deleteCheckpoint() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static Set<Checkpoint.PointsToFact> pointsToFacts(QueryManager queryManager) {
+        final Set<Checkpoint.PointsToFact> facts = new HashSet<>();
+        queryManager.getPointsToGraph().forEachPointsToFact((location, allocation) ->
+                facts.add(new Checkpoint.PointsToFact(location, allocation)));
+        return facts;
+    }
+
+    private QueryManager solveAllCallSites(SolverOptions options) {
+        final var queryManager = new QueryManager(options);
+        queryManager.resolveAllCallSites(callSites);
+        queryManager.solve();
+        queryManager.scheduler().waitUntilDone();
+        return queryManager;
+    }
+
+    @Test
+    public void restoredCheckpointHasTheSameResults() throws IOException {
+        // arrange
+        final var solved = solveAllCallSites(SolverOptions.defaults());
+        solved.writeCheckpoint(flowGraph, file);
+        final var restored = new QueryManager(SolverOptions.defaults());
+
+        // act
+        final var success = restored.restoreCheckpoint(flowGraph, file);
+
+        // assert
+        Assert.assertTrue(success);
+        Assert.assertFalse(pointsToFacts(solved).isEmpty());
+        Assert.assertEquals(pointsToFacts(solved), pointsToFacts(restored));
+        Assert.assertEquals(solved.getCallGraph().snapshot().edgeSet(), restored.getCallGraph().snapshot().edgeSet());
+    }
+
+    @Test
+    public void restoredQueriesAreSolvedAgain() throws IOException {
+        // arrange
+        final var solved = solveAllCallSites(SolverOptions.defaults());
+        solved.writeCheckpoint(flowGraph, file);
+        final var restored = new QueryManager(SolverOptions.defaults());
+
+        // act
+        restored.restoreCheckpoint(flowGraph, file);
+        restored.solve();
+
+        // assert
+        Assert.assertTrue(solved.reachedStateCount() > 0);
+        Assert.assertEquals(solved.reachedStateCount(), restored.reachedStateCount());
+        Assert.assertEquals(pointsToFacts(solved), pointsToFacts(restored));
+    }
+
+    @Test
+    public void flowGraphHashIsStableAcrossLoads() {
+        // arrange
+        final var reloaded = initializeFlowgraph("src/test/resources/js/callgraph/callgraph-tests/simple-calls.js");
+        final var other =
+                initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/singleCallSite.js");
+
+        // act
+        final var hash = Checkpoint.flowGraphHash(flowGraph);
+
+        // assert
+        Assert.assertArrayEquals(hash, Checkpoint.flowGraphHash(reloaded));
+        Assert.assertFalse(Arrays.equals(hash, Checkpoint.flowGraphHash(other)));
+    }
+
+    @Test
+    public void fileThatIsNotACheckpointIsIgnored() throws IOException {
+        // arrange
+        Files.writeString(file, "not a checkpoint");
+        final var restored = new QueryManager(SolverOptions.defaults());
+
+        // act
+        final var success = restored.restoreCheckpoint(flowGraph, file);
+
+        // assert
+        Assert.assertFalse(success);
+    }
+
+    @Test
+    public void checkpointOfOtherOptionsIsIgnored() throws IOException {
+        // arrange
+        solveAllCallSites(SolverOptions.defaults()).writeCheckpoint(flowGraph, file);
+        final var restored = new QueryManager(SolverOptions.defaults().withCallGraphPrepass(true));
+
+        // act
+        final var success = restored.restoreCheckpoint(flowGraph, file);
+
+        // assert
+        Assert.assertFalse(success);
+        Assert.assertTrue(pointsToFacts(restored).isEmpty());
+    }
+
+    @Test
+    public void checkpointIgnoresTheNumberOfThreads() throws IOException {
+        // arrange
+        solveAllCallSites(SolverOptions.defaults()).writeCheckpoint(flowGraph, file);
+        final var restored = new QueryManager(SolverOptions.defaults().withThreads(2));
+
+        // act
+        final var success = restored.restoreCheckpoint(flowGraph, file);
+
+        // assert
+        Assert.assertTrue(success);
+    }
+
+    @Test
+    public void suspendedQueriesAreNotRecorded() throws IOException {
+        // arrange
+        final var program =
+                initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/singleCallSite.js");
+        final var queryNode = getNodeByIndex(18, program);
+        final Node<NodeState, Value> query = new Node<>(
+                NodeState.of(queryNode),
+                Variable.of("valueToQuery", queryNode.getBlock().getFunction())
+        );
+        final var solved = new QueryManager();
+        final var result = solved.solveExistential(query);
+        solved.writeCheckpoint(program, file);
+
+        // act
+        final var checkpoint = Checkpoint.read(program, SolverOptions.defaults(), file);
+
+        // assert
+        Assert.assertTrue(result.partial());
+        Assert.assertTrue(checkpoint.isPresent());
+        Assert.assertFalse(checkpoint.get().getCompletedBackwardQueries().contains(query));
+    }
+}
@@ -0,0 +1,36 @@
+package com.amazon.pvar.tspoc.merlin;
+
+import com.amazon.pvar.tspoc.merlin.benchmarks.FlowFunctionAllocationBenchmark;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks of the allocation benchmark's measurements against generous thresholds, since the exact numbers depend on
+ * the JIT. See {@link FlowFunctionAllocationBenchmark} for the numbers themselves.
+ */
+public class FlowFunctionAllocationTests {
+
+    private static FlowFunctionAllocationBenchmark.Results results;
+
+    @BeforeClass
+    public static void measure() {
+        results = FlowFunctionAllocationBenchmark.run();
+    }
+
+    @Test
+    public void reusedFlowFunctionsAllocateAtMostHalfOfFresh() {
+        Assert.assertTrue(
+                "reused transfers allocate " + results.reused().bytesPerTransfer() + " bytes and fresh ones " +
+                        results.fresh().bytesPerTransfer() + " bytes",
+                results.reused().bytesPerTransfer() <= results.fresh().bytesPerTransfer() / 2);
+    }
+
+    @Test
+    public void debugMessagesAreOnlyBuiltWithDebugEnabled() {
+        Assert.assertTrue(
+                "reused transfers allocate " + results.reused().bytesPerTransfer() + " bytes with debug off and " +
+                        results.reusedWithDebug().bytesPerTransfer() + " bytes with debug on",
+                results.reused().bytesPerTransfer() < results.reusedWithDebug().bytesPerTransfer());
+    }
+}
@@ -0,0 +1,76 @@
+package com.amazon.pvar.tspoc.merlin;
+
+import com.amazon.pvar.tspoc.merlin.experiments.Main;
+import com.amazon.pvar.tspoc.merlin.ir.*;
+import com.amazon.pvar.tspoc.merlin.solver.QueryManager;
+import com.amazon.pvar.tspoc.merlin.solver.SolverOptions;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.jsnodes.NewObjectNode;
+import dk.brics.tajs.flowgraph.jsnodes.ReadVariableNode;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import sync.pds.solver.nodes.Node;
+
+import java.io.File;
+import java.util.Set;
+
+/**
+ * Tests of resolving property reads through the index of property writes (see SolverOptions#indexedFieldReads).
+ */
+public class IndexedFieldReadTests extends AbstractCallGraphTest {
+
+    private FlowGraph flowGraph;
+
+    @Before
+    public void loadProgram() {
+        // Without babel, so that line numbers match the source
+        flowGraph = Main.flowgraphWithoutBabel(new File(
+                "src/test/resources/js/callgraph/indexed-field-tests/dynamic-and-nested-writes.js").getAbsolutePath(),
+                false);
+    }
+
+    private Allocation objectOnLine(int line) {
+        return FlowgraphUtils.allNodes(flowGraph)
+                .filter(node -> node instanceof NewObjectNode && node.getSourceLocation().getLineNumber() == line)
+                .map(node -> (Allocation) new ObjectAllocation((NewObjectNode) node))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private Set<Allocation> pointsToOfRead(String variableName) {
+        final var read = FlowgraphUtils.allNodes(flowGraph)
+                .filter(node -> node instanceof ReadVariableNode readVariable &&
+                        variableName.equals(readVariable.getVariableName()))
+                .map(node -> (ReadVariableNode) node)
+                .reduce((first, second) -> second)
+                .orElseThrow();
+        final Node<NodeState, Value> query = new Node<>(
+                NodeState.of(read),
+                Variable.of(variableName, read.getBlock().getFunction())
+        );
+        final var queryManager = new QueryManager(SolverOptions.defaults().withIndexedFieldReads(true));
+        queryManager.getOrStartBackwardQuery(query);
+        queryManager.solve();
+        queryManager.scheduler().waitUntilDone();
+        return queryManager.getPointsToGraph().getPointsToSet(read, query.fact()).toJavaSet();
+    }
+
+    @Test
+    public void readSeesWritesOfDynamicProperties() {
+        // act
+        final var pointsTo = pointsToOfRead("x");
+
+        // assert
+        Assert.assertEquals(Set.of(objectOnLine(1), objectOnLine(2)), pointsTo);
+    }
+
+    @Test
+    public void readSeesValuesWrittenInOtherFunctions() {
+        // act
+        final var pointsTo = pointsToOfRead("y");
+
+        // assert
+        Assert.assertEquals(Set.of(objectOnLine(2), objectOnLine(3)), pointsTo);
+    }
+}
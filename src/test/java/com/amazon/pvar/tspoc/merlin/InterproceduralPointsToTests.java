@@ -21,11 +21,13 @@ import dk.brics.tajs.flowgraph.FlowGraph;
 import dk.brics.tajs.flowgraph.jsnodes.*;
 import dk.brics.tajs.util.Collectors;
 import org.apache.log4j.Level;
+import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 import sync.pds.solver.nodes.Node;
 
 import java.util.Collection;
+import java.util.Set;
 
 public class InterproceduralPointsToTests extends AbstractCallGraphTest {
 
@@ -63,9 +65,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/singleCallSite.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(18, flowGraph);
-        Value queryVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -86,14 +88,85 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         assert solver.getCallGraph().size() == 1;
     }
 
+    @Test
+    public void existentialQueryFindsSingleCallSiteAllocation() {
+        FlowGraph flowGraph =
+                initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/singleCallSite.js");
+        dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(18, flowGraph);
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
+        Node<NodeState, Value> initialQuery = new Node<>(
+                NodeState.of(queryNode),
+                queryVal
+        );
+
+        final var queryManager = new QueryManager();
+        final var result = queryManager.solveExistential(initialQuery);
+
+        assert result.allocations().size() == 1;
+        assert result.allocations().contains(new ObjectAllocation(((NewObjectNode) getNodeByIndex(7, flowGraph))));
+        assert result.partial();
+    }
+
+    @Test
+    public void existentialQueryOnExistingSolverSuspendsIt() {
+        // arrange
+        FlowGraph flowGraph =
+                initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/singleCallSite.js");
+        dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(18, flowGraph);
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
+        Node<NodeState, Value> initialQuery = new Node<>(
+                NodeState.of(queryNode),
+                queryVal
+        );
+        final var queryManager = new QueryManager();
+        final var existing = queryManager.startBackwardQueryIfAbsent(initialQuery);
+
+        // act
+        final var result = queryManager.solveExistential(initialQuery);
+        queryManager.scheduler().waitUntilDone();
+
+        // assert
+        Assert.assertEquals(Set.of(new ObjectAllocation(((NewObjectNode) getNodeByIndex(7, flowGraph)))),
+                result.allocations());
+        Assert.assertTrue(result.partial());
+        Assert.assertFalse(existing.isPinned());
+        Assert.assertTrue(existing.isSuspended());
+    }
+
+    @Test
+    public void existentialQueryReachesNoStatesAfterItsLimit() {
+        // arrange
+        FlowGraph flowGraph =
+                initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/singleCallSite.js");
+        dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(18, flowGraph);
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
+        Node<NodeState, Value> initialQuery = new Node<>(
+                NodeState.of(queryNode),
+                queryVal
+        );
+        final var queryManager = new QueryManager();
+
+        // act
+        final var result = queryManager.solveExistential(initialQuery);
+        queryManager.scheduler().waitUntilDone();
+        final var reachedAtLimit = queryManager.reachedStateCount();
+        // Handling unresolved calls must not resume the suspended solvers
+        queryManager.solve();
+        queryManager.scheduler().waitUntilDone();
+
+        // assert
+        Assert.assertTrue(result.partial());
+        Assert.assertEquals(reachedAtLimit, queryManager.reachedStateCount());
+    }
+
     @Test
     public void flowToOuterScope() {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/outerScope.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(21, flowGraph);
-        Value queryVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -123,9 +196,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/multipleCallSites.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(24, flowGraph);
-        Value queryVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -155,9 +228,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/higherOrder1.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(20, flowGraph);
-        Value queryVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -186,9 +259,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/higherOrder3.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(15, flowGraph);
-        Value queryVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -217,9 +290,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/higherOrder2.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(30, flowGraph);
-        Value queryVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -259,9 +332,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/simpleClosure.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(27, flowGraph);
-        Value queryVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -287,9 +360,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/closureMultipleUsages.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(30, flowGraph);
-        Value queryVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -328,9 +401,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/closureParamMultipleUsage.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(31, flowGraph);
-        Value queryVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -366,9 +439,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/closureNotInScope.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(27, flowGraph);
-        Value queryVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -405,9 +478,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/closureReassigned.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(28, flowGraph);
-        Value queryVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -440,9 +513,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/closureMultipleContexts.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(37, flowGraph);
-        Value queryVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -466,14 +539,14 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/closureCallReturnMultContexts.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(30, flowGraph);
-        Value queryVal1 = new Variable("valueToQuery1", queryNode.getBlock().getFunction());
+        Value queryVal1 = Variable.of("valueToQuery1", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery1 = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal1
         );
-        Value queryVal2 = new Variable("valueToQuery2", queryNode.getBlock().getFunction());
+        Value queryVal2 = Variable.of("valueToQuery2", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery2 = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal2
         );
         final var queryManager = new QueryManager();
@@ -504,7 +577,7 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(9, flowGraph);
         Value queryVal = new ObjectAllocation(((NewObjectNode) queryNode));
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
         final var queryManager = new QueryManager();
@@ -520,7 +593,7 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
             System.out.println("- " + ptl);
         }
         dk.brics.tajs.flowgraph.jsnodes.Node endFlowNode = getNodeByIndex(18, flowGraph);
-        Value endFlowVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        Value endFlowVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
 
         assert ptls.contains(new PointsToGraph.PointsToLocation(endFlowNode, endFlowVal));
     }
@@ -530,9 +603,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/simpleCallToReturn.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(18, flowGraph);
-        Value queryVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -554,9 +627,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
                         .filter(node -> node instanceof WriteVariableNode write && write.getVariableName().equals("valueToQuery"))
                         .findFirst()
                         .orElseThrow();
-        final Value queryVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        final Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         final var initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -588,9 +661,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/interproceduralPropReadWrite.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(22, flowGraph);
-        Value queryVal = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -612,7 +685,7 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
                 .get();
         Value queryVal = new ObjectAllocation(queryNode);
         final var initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
         final var queryManager = new QueryManager();
@@ -620,7 +693,7 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         final var pointsToLocations = queryManager.getPointsToGraph().getKnownValuesPointingTo((Allocation)queryVal).toJavaSet();
         final var aliasedLocation = new PointsToGraph.PointsToLocation(
                 (dk.brics.tajs.flowgraph.jsnodes.Node) flowGraph.getMain().getOrdinaryExit().getLastNode(),
-                new Variable("readingY", flowGraph.getMain())
+                Variable.of("readingY", flowGraph.getMain())
         );
         assert pointsToLocations.contains(aliasedLocation);
     }
@@ -634,7 +707,7 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         final var queryNode = (NewObjectNode)allocations.get(0);
         Value queryVal = new ObjectAllocation(queryNode);
         final var initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
         final var queryManager = new QueryManager();
@@ -644,7 +717,7 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         printPointsToLocations(queryVal, queryNode, pointsToLocations);
         final var resultLocation = new PointsToGraph.PointsToLocation(
                 (dk.brics.tajs.flowgraph.jsnodes.Node) flowGraph.getMain().getOrdinaryExit().getLastNode(),
-                new Variable("readingFromX", flowGraph.getMain())
+                Variable.of("readingFromX", flowGraph.getMain())
         );
         final var otherQueryNode = (NewObjectNode)allocations.get(1);
         final Value baseValue = new ObjectAllocation(otherQueryNode);
@@ -657,9 +730,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/closureParamReassign.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(36, flowGraph);
-        Value queryVal = new Variable("something", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("something", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -682,9 +755,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
                         .filter(node -> node instanceof ReadVariableNode read && read.getVariableName().equals("b"))
                         .findFirst()
                         .orElseThrow();
-        Value queryVal = new Variable("b", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("b", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState( queryNode),
+                NodeState.of( queryNode),
                 queryVal
         );
         final var queryManager = new QueryManager();
@@ -708,9 +781,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/interprocedural-tests/closureDepth3.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(26, flowGraph);
-        Value queryVal = new Variable("res", queryNode.getBlock().getFunction());
+        Value queryVal = Variable.of("res", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -740,7 +813,7 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
         }).findFirst().orElseThrow();
         final var funcAlloc = new FunctionAllocation(funcDecl);
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(funcDecl),
+                NodeState.of(funcDecl),
                 funcAlloc
         );
 
@@ -767,11 +840,11 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
 
         assert ptls.contains(new PointsToGraph.PointsToLocation(
                 callInF,
-                new Register(callInF.getFunctionRegister(), fFunc)
+                Register.of(callInF.getFunctionRegister(), fFunc)
         ));
         assert ptls.contains(new PointsToGraph.PointsToLocation(
                 callInG,
-                new Register(callInG.getFunctionRegister(), gFunc)
+                Register.of(callInG.getFunctionRegister(), gFunc)
         ));
     }
 
@@ -784,9 +857,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
                         .getOrdinaryExit()
                         .getLastNode();
 
-        final var queryValue = new Variable("valueToQuery", queryNode.getBlock().getFunction());
+        final var queryValue = Variable.of("valueToQuery", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState( queryNode),
+                NodeState.of( queryNode),
                 queryValue
         );
 
@@ -812,9 +885,9 @@ public class InterproceduralPointsToTests extends AbstractCallGraphTest {
                         .filter(node -> node instanceof WriteVariableNode write && write.getVariableName().equals("result"))
                         .findFirst()
                         .orElseThrow();
-        final var queryValue = new Variable("result", queryNode.getBlock().getFunction());
+        final var queryValue = Variable.of("result", queryNode.getBlock().getFunction());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState( queryNode),
+                NodeState.of( queryNode),
                 queryValue
         );
 
@@ -37,7 +37,7 @@ public class IntraproceduralPointsToTests extends AbstractCallGraphTest {
         NewObjectNode non = (NewObjectNode) getNodeByIndex(9, flowGraph);
         ObjectAllocation allocation = new ObjectAllocation(non);
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(non),
+                NodeState.of(non),
                 allocation
         );
 
@@ -49,8 +49,8 @@ public class IntraproceduralPointsToTests extends AbstractCallGraphTest {
         dk.brics.tajs.flowgraph.jsnodes.Node afterV1Write = getNodeByIndex(15, flowGraph);
         dk.brics.tajs.flowgraph.jsnodes.Node afterV2Write = getNodeByIndex(17, flowGraph);
         dk.brics.tajs.flowgraph.jsnodes.Node endNode = getNodeByIndex(19, flowGraph);
-        Value queryVal = new Variable("valueToQuery1", flowGraph.getMain());
-        Value notQueryVal = new Variable("valueToQuery2", flowGraph.getMain());
+        Value queryVal = Variable.of("valueToQuery1", flowGraph.getMain());
+        Value notQueryVal = Variable.of("valueToQuery2", flowGraph.getMain());
 
         assert pts.contains(new PointsToGraph.PointsToLocation(afterV2Write, queryVal));
         assert !pts.contains(new PointsToGraph.PointsToLocation(afterV2Write, notQueryVal));
@@ -65,7 +65,7 @@ public class IntraproceduralPointsToTests extends AbstractCallGraphTest {
         ConstantNode constantNode = (ConstantNode) getNodeByIndex(9, flowGraph);
         ConstantAllocation allocation = new ConstantAllocation(constantNode);
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(constantNode),
+                NodeState.of(constantNode),
                 allocation
         );
 
@@ -77,8 +77,8 @@ public class IntraproceduralPointsToTests extends AbstractCallGraphTest {
         dk.brics.tajs.flowgraph.jsnodes.Node afterV1Write = getNodeByIndex(15, flowGraph);
         dk.brics.tajs.flowgraph.jsnodes.Node afterV2Write = getNodeByIndex(17, flowGraph);
         dk.brics.tajs.flowgraph.jsnodes.Node endNode = getNodeByIndex(19, flowGraph);
-        Value queryVal = new Variable("valueToQuery1", flowGraph.getMain());
-        Value notQueryVal = new Variable("valueToQuery2", flowGraph.getMain());
+        Value queryVal = Variable.of("valueToQuery1", flowGraph.getMain());
+        Value notQueryVal = Variable.of("valueToQuery2", flowGraph.getMain());
 
         assert pts.contains(new PointsToGraph.PointsToLocation(afterV2Write, queryVal));
         assert !pts.contains(new PointsToGraph.PointsToLocation(afterV2Write, notQueryVal));
@@ -93,7 +93,7 @@ public class IntraproceduralPointsToTests extends AbstractCallGraphTest {
         DeclareFunctionNode funcNode = (DeclareFunctionNode) getNodeByIndex(8, flowGraph);
         FunctionAllocation allocation = new FunctionAllocation(funcNode);
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(funcNode),
+                NodeState.of(funcNode),
                 allocation
         );
         final var queryManager = new QueryManager();
@@ -111,7 +111,7 @@ public class IntraproceduralPointsToTests extends AbstractCallGraphTest {
         DeclareFunctionNode funcNode = (DeclareFunctionNode) getNodeByIndex(1, flowGraph);
         FunctionAllocation allocation = new FunctionAllocation(funcNode);
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(funcNode),
+                NodeState.of(funcNode),
                 allocation
         );
 
@@ -128,9 +128,9 @@ public class IntraproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/intraprocedural-tests/intraproceduralObjectPropagation.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(15, flowGraph);
-        Value queryVal = new Variable("valueToQuery1", flowGraph.getMain());
+        Value queryVal = Variable.of("valueToQuery1", flowGraph.getMain());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -151,9 +151,9 @@ public class IntraproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/intraprocedural-tests/intraproceduralObjectPropagation.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(19, flowGraph);
-        Value queryVal = new Variable("valueToQuery1", flowGraph.getMain());
+        Value queryVal = Variable.of("valueToQuery1", flowGraph.getMain());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -174,9 +174,9 @@ public class IntraproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/intraprocedural-tests/intraproceduralConstPropagation.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(19, flowGraph);
-        Value queryVal = new Variable("valueToQuery1", flowGraph.getMain());
+        Value queryVal = Variable.of("valueToQuery1", flowGraph.getMain());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -197,9 +197,9 @@ public class IntraproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/intraprocedural-tests/intraproceduralFunctionPropagation.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(20, flowGraph);
-        Value queryVal = new Variable("valueToQuery", flowGraph.getMain());
+        Value queryVal = Variable.of("valueToQuery", flowGraph.getMain());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -220,9 +220,9 @@ public class IntraproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/intraprocedural-tests/intraproceduralFunctionDecl.js");
         dk.brics.tajs.flowgraph.jsnodes.Node queryNode = getNodeByIndex(16, flowGraph);
-        Value queryVal = new Variable("valueToQuery", flowGraph.getMain());
+        Value queryVal = Variable.of("valueToQuery", flowGraph.getMain());
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(queryNode),
+                NodeState.of(queryNode),
                 queryVal
         );
 
@@ -245,7 +245,7 @@ public class IntraproceduralPointsToTests extends AbstractCallGraphTest {
         NewObjectNode non = (NewObjectNode) getNodeByIndex(10, flowGraph);
         ObjectAllocation allocation = new ObjectAllocation(non);
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(non),
+                NodeState.of(non),
                 allocation
         );
 
@@ -255,7 +255,7 @@ public class IntraproceduralPointsToTests extends AbstractCallGraphTest {
         Collection<PointsToGraph.PointsToLocation> pts = solver.getPointsToGraph().getKnownValuesPointingTo(allocation).toJavaSet();
 
         dk.brics.tajs.flowgraph.jsnodes.Node endNode = getNodeByIndex(18, flowGraph);
-        Value queryVal = new Variable("valueToQuery", flowGraph.getMain());
+        Value queryVal = Variable.of("valueToQuery", flowGraph.getMain());
 
         System.out.println("Data-flow of " + non + " at " + endNode + ":");
         System.out.println(pts.stream().filter(ptl -> ptl.getLocation().equals(endNode)).collect(Collectors.toSet()));
@@ -268,10 +268,10 @@ public class IntraproceduralPointsToTests extends AbstractCallGraphTest {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/intraprocedural-tests/intraproceduralPropReadWrite.js");
         System.out.println(flowGraph);
-        Value queryVal = new Variable("valueToQuery", flowGraph.getMain());
+        Value queryVal = Variable.of("valueToQuery", flowGraph.getMain());
         dk.brics.tajs.flowgraph.jsnodes.Node endNode = getNodeByIndex(18, flowGraph);
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(endNode),
+                NodeState.of(endNode),
                 queryVal
         );
 
@@ -296,10 +296,10 @@ public class IntraproceduralPointsToTests extends AbstractCallGraphTest {
     public void backwardLoop() {
         FlowGraph flowGraph =
                 initializeFlowgraph("src/test/resources/js/callgraph/flow-function-unit-tests/loop.js");
-        Value queryVal = new Variable("x", flowGraph.getMain());
+        Value queryVal = Variable.of("x", flowGraph.getMain());
         dk.brics.tajs.flowgraph.jsnodes.Node endNode = getNodeByIndex(30, flowGraph);
         Node<NodeState, Value> initialQuery = new Node<>(
-                new NodeState(endNode),
+                NodeState.of(endNode),
                 queryVal
         );
 
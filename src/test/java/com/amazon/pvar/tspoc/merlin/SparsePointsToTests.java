@@ -0,0 +1,92 @@
+package com.amazon.pvar.tspoc.merlin;
+
+import com.amazon.pvar.tspoc.merlin.ir.*;
+import com.amazon.pvar.tspoc.merlin.solver.CallGraph;
+import com.amazon.pvar.tspoc.merlin.solver.QueryManager;
+import com.amazon.pvar.tspoc.merlin.solver.SolverOptions;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.jsnodes.ReadVariableNode;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import sync.pds.solver.nodes.Node;
+
+import java.io.File;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Runs the programs of the intraprocedural and interprocedural points-to suites in dense and in sparse mode, querying
+ * every variable read backwards, and checks that sparse mode finds the same points-to sets and call graph while
+ * reaching no more states.
+ */
+@RunWith(Parameterized.class)
+public class SparsePointsToTests extends AbstractCallGraphTest {
+
+    private final String program;
+
+    public SparsePointsToTests(String program) {
+        this.program = program;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> programs() {
+        return Stream.of("intraprocedural-tests", "interprocedural-tests")
+                .map(dir -> new File("src/test/resources/js/callgraph/" + dir))
+                .flatMap(dir -> Stream.of(Objects.requireNonNull(dir.listFiles((d, name) -> name.endsWith(".js")))))
+                .sorted()
+                .map(file -> new Object[]{file.getPath()})
+                .toList();
+    }
+
+    private record Result(Map<Node<NodeState, Value>, Set<Allocation>> pointsToSets, Set<CallGraph.Edge> callEdges,
+                          int reachedStates) {
+    }
+
+    private static List<Node<NodeState, Value>> variableReads(FlowGraph flowGraph) {
+        return FlowgraphUtils.allNodes(flowGraph)
+                .filter(node -> node instanceof ReadVariableNode read && read.getVariableName() != null)
+                .map(node -> (ReadVariableNode) node)
+                .sorted(Comparator.comparingInt(ReadVariableNode::getIndex))
+                .map(read -> new Node<NodeState, Value>(
+                        NodeState.of(read),
+                        Variable.of(read.getVariableName(), read.getBlock().getFunction())
+                ))
+                .toList();
+    }
+
+    private static Result solve(List<Node<NodeState, Value>> queries, SolverOptions options) {
+        final var queryManager = new QueryManager(options);
+        queries.forEach(queryManager::getOrStartBackwardQuery);
+        queryManager.solve();
+        queryManager.scheduler().waitUntilDone();
+        final Map<Node<NodeState, Value>, Set<Allocation>> pointsToSets = new HashMap<>();
+        for (final var query : queries) {
+            pointsToSets.put(query, queryManager.getPointsToGraph()
+                    .getPointsToSet(query.stmt().getNode(), query.fact())
+                    .toJavaSet());
+        }
+        return new Result(pointsToSets, queryManager.getCallGraph().snapshot().edgeSet(),
+                queryManager.reachedStateCount());
+    }
+
+    @Test
+    public void sparseModeFindsTheSameResultsWithNoMoreStates() {
+        // arrange
+        final var flowGraph = initializeFlowgraph(program);
+        final var queries = variableReads(flowGraph);
+
+        // act
+        final var dense = solve(queries, SolverOptions.defaults());
+        final var sparse = solve(queries, SolverOptions.defaults().withSparse(true));
+
+        // assert
+        Assert.assertFalse(queries.isEmpty());
+        Assert.assertEquals(dense.pointsToSets(), sparse.pointsToSets());
+        Assert.assertEquals(dense.callEdges(), sparse.callEdges());
+        Assert.assertTrue("sparse mode reached " + sparse.reachedStates() + " states, dense mode " +
+                        dense.reachedStates(),
+                sparse.reachedStates() <= dense.reachedStates());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2022 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.pvar.tspoc.merlin.benchmarks;
+
+import com.amazon.pvar.tspoc.merlin.experiments.Main;
+import com.amazon.pvar.tspoc.merlin.ir.NodeIndex;
+import com.amazon.pvar.tspoc.merlin.ir.NodeState;
+import com.amazon.pvar.tspoc.merlin.ir.ObjectAllocation;
+import com.amazon.pvar.tspoc.merlin.ir.Value;
+import com.amazon.pvar.tspoc.merlin.solver.ForwardMerlinSolver;
+import com.amazon.pvar.tspoc.merlin.solver.QueryManager;
+import com.amazon.pvar.tspoc.merlin.solver.flowfunctions.ForwardFlowFunctions;
+import dk.brics.tajs.flowgraph.FlowGraph;
+import dk.brics.tajs.flowgraph.jsnodes.NewObjectNode;
+import dk.brics.tajs.flowgraph.jsnodes.NopNode;
+import dk.brics.tajs.flowgraph.jsnodes.ReadVariableNode;
+import org.apache.log4j.Appender;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import sync.pds.solver.nodes.Node;
+import wpds.interfaces.State;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Allocation benchmark for the solver's inner loop: replays side-effect free transfers of a solved query and compares
+ * the bytes allocated and the time taken per transfer by a reused flow function instance and buffer against a fresh
+ * instance and next state set per transfer. IR values are created through their interning factories, so the bytes per
+ * transfer include the short-lived lookup keys those create. The reused variant is measured a second time with debug
+ * logging enabled but no appender attached, which shows what the lazily built debug messages cost when they are
+ * built; all other measurements run with debug logging off.
+ * <p>
+ * The numbers depend on the JIT (escape analysis in particular), so FlowFunctionAllocationTests only checks them
+ * against generous thresholds. Run this class from sbt with
+ * {@code Test/runMain com.amazon.pvar.tspoc.merlin.benchmarks.FlowFunctionAllocationBenchmark} for the numbers.
+ */
+public final class FlowFunctionAllocationBenchmark {
+
+    private static final int WARMUP_ROUNDS = 2000;
+    private static final int MEASURED_ROUNDS = 2000;
+
+    /**
+     * Measurements of the reused and fresh variants with debug logging off, and of the reused variant with debug
+     * logging on
+     */
+    public record Results(Measurement reused, Measurement fresh, Measurement reusedWithDebug) {
+    }
+
+    public static void main(String[] args) {
+        final var results = run();
+        System.out.printf("Allocated bytes per transfer: reused %.1f, fresh %.1f, reused with DEBUG %.1f%n",
+                results.reused().bytesPerTransfer(), results.fresh().bytesPerTransfer(),
+                results.reusedWithDebug().bytesPerTransfer());
+        System.out.printf("Transfers per millisecond: reused %.0f, fresh %.0f, reused with DEBUG %.0f%n",
+                results.reused().transfersPerMilli(), results.fresh().transfersPerMilli(),
+                results.reusedWithDebug().transfersPerMilli());
+    }
+
+    /**
+     * Solve the benchmark query and measure all variants. The root logger's appenders are detached while measuring,
+     * so that debug messages are built but not written, and are restored together with its level afterwards.
+     */
+    @SuppressWarnings("unchecked")
+    public static Results run() {
+        final var rootLogger = Logger.getRootLogger();
+        final var previousLevel = rootLogger.getLevel();
+        final List<Appender> appenders = Collections.list((Enumeration<Appender>) rootLogger.getAllAppenders());
+        rootLogger.removeAllAppenders();
+        try {
+            rootLogger.setLevel(Level.OFF);
+            return measureAll(rootLogger);
+        } finally {
+            rootLogger.setLevel(previousLevel);
+            appenders.forEach(rootLogger::addAppender);
+        }
+    }
+
+    private static Results measureAll(Logger rootLogger) {
+        FlowGraph flowGraph = Main.flowGraphForProgram(
+                "src/test/resources/js/callgraph/intraprocedural-tests/intraproceduralObjectPropagation.js", false);
+        NewObjectNode non = (NewObjectNode) NodeIndex.of(flowGraph).getNode(9);
+        Node<NodeState, Value> initialQuery = new Node<>(
+                NodeState.of(non),
+                new ObjectAllocation(non)
+        );
+        final var queryManager = new QueryManager();
+        ForwardMerlinSolver solver = new ForwardMerlinSolver(queryManager, initialQuery);
+        solver.solve();
+        final List<Node<NodeState, Value>> states = solver.getReachedStates().stream()
+                .filter(state -> state.stmt().getNode() instanceof ReadVariableNode ||
+                        state.stmt().getNode() instanceof NopNode)
+                .toList();
+        if (states.isEmpty()) {
+            throw new IllegalStateException("The query reached no side-effect free transfers to replay");
+        }
+
+        final var reused = new ForwardFlowFunctions(solver, queryManager);
+        final List<State> buffer = new ArrayList<>();
+        final Consumer<Node<NodeState, Value>> reusedTransfer = state -> {
+            reused.computeNextStates(state, buffer);
+            buffer.clear();
+        };
+        final var reusedResult = measure(states, reusedTransfer);
+        final var freshResult = measure(states, state ->
+                new ForwardFlowFunctions(solver, queryManager).computeNextStates(state, new HashSet<>()));
+        rootLogger.setLevel(Level.DEBUG);
+        final var debugResult = measure(states, reusedTransfer);
+        return new Results(reusedResult, freshResult, debugResult);
+    }
+
+    /**
+     * Allocation and throughput of one way of running transfers, averaged over the measured rounds
+     */
+    public record Measurement(double bytesPerTransfer, double transfersPerMilli) {
+    }
+
+    private static Measurement measure(List<Node<NodeState, Value>> states,
+                                       Consumer<Node<NodeState, Value>> transfer) {
+        final var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final var threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            states.forEach(transfer);
+        }
+        final var startNanos = System.nanoTime();
+        final var before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            states.forEach(transfer);
+        }
+        final var after = threadBean.getThreadAllocatedBytes(threadId);
+        final var elapsedNanos = System.nanoTime() - startNanos;
+        final var transfers = (long) MEASURED_ROUNDS * states.size();
+        return new Measurement((double) (after - before) / transfers, transfers * 1e6 / elapsedNanos);
+    }
+}
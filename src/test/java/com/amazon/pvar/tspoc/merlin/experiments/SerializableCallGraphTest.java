@@ -4,8 +4,12 @@ import com.google.gson.Gson;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.HashSet;
 
 public class SerializableCallGraphTest {
@@ -30,4 +34,51 @@ public class SerializableCallGraphTest {
         Assert.assertEquals(expectedCallGraph, fromJson);
     }
 
-}
\ No newline at end of file
+    private static SerializableCallGraph makeBinaryTestGraph() {
+        final var sourceFile = "src/test/resources/js/callgraph/json-tests/_babel/callgraph-json-test.js";
+        final var edges = new HashSet<SerializableCallGraphEdge>();
+        edges.add(new SerializableCallGraphEdge(
+                new Span(new Location(1, 1), new Location(1, 18), sourceFile),
+                new Span(new Location(3, 3), new Location(3, 8), sourceFile)
+        ));
+        edges.add(new SerializableCallGraphEdge(
+                new Span(new Location(-1, -1), new Location(-1, -1), null),
+                new Span(new Location(300, 4), new Location(300, 70000), sourceFile)
+        ));
+        return new SerializableCallGraph(edges);
+    }
+
+    @Test
+    public void roundTripsThroughBinaryFormat() throws IOException {
+        // arrange
+        final var callGraph = makeBinaryTestGraph();
+        final var out = new ByteArrayOutputStream();
+
+        // act
+        BinaryCallGraphWriter.write(callGraph.edges(), out);
+        final var reader = BinaryCallGraphReader.fromBuffer(ByteBuffer.wrap(out.toByteArray()));
+
+        // assert
+        Assert.assertEquals(2, reader.edgeCount());
+        Assert.assertEquals(callGraph, reader.toSerializableCallGraph());
+    }
+
+    @Test
+    public void roundTripsThroughMappedFile() throws IOException {
+        // arrange
+        final var callGraph = makeBinaryTestGraph();
+        final var file = Files.createTempFile("callgraph", ".bin");
+
+        try {
+            // act
+            BinaryCallGraphWriter.write(callGraph, file);
+            final var reader = BinaryCallGraphReader.open(file);
+
+            // assert
+            Assert.assertEquals(2, reader.edgeCount());
+            Assert.assertEquals(callGraph, reader.toSerializableCallGraph());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+var a = {};
+var b = {};
+var c = {};
+var o = {};
+o.f = a;
+var k = "g";
+o[k] = b;
+function store(p, v) {
+    p.h = v;
+}
+store(o, c);
+var x = o.f;
+var y = o.h;
+var readX = x;
+var readY = y;
@@ -0,0 +1,5 @@
+function g() {}
+var o = {};
+var k = "m";
+o[k] = g;
+o.m();
@@ -0,0 +1,9 @@
+function g() {}
+function k() {}
+window.f = g;
+f();
+this.h = k;
+h();
+g.call(null);
+console.log("done");
+g();
@@ -127,4 +127,36 @@ class LiveSetSpec extends AnyFlatSpec with TimeLimitedTests {
     assertListenerOnDerivedSetIsRun(underlyingSet2, derivedSet, 1)
   }
 
+  "A LiveView" should "run each handler once on every stored element" in {
+    val sched = new Scheduler()
+    val view = new LiveView[Int](sched)
+    val counter: AtomicInteger = new AtomicInteger(0)
+    view.add(1)
+    view.onAdd(TaggedHandler("h", (n: Int) => { counter.addAndGet(n) }))
+    view.onAdd(TaggedHandler("h", (n: Int) => { counter.addAndGet(n) }))
+    view.add(2)
+    view.toSet should equal(Set(1, 2))
+    counter.get() should equal(3)
+    view.handlerCount should equal(1)
+    view.size should equal(2)
+  }
+
+  "A LiveSet" should "run each handler once on every element added concurrently" in {
+    val sched = new Scheduler(new java.util.concurrent.ForkJoinPool(4))
+    val ls = new LiveSet[Int](sched)
+    val counters = (0 until 8).map(_ => new AtomicInteger(0))
+    val threads = (0 until 4).map(t =>
+      new Thread(() => {
+        (t until 1000 by 4).foreach(n => ls.add(n))
+        (t until 8 by 4).foreach(h =>
+          ls.onAdd(TaggedHandler(h, (_: Int) => { counters(h).incrementAndGet(); () }))
+        )
+      })
+    )
+    threads.foreach(_.start())
+    threads.foreach(_.join())
+    ls.toSet should equal((0 until 1000).toSet)
+    counters.map(_.get()) should equal(Seq.fill(8)(1000))
+  }
+
 }